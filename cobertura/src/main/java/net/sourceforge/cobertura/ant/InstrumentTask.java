@@ -107,6 +107,28 @@ public class InstrumentTask extends CommonMatchingTask {
 
 	boolean threadsafeRigorous = false;
 
+	boolean threadsafeStriped = false;
+
+	boolean doubleBuffered = false;
+
+	boolean mappedCounters = false;
+
+	boolean lazyCounters = false;
+
+	boolean hitsOnly = false;
+
+	boolean minimizeProbes = false;
+
+	private File cacheDir = null;
+
+	private Long cacheMaxSize = null;
+
+	private Integer threads = null;
+
+	private String verify = null;
+
+	private Double verifySampleRate = null;
+
 	final private HashMap<String, FileSet> fileSetMap = new HashMap<String, FileSet>();
 
 	public InstrumentTask() {
@@ -225,6 +247,51 @@ public class InstrumentTask extends CommonMatchingTask {
 				builder.addArg("--threadsafeRigorous");
 			}
 
+			if (threadsafeStriped) {
+				builder.addArg("--threadsafeStriped");
+			}
+
+			if (doubleBuffered) {
+				builder.addArg("--doubleBuffered");
+			}
+
+			if (mappedCounters) {
+				builder.addArg("--mappedCounters");
+			}
+
+			if (lazyCounters) {
+				builder.addArg("--lazyCounters");
+			}
+
+			if (hitsOnly) {
+				builder.addArg("--hitsOnly");
+			}
+
+			if (minimizeProbes) {
+				builder.addArg("--minimizeProbes");
+			}
+
+			if (cacheDir != null) {
+				builder.addArg("--cacheDirectory", cacheDir.getAbsolutePath());
+			}
+
+			if (cacheMaxSize != null) {
+				builder.addArg("--cacheMaxSize", cacheMaxSize.toString());
+			}
+
+			if (threads != null) {
+				builder.addArg("--threads", threads.toString());
+			}
+
+			if (verify != null) {
+				builder.addArg("--verify", verify);
+			}
+
+			if (verifySampleRate != null) {
+				builder.addArg("--verifySampleRate", verifySampleRate
+						.toString());
+			}
+
 			if (failOnError) {
 				builder.addArg("--failOnError");
 			}
@@ -346,6 +413,50 @@ public class InstrumentTask extends CommonMatchingTask {
 		this.threadsafeRigorous = threadsafeRigorous;
 	}
 
+	public void setThreadsafeStriped(boolean threadsafeStriped) {
+		this.threadsafeStriped = threadsafeStriped;
+	}
+
+	public void setDoubleBuffered(boolean doubleBuffered) {
+		this.doubleBuffered = doubleBuffered;
+	}
+
+	public void setMappedCounters(boolean mappedCounters) {
+		this.mappedCounters = mappedCounters;
+	}
+
+	public void setLazyCounters(boolean lazyCounters) {
+		this.lazyCounters = lazyCounters;
+	}
+
+	public void setHitsOnly(boolean hitsOnly) {
+		this.hitsOnly = hitsOnly;
+	}
+
+	public void setMinimizeProbes(boolean minimizeProbes) {
+		this.minimizeProbes = minimizeProbes;
+	}
+
+	public void setCacheDir(File cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	public void setCacheMaxSize(Long cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+	}
+
+	public void setThreads(Integer threads) {
+		this.threads = threads;
+	}
+
+	public void setVerify(String verify) {
+		this.verify = verify;
+	}
+
+	public void setVerifySampleRate(Double verifySampleRate) {
+		this.verifySampleRate = verifySampleRate;
+	}
+
 	public void setForkedJVMDebugPort(Integer forkedJVMDebugPort) {
 		this.forkedJVMDebugPort = forkedJVMDebugPort;
 	}
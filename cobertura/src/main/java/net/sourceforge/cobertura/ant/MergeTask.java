@@ -69,6 +69,8 @@ public class MergeTask extends CommonMatchingTask {
 
 	private String dataFile = null;
 
+	private Integer threads = null;
+
 	public MergeTask() {
 		super(MergeMain.class.getCanonicalName());
 	}
@@ -79,6 +81,8 @@ public class MergeTask extends CommonMatchingTask {
 			builder = new CommandLineBuilder();
 			if (dataFile != null)
 				builder.addArg("--datafile", dataFile);
+			if (threads != null)
+				builder.addArg("--threads", threads.toString());
 
 			createArgumentsForFilesets(builder);
 
@@ -104,4 +108,8 @@ public class MergeTask extends CommonMatchingTask {
 		this.dataFile = dataFile;
 	}
 
+	public void setThreads(Integer threads) {
+		this.threads = threads;
+	}
+
 }
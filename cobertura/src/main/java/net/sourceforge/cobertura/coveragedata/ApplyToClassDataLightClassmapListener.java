@@ -0,0 +1,110 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the touch points reported by a class map on the class data, each of them with its hits.
+ */
+@CoverageIgnore
+class ApplyToClassDataLightClassmapListener
+		implements
+			LightClassmapListener {
+	private static final Logger logger = LoggerFactory
+			.getLogger(ApplyToClassDataLightClassmapListener.class);
+
+	//private AtomicInteger idProvider=new AtomicInteger(0);
+	private final ClassData classData;
+	private final int[] res;
+
+	private int currentLine = 0;
+	private int jumpsInLine = 0;
+	private int switchesInLine = 0;
+
+	private void updateLine(int new_line) {
+		if (new_line != currentLine) {
+			currentLine = new_line;
+			jumpsInLine = 0;
+			switchesInLine = 0;
+		}
+	}
+
+	public ApplyToClassDataLightClassmapListener(ClassData cd, int[] res) {
+		classData = cd;
+		this.res = res;
+	}
+
+	public void setSource(String source) {
+		logger.debug("source: {}", source);
+		classData.setSourceFileName(source);
+
+	}
+
+	public void setClazz(Class<?> clazz) {
+	}
+
+	public void setClazz(String clazz) {
+	}
+
+	public void putLineTouchPoint(int classLine, int counterId,
+			String methodName, String methodDescription) {
+		updateLine(classLine);
+		LineData ld = classData.addLine(classLine, methodName,
+				methodDescription);
+		ld.touch(res[counterId]);
+	}
+
+	public void putSwitchTouchPoint(int classLine, int maxBranches,
+			int... counterIds) {
+		updateLine(classLine);
+		LineData ld = getOrCreateLine(classLine);
+		int switchId = switchesInLine++;
+		classData.addLineSwitch(classLine, switchId, 0,
+				counterIds.length - 2, maxBranches);
+		for (int i = 0; i < counterIds.length; i++) {
+			ld.touchSwitch(switchId, i - 1, res[counterIds[i]]);
+		}
+	}
+
+	public void putJumpTouchPoint(int classLine, int trueCounterId,
+			int falseCounterId) {
+		updateLine(classLine);
+		LineData ld = getOrCreateLine(classLine);
+		int branchId = jumpsInLine++;
+		classData.addLineJump(classLine, branchId);
+		ld.touchJump(branchId, true, res[trueCounterId]);
+		ld.touchJump(branchId, false, res[falseCounterId]);
+	}
+
+	private LineData getOrCreateLine(int classLine) {
+		LineData ld = classData.getLineData(classLine);
+		if (ld == null) {
+			ld = classData.addLine(classLine, null, null);
+		}
+		return ld;
+	}
+}
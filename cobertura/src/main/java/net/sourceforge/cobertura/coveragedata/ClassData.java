@@ -408,6 +408,22 @@ public class ClassData extends CoverageDataContainer
 		}
 	}
 
+	/**
+	 * Adds the line to the branches of the class, after its jumps and switches have been added to its
+	 * {@link LineData} directly.
+	 */
+	void addLineBranches(int lineNumber) {
+		lock.lock();
+		try {
+			LineData lineData = getLineData(lineNumber);
+			if (lineData != null && lineData.hasBranch()) {
+				this.branches.put(Integer.valueOf(lineNumber), lineData);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	/**
 	 * Merge some existing instrumentation with this instrumentation.
 	 *
@@ -471,6 +487,18 @@ public class ClassData extends CoverageDataContainer
 		}
 	}
 
+	/**
+	 * @return the source file name as set by {@link #setSourceFileName(String)}, without the package
+	 */
+	String getSourceFileNameWithoutPackage() {
+		lock.lock();
+		try {
+			return sourceFileName;
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	public void setSourceFileName(String sourceFileName) {
 		lock.lock();
 		try {
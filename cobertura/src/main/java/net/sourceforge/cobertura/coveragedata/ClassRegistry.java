@@ -0,0 +1,241 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Registered classes grouped by their class loaders.</p>
+ * <p/>
+ * <p>Class loaders are referenced weakly, so registering a class does not prevent its class loader from being
+ * collected (once the class map of the class is recorded, see {@link RegisteredClass}). When a class loader is
+ * collected, its classes are retired: they are kept (without the classes themselves) only until their counters
+ * are harvested for the last time by {@link #pollRetiredClass()}.</p>
+ * <p/>
+ * <p>The class maps of newly registered classes are recorded by a daemon thread, once their static initializers
+ * have finished, so the classes are released soon after they were loaded and not only by the first harvest.</p>
+ * <p/>
+ * <p>Registration takes no lock.</p>
+ */
+@CoverageIgnore
+class ClassRegistry {
+	private static final Logger logger = LoggerFactory
+			.getLogger(ClassRegistry.class);
+
+	/**
+	 * Key of classes loaded by the bootstrap class loader, that is never collected.
+	 */
+	private static final Object BOOTSTRAP_LOADER = new Object();
+
+	private final ConcurrentMap<Object, ConcurrentMap<String, RegisteredClass>> loaders = new ConcurrentHashMap<Object, ConcurrentMap<String, RegisteredClass>>();
+
+	private final ReferenceQueue<ClassLoader> collectedLoaders = new ReferenceQueue<ClassLoader>();
+
+	private final Queue<RegisteredClass> retiredClasses = new ConcurrentLinkedQueue<RegisteredClass>();
+
+	private final AtomicLong retiredClassesCount = new AtomicLong();
+
+	/**
+	 * Registered classes, whose class maps have not been recorded by the {@link RecorderThread} yet.
+	 */
+	private final BlockingQueue<RegisteredClass> unrecordedClasses = new LinkedBlockingQueue<RegisteredClass>();
+
+	private final AtomicBoolean recorderStarted = new AtomicBoolean();
+
+	void register(Class<?> clazz, Object counters) {
+		register(clazz, counters, false);
+	}
+
+	/**
+	 * Registers the class, unless it has been registered already.
+	 *
+	 * @return the counters of the registered class: the given ones, or the ones registered before
+	 */
+	Object registerIfAbsent(Class<?> clazz, Object counters) {
+		return register(clazz, counters, true);
+	}
+
+	private Object register(Class<?> clazz, Object counters, boolean ifAbsent) {
+		retireCollectedLoaders();
+		ClassLoader loader = clazz.getClassLoader();
+		Object key = loader != null
+				? new LoaderKey(loader, null)
+				: BOOTSTRAP_LOADER;
+		ConcurrentMap<String, RegisteredClass> classes = loaders.get(key);
+		if (classes == null) {
+			classes = new ConcurrentHashMap<String, RegisteredClass>();
+			ConcurrentMap<String, RegisteredClass> previous = loaders
+					.putIfAbsent(loader != null ? new LoaderKey(loader,
+							collectedLoaders) : BOOTSTRAP_LOADER, classes);
+			if (previous != null) {
+				classes = previous;
+			}
+		}
+		RegisteredClass registeredClass = new RegisteredClass(clazz, counters);
+		if (ifAbsent) {
+			RegisteredClass previous = classes.putIfAbsent(clazz.getName(),
+					registeredClass);
+			if (previous != null) {
+				return previous.getCounters();
+			}
+		} else {
+			classes.put(clazz.getName(), registeredClass);
+		}
+		unrecordedClasses.add(registeredClass);
+		if (!recorderStarted.get() && recorderStarted.compareAndSet(false, true)) {
+			new RecorderThread().start();
+		}
+		return counters;
+	}
+
+	/**
+	 * @return classes of class loaders that have not been collected yet
+	 */
+	List<RegisteredClass> getLiveClasses() {
+		retireCollectedLoaders();
+		List<RegisteredClass> res = new ArrayList<RegisteredClass>();
+		for (ConcurrentMap<String, RegisteredClass> classes : loaders.values()) {
+			res.addAll(classes.values());
+		}
+		return res;
+	}
+
+	/**
+	 * Removes a class of a collected class loader. The counters of the class have to be harvested for the last time.
+	 *
+	 * @return the retired class or null if there is none
+	 */
+	RegisteredClass pollRetiredClass() {
+		return retiredClasses.poll();
+	}
+
+	int getLiveClassesCount() {
+		retireCollectedLoaders();
+		int count = 0;
+		for (ConcurrentMap<String, RegisteredClass> classes : loaders.values()) {
+			count += classes.size();
+		}
+		return count;
+	}
+
+	long getRetiredClassesCount() {
+		retireCollectedLoaders();
+		return retiredClassesCount.get();
+	}
+
+	private void retireCollectedLoaders() {
+		Reference<? extends ClassLoader> reference;
+		while ((reference = collectedLoaders.poll()) != null) {
+			ConcurrentMap<String, RegisteredClass> classes = loaders
+					.remove(reference);
+			if (classes != null) {
+				retiredClasses.addAll(classes.values());
+				retiredClassesCount.addAndGet(classes.size());
+			}
+		}
+	}
+
+	/**
+	 * Records the class maps of the registered classes in the order they were registered. Recording a class map
+	 * waits until the static initializer of the class has finished, so the class map method is never invoked from
+	 * within it. The thread sleeps while there is no class to record.
+	 */
+	@CoverageIgnore
+	private class RecorderThread extends Thread {
+		RecorderThread() {
+			super("Cobertura class map recorder");
+			setDaemon(true);
+			// Must not keep the context class loader of the thread that registered the first class.
+			setContextClassLoader(null);
+		}
+
+		@Override
+		public void run() {
+			while (true) {
+				RegisteredClass registeredClass;
+				try {
+					registeredClass = unrecordedClasses.take();
+				} catch (InterruptedException e) {
+					return;
+				}
+				try {
+					registeredClass.recordClassmap();
+				} catch (Exception e) {
+					logger.error("Cannot record class map of "
+							+ registeredClass.getClassName(), e);
+				} catch (LinkageError e) {
+					// The static initializer of the class failed, the class is not harvested.
+					logger.error("Cannot record class map of "
+							+ registeredClass.getClassName(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Weak reference to a class loader, that is equal to other references to the same class loader.
+	 */
+	@CoverageIgnore
+	private static class LoaderKey extends WeakReference<ClassLoader> {
+		private final int hash;
+
+		LoaderKey(ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+			super(loader, queue);
+			hash = System.identityHashCode(loader);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof LoaderKey)) {
+				return false;
+			}
+			ClassLoader loader = get();
+			return loader != null && loader == ((LoaderKey) obj).get();
+		}
+	}
+}
@@ -0,0 +1,761 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+import net.sourceforge.cobertura.instrument.pass3.AbstractCodeProvider;
+import net.sourceforge.cobertura.util.ConfigurationUtil;
+import net.sourceforge.cobertura.util.FileLocker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>File, whose memory mapped region stores the {@link MappedCounters} of all the classes loaded by a JVM.</p>
+ * <p/>
+ * <p>The file starts with a header, followed by records:
+ * <pre>
+ * header:      int magic, int version, int end of the last record, int capacity
+ * counters:    int length of the record, int kind, int number of counters, class name, counters, folded counters
+ * description: int length of the record, int kind, int start of the counters record,
+ *              source file name, touch points of the class map
+ * </pre>
+ * The counters record of a class is appended by its static initializer. The description is appended later, by
+ * {@link MappedCounters#describe(Class)}, once the static initializer has finished, because reading the class map
+ * initializes the enums the class switches on. A record is complete before the end of the last record in the header
+ * is moved behind it, so the file can be {@link #fold(File, ProjectData) folded} into the coverage data at any time,
+ * while the JVM is running or after it died. The counters are written by the probes into the page cache, so they
+ * survive the JVM even if it is killed and no shutdown hook runs, but not a crash of the operating system.</p>
+ * <p/>
+ * <p>Only the counters of described classes are folded. Until a class is described, its counters are harvested by
+ * the JVM like <code>int[]</code> counters, so the hits of a class killed before it was described are lost.</p>
+ * <p/>
+ * <p>Folding is idempotent: the folded counters of a class store the values of its counters when the file was
+ * folded for the last time, and only the hits since then are added to the coverage data. They are written by
+ * {@link Fold#commit()} once the coverage data has been saved. While the JVM is running it holds a lock on the
+ * file, so a file whose JVM has exited is deleted after it has been folded.</p>
+ * <p/>
+ * <p>Every JVM creates a new file, named after the file configured by the
+ * <code>net.sourceforge.cobertura.countersFile</code> property (<code>cobertura.ser.counters</code> by
+ * default), followed by a number if the file exists already. The files named after a data file are folded into
+ * it by {@link #compact(File)}, when it is used by the report, check or merge commands. Files stored elsewhere
+ * have to be merged explicitly.</p>
+ */
+@CoverageIgnore
+public class CountersFile {
+	private static final Logger logger = LoggerFactory
+			.getLogger(CountersFile.class);
+
+	static final int MAGIC = 0xC0BE47C7;
+
+	static final int VERSION = 3;
+
+	private static final int USED_OFFSET = 8;
+
+	private static final int HEADER_SIZE = 16;
+
+	private static final int RECORD_HEADER_SIZE = 12;
+
+	private static final int COUNTERS_RECORD = 0;
+
+	private static final int DESCRIPTION_RECORD = 1;
+
+	/**
+	 * Position of the byte locked by the JVM writing the file. It is far behind the end of the file, so the lock
+	 * doesn't prevent other processes from reading the records on platforms with mandatory locks.
+	 */
+	private static final long LIVE_LOCK_POSITION = Long.MAX_VALUE - 1;
+
+	/**
+	 * Size of the mapped region. The file is sparse, so only the pages that were written take space on disk.
+	 */
+	static final int DEFAULT_CAPACITY = 64 << 20;
+
+	private static final byte LINE = 0;
+
+	private static final byte JUMP = 1;
+
+	private static final byte SWITCH = 2;
+
+	private static CountersFile instance;
+
+	private static boolean opened;
+
+	private final File file;
+
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * Kept open, because closing it would release the {@link #liveLock}.
+	 */
+	private final RandomAccessFile raf;
+
+	/**
+	 * Lock held while this JVM writes the file, or null if the file system doesn't support locks.
+	 */
+	private final FileLock liveLock;
+
+	private final int capacity;
+
+	/**
+	 * End of the last record.
+	 */
+	private int used;
+
+	private boolean full;
+
+	CountersFile(File file, int capacity) throws IOException {
+		this.file = file;
+		this.capacity = capacity;
+		raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(capacity);
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					capacity);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+		FileLock lock = null;
+		try {
+			lock = raf.getChannel().tryLock(LIVE_LOCK_POSITION, 1, false);
+		} catch (IOException e) {
+			logger.warn("Cobertura: Cannot lock counters file "
+					+ file.getAbsolutePath()
+					+ ", it will not be deleted after it has been folded");
+		}
+		liveLock = lock;
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(12, capacity);
+		used = HEADER_SIZE;
+		buffer.putInt(USED_OFFSET, used);
+	}
+
+	/**
+	 * @return the counters file of this JVM, created by the first call, or null if it can't be created
+	 */
+	static synchronized CountersFile getInstance() {
+		if (!opened) {
+			opened = true;
+			String name = new ConfigurationUtil().getCountersFile();
+			try {
+				instance = new CountersFile(createNewFile(name),
+						DEFAULT_CAPACITY);
+				logger.info("Cobertura: Counters are stored in {}",
+						instance.file.getAbsolutePath());
+			} catch (IOException e) {
+				logger.error("Cobertura: Cannot create counters file " + name
+						+ ", the counters are stored on the heap", e);
+			}
+		}
+		return instance;
+	}
+
+	private static File createNewFile(String name) throws IOException {
+		for (int i = 0; i < 1000; i++) {
+			File file = new File(i == 0 ? name : name + "." + i);
+			File parent = file.getAbsoluteFile().getParentFile();
+			if (parent != null) {
+				parent.mkdirs();
+			}
+			if (file.createNewFile()) {
+				return file;
+			}
+		}
+		throw new IOException("Too many counters files exist already");
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Releases the lock on the file, as if the JVM writing it has exited. The counters remain mapped.
+	 */
+	void close() throws IOException {
+		if (liveLock != null) {
+			liveLock.release();
+		}
+		raf.close();
+	}
+
+	/**
+	 * Appends a counters record for the class to the file. Called by the static initializer of the class, so it
+	 * must not use the class except for its name.
+	 *
+	 * @return the counters of the class, or null if the file is full
+	 */
+	MappedCounters allocate(Class<?> clazz, int length) {
+		byte[] name;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeUTF(clazz.getName());
+			out.flush();
+			name = bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		synchronized (this) {
+			int start = append(COUNTERS_RECORD, length, name, length << 3);
+			if (start < 0) {
+				return null;
+			}
+			// the counters are zero in the new file already
+			return new MappedCounters(buffer, getCountersOffset(buffer,
+					start), length, this, start);
+		}
+	}
+
+	/**
+	 * Appends the description of the class, whose counters record starts at the given position.
+	 *
+	 * @return false if the class map can't be read or the file is full
+	 */
+	boolean describe(int countersRecord, Class<?> clazz) {
+		byte[] description;
+		try {
+			description = describe(clazz);
+		} catch (Exception e) {
+			logger.error("Cobertura: Cannot read class map of "
+					+ clazz.getName(), e);
+			return false;
+		}
+		synchronized (this) {
+			return append(DESCRIPTION_RECORD, countersRecord, description, 0) >= 0;
+		}
+	}
+
+	/**
+	 * Appends a record and then moves the end of the last record behind it.
+	 *
+	 * @param value int stored after the kind of the record
+	 * @param data  bytes stored after the record header
+	 * @param tail  number of zero bytes at the end of the record
+	 * @return start of the record, or -1 if the file is full
+	 */
+	private int append(int kind, int value, byte[] data, int tail) {
+		long end = (long) used + align(RECORD_HEADER_SIZE + data.length)
+				+ tail;
+		if (end > capacity) {
+			if (!full) {
+				full = true;
+				logger.warn(
+						"Cobertura: Counters file {} is full, the counters of the following classes are harvested by the JVM",
+						file.getAbsolutePath());
+			}
+			return -1;
+		}
+		int start = used;
+		buffer.putInt(start, (int) end - start);
+		buffer.putInt(start + 4, kind);
+		buffer.putInt(start + 8, value);
+		ByteBuffer view = buffer.duplicate();
+		view.position(start + RECORD_HEADER_SIZE);
+		view.put(data);
+		used = (int) end;
+		buffer.putInt(USED_OFFSET, used);
+		return start;
+	}
+
+	private static int align(int size) {
+		return (size + 3) & ~3;
+	}
+
+	/**
+	 * @return position of the first counter of the counters record. The folded counters follow the counters.
+	 */
+	private static int getCountersOffset(ByteBuffer records, int countersRecord) {
+		return countersRecord + records.getInt(countersRecord)
+				- (records.getInt(countersRecord + 8) << 3);
+	}
+
+	/**
+	 * Records the source file name and the touch points reported by the class map of the class.
+	 */
+	private static byte[] describe(Class<?> clazz) throws Exception {
+		ClassmapWriter writer = new ClassmapWriter();
+		Method m = clazz.getDeclaredMethod(
+				AbstractCodeProvider.COBERTURA_CLASSMAP_METHOD_NAME,
+				LightClassmapListener.class);
+		m.setAccessible(true);
+		m.invoke(null, writer);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(writer.source == null ? "" : writer.source);
+		out.writeInt(writer.touchPoints);
+		writer.out.flush();
+		writer.bytes.writeTo(out);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return true if the file starts with the header of a counters file
+	 */
+	public static boolean isCountersFile(File file) {
+		if (getOwnInstance(file) != null) {
+			return true;
+		}
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return false;
+		}
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				return raf.readInt() == MAGIC;
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the counters files named after the data file, see {@link ConfigurationUtil#getCountersFile()}
+	 */
+	public static List<File> getCountersFiles(File dataFile) {
+		final String name = dataFile.getName() + ".counters";
+		File dir = dataFile.getAbsoluteFile().getParentFile();
+		File[] files = dir.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				String fileName = file.getName();
+				return (fileName.equals(name) || fileName.startsWith(name
+						+ ".")
+						&& isNumber(fileName.substring(name.length() + 1)))
+						&& isCountersFile(file);
+			}
+		});
+		if (files == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+
+	private static boolean isNumber(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (!Character.isDigit(s.charAt(i))) {
+				return false;
+			}
+		}
+		return s.length() > 0;
+	}
+
+	/**
+	 * @return true if the file is locked by the JVM writing it, or if that can't be found out
+	 */
+	static boolean isLive(File file) {
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				FileLock lock = raf.getChannel().tryLock(LIVE_LOCK_POSITION,
+						1, false);
+				if (lock == null) {
+					return true;
+				}
+				lock.release();
+				return false;
+			} catch (OverlappingFileLockException e) {
+				// written by this JVM
+				return true;
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Adds the hits stored in the counters file since it was folded for the last time to the coverage data,
+	 * together with the lines, jumps and switches of the described classes in the file. The JVM, that writes the
+	 * file, may be still running.
+	 * <p/>
+	 * The file is not modified. The returned fold has to be {@link Fold#commit() committed} once the coverage
+	 * data has been saved, otherwise the same hits are added again by the next fold. A file must not be folded by
+	 * two processes at once.
+	 */
+	public static Fold fold(File file, ProjectData projectData)
+			throws IOException {
+		CountersFile own = getOwnInstance(file);
+		// Find out before reading, so no hits written after the file was read are deleted with it
+		boolean live = own != null || isLive(file);
+		ByteBuffer records = own != null
+				? own.copyRecords()
+				: readRecords(file);
+
+		Fold fold = new Fold(file, live, own);
+		Map<Integer, String> classNames = new HashMap<Integer, String>();
+		int start = HEADER_SIZE;
+		while (start < records.limit()) {
+			int recordLength = records.getInt(start);
+			int kind = records.getInt(start + 4);
+			int value = records.getInt(start + 8);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					records.array(), start + RECORD_HEADER_SIZE, recordLength
+							- RECORD_HEADER_SIZE));
+			if (kind == COUNTERS_RECORD) {
+				classNames.put(start, in.readUTF());
+			} else if (kind == DESCRIPTION_RECORD) {
+				String className = classNames.get(value);
+				if (className == null) {
+					throw new IOException("Description of unknown counters at "
+							+ value + " in " + file.getAbsolutePath());
+				}
+				int[] counters = new int[records.getInt(value + 8)];
+				int[] hits = new int[counters.length];
+				int countersOffset = getCountersOffset(records, value);
+				int foldedOffset = countersOffset + (counters.length << 2);
+				for (int i = 0; i < counters.length; i++) {
+					counters[i] = records.getInt(countersOffset + (i << 2));
+					hits[i] = counters[i]
+							- records.getInt(foldedOffset + (i << 2));
+				}
+				fold.folded.put(foldedOffset, counters);
+				ClassData classData = projectData
+						.getOrCreateClassData(className);
+				replay(in, new ApplyToClassDataLightClassmapListener(classData,
+						hits));
+			} else {
+				throw new IOException("Unknown kind of record " + kind
+						+ " in " + file.getAbsolutePath());
+			}
+			start += recordLength;
+		}
+		return fold;
+	}
+
+	private static ByteBuffer readRecords(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC) {
+				throw new IOException(file.getAbsolutePath()
+						+ " is not a counters file");
+			}
+			int version = raf.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported version " + version
+						+ " of counters file " + file.getAbsolutePath());
+			}
+			int end = raf.readInt();
+			byte[] bytes = new byte[end];
+			raf.seek(0);
+			raf.readFully(bytes);
+			return ByteBuffer.wrap(bytes);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return copy of the header and the records of the file
+	 */
+	private synchronized ByteBuffer copyRecords() {
+		byte[] bytes = new byte[used];
+		ByteBuffer view = buffer.duplicate();
+		view.position(0);
+		view.get(bytes);
+		return ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * @return the counters file of this JVM, if it is the file. This JVM reads and writes its own file only
+	 *         through the mapped region, because closing any other descriptor of the file would release the
+	 *         {@link #liveLock} on some platforms.
+	 */
+	private static synchronized CountersFile getOwnInstance(File file) {
+		if (instance != null
+				&& instance.file.getAbsoluteFile().equals(
+						file.getAbsoluteFile())) {
+			return instance;
+		}
+		return null;
+	}
+
+	/**
+	 * Folds the counters files of the data file into it. Does nothing if the data file has no counters files.
+	 */
+	public static void compact(File dataFile) {
+		List<File> countersFiles = getCountersFiles(dataFile);
+		if (countersFiles.isEmpty()) {
+			return;
+		}
+		// See ProjectData.saveGlobalProjectData for the locking
+		synchronized (dataFile.getPath().intern()) {
+			FileLocker fileLocker = new FileLocker(dataFile);
+			try {
+				if (fileLocker.lock()) {
+					doCompact(dataFile, countersFiles);
+				}
+			} finally {
+				fileLocker.release();
+			}
+		}
+	}
+
+	/**
+	 * Must be called with the data file locked. The folds are committed only once the data file has been replaced.
+	 */
+	private static void doCompact(File dataFile, List<File> countersFiles) {
+		ProjectData projectData;
+		if (dataFile.isFile()) {
+			projectData = CoverageDataFileHandler.loadCoverageData(dataFile);
+			if (projectData == null) {
+				// Do not fold the counters into a broken data file
+				return;
+			}
+		} else {
+			projectData = new ProjectData();
+		}
+		List<Fold> folds = new ArrayList<Fold>();
+		for (File countersFile : countersFiles) {
+			try {
+				folds.add(fold(countersFile, projectData));
+			} catch (IOException e) {
+				logger.error("Cobertura: Error reading file "
+						+ countersFile.getAbsolutePath() + ": "
+						+ e.getLocalizedMessage(), e);
+			}
+		}
+		if (folds.isEmpty()) {
+			return;
+		}
+		try {
+			CoverageDataFileHandler.replaceCoverageData(projectData, dataFile);
+		} catch (IOException e) {
+			logger.error("Cobertura: Error folding counters files into "
+					+ dataFile.getAbsolutePath(), e);
+			return;
+		}
+		for (Fold fold : folds) {
+			fold.commitQuietly();
+		}
+		logger.info("Cobertura: Folded " + folds.size()
+				+ " counters files into " + dataFile.getAbsolutePath());
+	}
+
+	private static void replay(DataInputStream in,
+			LightClassmapListener listener) throws IOException {
+		String source = in.readUTF();
+		if (source.length() > 0) {
+			listener.setSource(source);
+		}
+		int touchPoints = in.readInt();
+		for (int i = 0; i < touchPoints; i++) {
+			byte kind = in.readByte();
+			int classLine = in.readInt();
+			if (kind == LINE) {
+				int counterId = in.readInt();
+				String methodName = in.readUTF();
+				listener.putLineTouchPoint(classLine, counterId, methodName, in
+						.readUTF());
+			} else if (kind == JUMP) {
+				int trueCounterId = in.readInt();
+				listener.putJumpTouchPoint(classLine, trueCounterId, in
+						.readInt());
+			} else if (kind == SWITCH) {
+				int maxBranches = in.readInt();
+				int[] counterIds = new int[in.readInt()];
+				for (int j = 0; j < counterIds.length; j++) {
+					counterIds[j] = in.readInt();
+				}
+				listener.putSwitchTouchPoint(classLine, maxBranches,
+						counterIds);
+			} else {
+				throw new IOException("Unknown kind of touch point: " + kind);
+			}
+		}
+	}
+
+	/**
+	 * Hits of a counters file, that have been added to coverage data by {@link CountersFile#fold(File, ProjectData)}.
+	 */
+	@CoverageIgnore
+	public static class Fold {
+		private final File file;
+
+		/**
+		 * True if the JVM writing the file was running when the file was folded.
+		 */
+		private final boolean live;
+
+		/**
+		 * Values of the folded counters by the position of the folded counters in the file.
+		 */
+		private final Map<Integer, int[]> folded = new HashMap<Integer, int[]>();
+
+		/**
+		 * The counters file of this JVM, if it is the folded file.
+		 */
+		private final CountersFile own;
+
+		Fold(File file, boolean live, CountersFile own) {
+			this.file = file;
+			this.live = live;
+			this.own = own;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Marks the hits as folded in the file, so they are not added again by the next fold. The file is deleted
+		 * if its JVM had exited already when the file was folded. Call it once the coverage data with the hits has
+		 * been saved.
+		 */
+		public void commit() throws IOException {
+			if (!live) {
+				if (!file.delete()) {
+					throw new IOException("Cannot delete "
+							+ file.getAbsolutePath());
+				}
+				return;
+			}
+			if (own != null) {
+				for (Map.Entry<Integer, int[]> entry : folded.entrySet()) {
+					int[] counters = entry.getValue();
+					for (int i = 0; i < counters.length; i++) {
+						own.buffer.putInt(entry.getKey() + (i << 2),
+								counters[i]);
+					}
+				}
+				return;
+			}
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				for (Map.Entry<Integer, int[]> entry : folded.entrySet()) {
+					int[] counters = entry.getValue();
+					ByteBuffer bytes = ByteBuffer
+							.allocate(counters.length << 2);
+					bytes.asIntBuffer().put(counters);
+					raf.seek(entry.getKey());
+					raf.write(bytes.array());
+				}
+			} finally {
+				raf.close();
+			}
+		}
+
+		/**
+		 * Does the same as {@link #commit()}, but logs the errors instead of throwing them.
+		 */
+		public void commitQuietly() {
+			try {
+				commit();
+			} catch (IOException e) {
+				logger.error("Cobertura: Cannot mark the counters in "
+						+ file.getAbsolutePath()
+						+ " as folded, they will be folded again", e);
+			}
+		}
+	}
+
+	/**
+	 * Writes the calls of the generated class map method in the format read by {@link #replay}.
+	 */
+	@CoverageIgnore
+	private static class ClassmapWriter implements LightClassmapListener {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private String source;
+		private int touchPoints;
+
+		public void setClazz(Class<?> clazz) {
+		}
+
+		public void setClazz(String clazz) {
+		}
+
+		public void setSource(String source) {
+			this.source = source;
+		}
+
+		public void putLineTouchPoint(int classLine, int counterId,
+				String methodName, String methodDescription) {
+			try {
+				out.writeByte(LINE);
+				out.writeInt(classLine);
+				out.writeInt(counterId);
+				out.writeUTF(methodName);
+				out.writeUTF(methodDescription);
+				touchPoints++;
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		public void putJumpTouchPoint(int classLine, int trueCounterId,
+				int falseCounterId) {
+			try {
+				out.writeByte(JUMP);
+				out.writeInt(classLine);
+				out.writeInt(trueCounterId);
+				out.writeInt(falseCounterId);
+				touchPoints++;
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		public void putSwitchTouchPoint(int classLine, int maxBranches,
+				int... counterIds) {
+			try {
+				out.writeByte(SWITCH);
+				out.writeInt(classLine);
+				out.writeInt(maxBranches);
+				out.writeInt(counterIds.length);
+				for (int counterId : counterIds) {
+					out.writeInt(counterId);
+				}
+				touchPoints++;
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -256,6 +256,10 @@ public abstract class CoverageDataContainer
 
 	/**
 	 * Merge two <code>CoverageDataContainer</code>s.
+	 * <p/>
+	 * Children that exist only in the merged container are not copied, they are added to this container as they
+	 * are. So the merged container must not be modified afterwards, but merging many containers costs no more
+	 * than visiting the children they have in common.
 	 *
 	 * @param coverageData The container to merge into this one.
 	 */
@@ -265,11 +269,12 @@ public abstract class CoverageDataContainer
 		container.synchronizeState();
 		getBothLocks(container);
 		try {
-			Iterator<Object> iter = container.children.keySet().iterator();
+			Iterator<Map.Entry<Object, CoverageData>> iter = container.children
+					.entrySet().iterator();
 			while (iter.hasNext()) {
-				Object key = iter.next();
-				CoverageData newChild = (CoverageData) container.children
-						.get(key);
+				Map.Entry<Object, CoverageData> entry = iter.next();
+				Object key = entry.getKey();
+				CoverageData newChild = entry.getValue();
 				CoverageData existingChild = (CoverageData) this.children
 						.get(key);
 				if (existingChild != null) {
@@ -55,6 +55,14 @@ public abstract class CoverageDataFileHandler {
 		return defaultFile;
 	}
 
+	/**
+	 * Overrides the data file configured by the <code>net.sourceforge.cobertura.datafile</code> property,
+	 * used to save the coverage data of the running JVM.
+	 */
+	public static void setDefaultDataFile(File dataFile) {
+		defaultFile = dataFile;
+	}
+
 	public static ProjectData loadCoverageData(File dataFile) {
 		InputStream is = null;
 		try {
@@ -76,8 +84,27 @@ public abstract class CoverageDataFileHandler {
 				}
 		}
 	}
+
+	/**
+	 * Reads the data in the binary format written by {@link #saveCoverageData(ProjectData, File)}, or the data
+	 * written by Java serialization (as in the data files of older versions).
+	 *
+	 * @param dataFile stream supporting {@link InputStream#mark(int)}
+	 */
 	private static ProjectData loadCoverageData(InputStream dataFile)
 			throws IOException {
+		if (CoverageDataInput.isBinaryFormat(dataFile)) {
+			ProjectData projectData = new CoverageDataInput(dataFile)
+					.readProjectData();
+			logger.info("Cobertura: Loaded information on "
+					+ projectData.getNumberOfClasses() + " classes.");
+			return projectData;
+		}
+		return loadSerializedCoverageData(dataFile);
+	}
+
+	private static ProjectData loadSerializedCoverageData(InputStream dataFile)
+			throws IOException {
 		ObjectInputStream objects = null;
 
 		try {
@@ -128,25 +155,81 @@ public abstract class CoverageDataFileHandler {
 		}
 	}
 
+	/**
+	 * Does the same as {@link #saveCoverageData(ProjectData, File)}, but throws the errors instead of logging them.
+	 */
+	public static void writeCoverageData(ProjectData projectData, File dataFile)
+			throws IOException {
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(
+				dataFile), 16384);
+		try {
+			CoverageDataOutput output = new CoverageDataOutput(os);
+			output.writeProjectData(projectData);
+			output.finish();
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * Like {@link #writeCoverageData(ProjectData, File)}, but the data is written into a temporary file next to the
+	 * data file, that replaces the data file only once it is complete. If the JVM is killed, or the data cannot be
+	 * written, the data file is left as it was.
+	 *
+	 * @throws IOException if the data was not written, then the data file has not been modified
+	 */
+	public static void replaceCoverageData(ProjectData projectData,
+			File dataFile) throws IOException {
+		File dataDir = dataFile.getAbsoluteFile().getParentFile();
+		if (!dataDir.exists()) {
+			dataDir.mkdirs();
+		}
+		File temporaryFile = File.createTempFile(dataFile.getName() + ".",
+				".tmp", dataDir);
+		try {
+			writeCoverageData(projectData, temporaryFile);
+			if (!replace(temporaryFile, dataFile)) {
+				throw new IOException("Cannot replace "
+						+ dataFile.getAbsolutePath() + " by "
+						+ temporaryFile.getAbsolutePath());
+			}
+		} finally {
+			temporaryFile.delete();
+		}
+	}
+
+	private static boolean replace(File temporaryFile, File dataFile) {
+		if (temporaryFile.renameTo(dataFile)) {
+			return true;
+		}
+		// renameTo doesn't replace an existing file on every platform
+		File backupFile = new File(dataFile.getPath() + ".bak");
+		backupFile.delete();
+		if (!dataFile.renameTo(backupFile)) {
+			return false;
+		}
+		if (!temporaryFile.renameTo(dataFile)) {
+			backupFile.renameTo(dataFile);
+			return false;
+		}
+		backupFile.delete();
+		return true;
+	}
+
+	/**
+	 * Writes the data in the binary format of {@link CoverageDataOutput}.
+	 */
 	private static void saveCoverageData(ProjectData projectData,
 			OutputStream dataFile) {
-		ObjectOutputStream objects = null;
-
 		try {
-			objects = new ObjectOutputStream(dataFile);
-			objects.writeObject(projectData);
+			OutputStream os = new BufferedOutputStream(dataFile, 16384);
+			CoverageDataOutput output = new CoverageDataOutput(os);
+			output.writeProjectData(projectData);
+			output.finish();
 			logger.info("Cobertura: Saved information on "
 					+ projectData.getNumberOfClasses() + " classes.");
 		} catch (IOException e) {
-			logger.error("Cobertura: Error writing to object stream.", e);
-		} finally {
-			if (objects != null) {
-				try {
-					objects.close();
-				} catch (IOException e) {
-					logger.error("Cobertura: Error closing object stream.", e);
-				}
-			}
+			logger.error("Cobertura: Error writing coverage data.", e);
 		}
 	}
 }
@@ -0,0 +1,191 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads coverage data written by {@link CoverageDataOutput}, one class at a time.
+ */
+@CoverageIgnore
+public class CoverageDataInput {
+	private final DataInputStream in;
+
+	private final List<String> strings = new ArrayList<String>();
+
+	private boolean finished;
+
+	/**
+	 * Reads the header of the data file.
+	 *
+	 * @throws IOException if the data is not in the binary format, or it was written by a newer version
+	 */
+	public CoverageDataInput(InputStream in) throws IOException {
+		this.in = new DataInputStream(in);
+		if (this.in.readInt() != CoverageDataOutput.MAGIC) {
+			throw new IOException("Not a Cobertura data file");
+		}
+		long version = readVarLong();
+		if (version != CoverageDataOutput.VERSION) {
+			throw new IOException("Unsupported version " + version
+					+ " of the data file");
+		}
+	}
+
+	/**
+	 * @return true if the data starts with the header of the binary format. The stream must support
+	 *         {@link InputStream#mark(int)}, it is reset to where it was.
+	 */
+	public static boolean isBinaryFormat(InputStream in) throws IOException {
+		in.mark(4);
+		try {
+			return new DataInputStream(in).readInt() == CoverageDataOutput.MAGIC;
+		} catch (EOFException e) {
+			return false;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Reads the classes and adds them to a new {@link ProjectData}.
+	 */
+	public ProjectData readProjectData() throws IOException {
+		ProjectData projectData = new ProjectData();
+		ClassData classData;
+		while ((classData = readClass()) != null) {
+			projectData.addClassData(classData);
+		}
+		return projectData;
+	}
+
+	/**
+	 * @return the next class, or null if all the classes have been read
+	 */
+	public ClassData readClass() throws IOException {
+		if (finished || readVarLong() == 0) {
+			finished = true;
+			return null;
+		}
+		ClassData classData = new ClassData(readString());
+		String sourceFileName = readString();
+		if (sourceFileName != null) {
+			classData.setSourceFileName(sourceFileName);
+		}
+		long flags = readVarLong();
+		if ((flags & CoverageDataOutput.CONTAINS_INSTRUMENTATION_INFO) != 0) {
+			classData.setContainsInstrumentationInfo();
+		}
+
+		int methods = readCount();
+		for (int i = 0; i < methods; i++) {
+			classData.getMethodNamesAndDescriptors().add(readString());
+		}
+
+		int lines = readCount();
+		int lineNumber = 0;
+		for (int i = 0; i < lines; i++) {
+			lineNumber += (int) readVarLong();
+			long hits = readVarLong();
+			String methodName = readString();
+			LineData lineData = classData.addLine(lineNumber, methodName,
+					readString());
+			lineData.setHits(hits);
+			if (readBranches(lineData)) {
+				classData.addLineBranches(lineNumber);
+			}
+		}
+		return classData;
+	}
+
+	/**
+	 * @return true if the line has any jump or switch
+	 */
+	private boolean readBranches(LineData lineData) throws IOException {
+		int jumps = readCount();
+		for (int i = 0; i < jumps; i++) {
+			long trueHits = readVarLong();
+			lineData.getJumpData(i).setHits(trueHits, readVarLong());
+		}
+		int switches = readCount();
+		for (int i = 0; i < switches; i++) {
+			int maxBranches = (int) readVarLong();
+			int[] keys = new int[readCount()];
+			for (int j = 0; j < keys.length; j++) {
+				long n = readVarLong();
+				keys[j] = (int) ((n >>> 1) ^ -(n & 1));
+			}
+			long[] hits = new long[readCount()];
+			for (int j = 0; j < hits.length; j++) {
+				hits[j] = readVarLong();
+			}
+			lineData.getSwitchData(i, new SwitchData(i, keys, hits,
+					readVarLong(), maxBranches));
+		}
+		return jumps > 0 || switches > 0;
+	}
+
+	private String readString() throws IOException {
+		int reference = readCount();
+		if (reference == CoverageDataOutput.NULL_STRING) {
+			return null;
+		} else if (reference == CoverageDataOutput.NEW_STRING) {
+			String s = in.readUTF();
+			strings.add(s);
+			return s;
+		}
+		int index = reference - CoverageDataOutput.FIRST_STRING_INDEX;
+		if (index >= strings.size()) {
+			throw new IOException("Invalid string reference " + reference);
+		}
+		return strings.get(index);
+	}
+
+	private int readCount() throws IOException {
+		long count = readVarLong();
+		if (count < 0 || count > Integer.MAX_VALUE) {
+			throw new IOException("Invalid count " + count);
+		}
+		return (int) count;
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+import net.sourceforge.cobertura.util.FileLocker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * <p>Journal of a data file, to which every JVM appends the coverage data it has collected since its last save,
+ * instead of merging it into the data file.</p>
+ * <p/>
+ * <p>Merging reads and rewrites the whole data file, so each of N JVMs saving into the same file costs as much as
+ * the size of the file. Appending a segment costs only as much as the data of the JVM, and the data file lock is
+ * held just for the write. The segments are folded into the data file when the journal grows above the configured
+ * size, and when the data file is used by the report, check, merge or instrument commands.</p>
+ * <pre>
+ * journal: segment*
+ * segment: magic (4 bytes), length (4 bytes), data in the format of {@link CoverageDataOutput}
+ * </pre>
+ * <p>A segment that was not written completely, because the JVM was killed, is ignored. It is overwritten by the
+ * next segment.</p>
+ */
+@CoverageIgnore
+public class CoverageDataJournal {
+	private static final Logger logger = LoggerFactory
+			.getLogger(CoverageDataJournal.class);
+
+	static final int SEGMENT_MAGIC = 0x434F424A;
+
+	static final int SEGMENT_HEADER_LENGTH = 8;
+
+	/**
+	 * @return the journal of the data file
+	 */
+	public static File getJournalFile(File dataFile) {
+		return new File(dataFile.getPath() + ".journal");
+	}
+
+	/**
+	 * Appends the coverage data to the journal of the data file. If the journal is larger than maxSize
+	 * afterwards, it is folded into the data file.
+	 */
+	public static void append(ProjectData projectData, File dataFile,
+			long maxSize) {
+		byte[] segment;
+		try {
+			segment = encode(projectData);
+		} catch (IOException e) {
+			logger.error("Cobertura: Error writing coverage data.", e);
+			return;
+		}
+
+		File journalFile = getJournalFile(dataFile);
+		// See ProjectData.saveGlobalProjectData for the locking
+		synchronized (dataFile.getPath().intern()) {
+			FileLocker fileLocker = new FileLocker(dataFile);
+			try {
+				if (fileLocker.lock()) {
+					long length = appendSegment(segment, journalFile);
+					logger.info("Cobertura: Appended information on "
+							+ projectData.getNumberOfClasses()
+							+ " classes to the journal.");
+					if (length > maxSize) {
+						doCompact(dataFile, journalFile);
+					}
+				}
+			} catch (IOException e) {
+				logger.error("Cobertura: Error writing file "
+						+ journalFile.getAbsolutePath(), e);
+			} finally {
+				fileLocker.release();
+			}
+		}
+	}
+
+	/**
+	 * Folds the journal into the data file and deletes it. Does nothing if the data file has no journal.
+	 */
+	public static void compact(File dataFile) {
+		File journalFile = getJournalFile(dataFile);
+		if (!journalFile.isFile()) {
+			return;
+		}
+		synchronized (dataFile.getPath().intern()) {
+			FileLocker fileLocker = new FileLocker(dataFile);
+			try {
+				if (fileLocker.lock()) {
+					doCompact(dataFile, journalFile);
+				}
+			} catch (IOException e) {
+				logger.error("Cobertura: Error folding "
+						+ journalFile.getAbsolutePath() + " into "
+						+ dataFile.getAbsolutePath() + ": "
+						+ e.getLocalizedMessage(), e);
+			} finally {
+				fileLocker.release();
+			}
+		}
+	}
+
+	/**
+	 * Merges the segments of the journal of the data file into the project data, without modifying the journal.
+	 * Does nothing if the data file has no journal.
+	 */
+	public static void fold(File dataFile, ProjectData projectData)
+			throws IOException {
+		File journalFile = getJournalFile(dataFile);
+		if (!journalFile.isFile()) {
+			return;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(journalFile), 16384));
+		try {
+			int segments = 0;
+			while (true) {
+				byte[] segment;
+				try {
+					int magic = in.readInt();
+					int length = in.readInt();
+					if (magic != SEGMENT_MAGIC || length < 0) {
+						logger.warn("Cobertura: Ignoring the rest of "
+								+ journalFile.getAbsolutePath()
+								+ ", it is corrupted");
+						break;
+					}
+					segment = new byte[length];
+					in.readFully(segment);
+				} catch (EOFException e) {
+					// The end of the journal, or a segment that was not written completely
+					break;
+				}
+				projectData.merge(new CoverageDataInput(
+						new ByteArrayInputStream(segment)).readProjectData());
+				segments++;
+			}
+			logger.info("Cobertura: Folded " + segments
+					+ " segments of the journal.");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Must be called with the data file locked. If the data file cannot be written, it is left as it was, and
+	 * the journal is kept.
+	 */
+	private static void doCompact(File dataFile, File journalFile)
+			throws IOException {
+		ProjectData projectData = null;
+		if (dataFile.isFile()) {
+			projectData = CoverageDataFileHandler.loadCoverageData(dataFile);
+			if (projectData == null) {
+				// Do not lose the journal because of a broken data file
+				return;
+			}
+		} else {
+			projectData = new ProjectData();
+		}
+		fold(dataFile, projectData);
+		// The journal is deleted only once the data file with its segments has replaced the old one
+		CoverageDataFileHandler.replaceCoverageData(projectData, dataFile);
+		if (!journalFile.delete()) {
+			logger.error("Cobertura: Cannot delete "
+					+ journalFile.getAbsolutePath());
+		}
+	}
+
+	private static byte[] encode(ProjectData projectData) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(new byte[SEGMENT_HEADER_LENGTH]);
+		CoverageDataOutput output = new CoverageDataOutput(bytes);
+		output.writeProjectData(projectData);
+		output.finish();
+
+		byte[] segment = bytes.toByteArray();
+		int length = segment.length - SEGMENT_HEADER_LENGTH;
+		writeInt(segment, 0, SEGMENT_MAGIC);
+		writeInt(segment, 4, length);
+		return segment;
+	}
+
+	/**
+	 * Appends the segment after the last complete segment of the journal. Must be called with the data file locked.
+	 *
+	 * @return length of the journal
+	 */
+	private static long appendSegment(byte[] segment, File journalFile)
+			throws IOException {
+		RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+		try {
+			long length = file.length();
+			long end = 0;
+			while (end + SEGMENT_HEADER_LENGTH <= length) {
+				file.seek(end);
+				if (file.readInt() != SEGMENT_MAGIC) {
+					break;
+				}
+				long next = end + SEGMENT_HEADER_LENGTH
+						+ (file.readInt() & 0xFFFFFFFFL);
+				if (next > length) {
+					break;
+				}
+				end = next;
+			}
+			if (end != length) {
+				logger.warn("Cobertura: Discarding " + (length - end)
+						+ " bytes of an incomplete segment of the journal");
+			}
+			file.seek(end);
+			file.write(segment);
+			file.setLength(end + segment.length);
+			return end + segment.length;
+		} finally {
+			file.close();
+		}
+	}
+
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * <p>Writes coverage data in the binary format of the data file, one class at a time. The data is read back by
+ * {@link CoverageDataInput}.</p>
+ * <p/>
+ * <p>The format is much more compact than Java serialization of the {@link ProjectData}: all the numbers are
+ * written as variable length integers, and every class name, source file name, method name and descriptor is
+ * written only once. Each following occurrence of the string refers to it by its index. Packages and source files
+ * are not written at all, they are rebuilt from the classes by {@link ProjectData#addClassData(ClassData)}.</p>
+ * <pre>
+ * file:   magic, version, (1, class)*, 0
+ * class:  name, source file name, flags, method count, method*, line count, line*
+ * line:   line number (difference to the previous line), hits, method name, method descriptor,
+ *         jump count, (true hits, false hits)*, switch count, switch*
+ * switch: max branches, key count, key*, hits count, hits*, default hits
+ * string: 0 for null, 1 followed by a new string in modified UTF-8, or 2 + index of a string written before
+ * </pre>
+ */
+@CoverageIgnore
+public class CoverageDataOutput {
+	/**
+	 * The first bytes of a data file in the binary format. A data file written by Java serialization starts with
+	 * 0xACED.
+	 */
+	static final int MAGIC = 0x434F4244;
+
+	static final int VERSION = 1;
+
+	static final int NULL_STRING = 0;
+
+	static final int NEW_STRING = 1;
+
+	static final int FIRST_STRING_INDEX = 2;
+
+	static final int CONTAINS_INSTRUMENTATION_INFO = 1;
+
+	private final DataOutputStream out;
+
+	private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+	private boolean finished;
+
+	/**
+	 * Writes the header of the data file.
+	 */
+	public CoverageDataOutput(OutputStream out) throws IOException {
+		this.out = new DataOutputStream(out);
+		this.out.writeInt(MAGIC);
+		writeVarLong(VERSION);
+	}
+
+	public void writeProjectData(ProjectData projectData) throws IOException {
+		for (Object classData : projectData.getClasses()) {
+			writeClass((ClassData) classData);
+		}
+	}
+
+	public void writeClass(ClassData classData) throws IOException {
+		if (finished) {
+			throw new IllegalStateException("The data has been finished");
+		}
+		writeVarLong(1);
+		writeString(classData.getName());
+		writeString(classData.getSourceFileNameWithoutPackage());
+		writeVarLong(classData.containsInstrumentationInfo()
+				? CONTAINS_INSTRUMENTATION_INFO
+				: 0);
+
+		Set<String> methods = new TreeSet<String>(classData
+				.getMethodNamesAndDescriptors());
+		writeVarLong(methods.size());
+		for (String method : methods) {
+			writeString(method);
+		}
+
+		Set<CoverageData> lines = classData.getLines();
+		writeVarLong(lines.size());
+		int previousLine = 0;
+		for (CoverageData line : lines) {
+			LineData lineData = (LineData) line;
+			writeVarLong(lineData.getLineNumber() - previousLine);
+			previousLine = lineData.getLineNumber();
+			writeVarLong(lineData.getHits());
+			writeString(lineData.getMethodName());
+			writeString(lineData.getMethodDescriptor());
+			writeBranches(lineData);
+		}
+	}
+
+	private void writeBranches(LineData lineData) throws IOException {
+		List<JumpData> jumps = new ArrayList<JumpData>();
+		List<SwitchData> switches = new ArrayList<SwitchData>();
+		for (int i = 0; i < lineData.getConditionSize(); i++) {
+			Object condition = lineData.getConditionData(i);
+			if (condition instanceof JumpData) {
+				jumps.add((JumpData) condition);
+			} else {
+				switches.add((SwitchData) condition);
+			}
+		}
+
+		writeVarLong(jumps.size());
+		for (JumpData jump : jumps) {
+			writeVarLong(jump.getTrueHits());
+			writeVarLong(jump.getFalseHits());
+		}
+		writeVarLong(switches.size());
+		for (SwitchData switchData : switches) {
+			writeVarLong(switchData.getMaxBranches());
+			int[] keys = switchData.getKeys();
+			writeVarLong(keys.length);
+			for (int key : keys) {
+				writeVarLong(zigZag(key));
+			}
+			long[] hits = switchData.getAllHits();
+			writeVarLong(hits.length);
+			for (long hit : hits) {
+				writeVarLong(hit);
+			}
+			writeVarLong(switchData.getDefaultHits());
+		}
+	}
+
+	/**
+	 * Writes the end of the data and flushes it. The underlying stream is not closed.
+	 */
+	public void finish() throws IOException {
+		if (!finished) {
+			finished = true;
+			writeVarLong(0);
+			out.flush();
+		}
+	}
+
+	private void writeString(String s) throws IOException {
+		if (s == null) {
+			writeVarLong(NULL_STRING);
+			return;
+		}
+		Integer index = strings.get(s);
+		if (index != null) {
+			writeVarLong(FIRST_STRING_INDEX + index);
+		} else {
+			strings.put(s, strings.size());
+			writeVarLong(NEW_STRING);
+			out.writeUTF(s);
+		}
+	}
+
+	private void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static long zigZag(int value) {
+		return ((long) value << 1) ^ (value >> 31);
+	}
+}
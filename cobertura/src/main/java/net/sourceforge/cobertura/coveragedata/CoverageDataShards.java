@@ -0,0 +1,195 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+import net.sourceforge.cobertura.util.FileLocker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Shards of a data file. In shard mode every save of a JVM writes the coverage data collected since its last
+ * save into a new file next to the data file, instead of merging it into the data file. Nothing is locked, so
+ * hundreds of forked JVMs can save at the same time without waiting for each other.</p>
+ * <p/>
+ * <p>A shard is named <code>&lt;data file&gt;.&lt;unique number&gt;.shard</code>. It is written under a temporary
+ * name and then renamed, so a shard is never read before it is complete. The shards are folded into the data
+ * file, and deleted, when the data file is used by the report, check, merge or instrument commands.</p>
+ */
+@CoverageIgnore
+public class CoverageDataShards {
+	private static final Logger logger = LoggerFactory
+			.getLogger(CoverageDataShards.class);
+
+	static final String SHARD_SUFFIX = ".shard";
+
+	static final String TEMPORARY_SUFFIX = ".tmp";
+
+	/**
+	 * Writes the coverage data into a new shard of the data file.
+	 */
+	public static void save(ProjectData projectData, File dataFile) {
+		File dir = dataFile.getAbsoluteFile().getParentFile();
+		try {
+			if (!dir.exists()) {
+				dir.mkdirs();
+			}
+			File temporaryFile = File.createTempFile(dataFile.getName() + ".",
+					SHARD_SUFFIX + TEMPORARY_SUFFIX, dir);
+			try {
+				CoverageDataFileHandler.writeCoverageData(projectData,
+						temporaryFile);
+			} catch (IOException e) {
+				temporaryFile.delete();
+				throw e;
+			}
+			String name = temporaryFile.getName();
+			File shardFile = new File(dir, name.substring(0, name.length()
+					- TEMPORARY_SUFFIX.length()));
+			if (!temporaryFile.renameTo(shardFile)) {
+				logger.error("Cobertura: Cannot rename "
+						+ temporaryFile.getAbsolutePath() + " to "
+						+ shardFile.getAbsolutePath());
+			}
+			logger.info("Cobertura: Saved information on "
+					+ projectData.getNumberOfClasses() + " classes to "
+					+ shardFile.getAbsolutePath());
+		} catch (IOException e) {
+			logger.error("Cobertura: Error writing a shard of "
+					+ dataFile.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * @return the complete shards of the data file, sorted by name
+	 */
+	public static List<File> getShardFiles(File dataFile) {
+		final String prefix = dataFile.getName() + ".";
+		File dir = dataFile.getAbsoluteFile().getParentFile();
+		File[] files = dir.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				String name = file.getName();
+				return name.startsWith(prefix) && name.endsWith(SHARD_SUFFIX)
+						&& isNumber(name.substring(prefix.length(), name.length()
+								- SHARD_SUFFIX.length())) && file.isFile();
+			}
+		});
+		if (files == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(files);
+		return Arrays.asList(files);
+	}
+
+	private static boolean isNumber(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (!Character.isDigit(s.charAt(i))) {
+				return false;
+			}
+		}
+		return s.length() > 0;
+	}
+
+	/**
+	 * Merges the shards of the data file into the project data, without deleting them.
+	 *
+	 * @return the shards that have been merged. Shards that cannot be read are skipped.
+	 */
+	public static List<File> fold(File dataFile, ProjectData projectData) {
+		List<File> folded = new ArrayList<File>();
+		for (File shardFile : getShardFiles(dataFile)) {
+			ProjectData shard = CoverageDataFileHandler
+					.loadCoverageData(shardFile);
+			if (shard != null) {
+				projectData.merge(shard);
+				folded.add(shardFile);
+			}
+		}
+		return folded;
+	}
+
+	/**
+	 * Folds the shards into the data file and deletes them. Does nothing if the data file has no shards.
+	 */
+	public static void compact(File dataFile) {
+		if (getShardFiles(dataFile).isEmpty()) {
+			return;
+		}
+		// See ProjectData.saveGlobalProjectData for the locking
+		synchronized (dataFile.getPath().intern()) {
+			FileLocker fileLocker = new FileLocker(dataFile);
+			try {
+				if (fileLocker.lock()) {
+					doCompact(dataFile);
+				}
+			} finally {
+				fileLocker.release();
+			}
+		}
+	}
+
+	/**
+	 * Must be called with the data file locked. If the data file cannot be written, it is left as it was, and
+	 * the shards are kept.
+	 */
+	private static void doCompact(File dataFile) {
+		ProjectData projectData;
+		if (dataFile.isFile()) {
+			projectData = CoverageDataFileHandler.loadCoverageData(dataFile);
+			if (projectData == null) {
+				// Do not lose the shards because of a broken data file
+				return;
+			}
+		} else {
+			projectData = new ProjectData();
+		}
+		List<File> folded = fold(dataFile, projectData);
+		if (folded.isEmpty()) {
+			return;
+		}
+		try {
+			// The shards are deleted only once the data file with their data has replaced the old one
+			CoverageDataFileHandler.replaceCoverageData(projectData, dataFile);
+		} catch (IOException e) {
+			logger.error("Cobertura: Error folding shards into "
+					+ dataFile.getAbsolutePath(), e);
+			return;
+		}
+		for (File shardFile : folded) {
+			if (!shardFile.delete()) {
+				logger.error("Cobertura: Cannot delete "
+						+ shardFile.getAbsolutePath());
+			}
+		}
+		logger.info("Cobertura: Folded " + folded.size() + " shards into "
+				+ dataFile.getAbsolutePath());
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+/**
+ * <p>Counters of a single instrumented class, kept in two buffers.</p>
+ * <p/>
+ * <p>The probes increment the first buffer, which is never written by the harvest. The second buffer holds
+ * the values of the counters at the previous harvest, so {@link #drainTo(int[])} reports the hits since then
+ * as the difference of the two buffers and doesn't allocate anything.</p>
+ * <p/>
+ * <p>Resetting the counters in place (as <code>int[]</code> counters are reset) races with a probe that
+ * has read a counter before the reset and stores the incremented value after it, and the whole value is then
+ * reported once more. Here such an increment is just reported by the next harvest. Like with <code>int[]</code>
+ * counters, increments of the same counter by several threads at once may still be lost, but a counter that was
+ * hit is always reported as hit.</p>
+ */
+@CoverageIgnore
+public class DoubleBufferedCounters {
+	/**
+	 * Incremented by the probes.
+	 */
+	private final int[] counters;
+
+	/**
+	 * Values of the {@link #counters} at the previous harvest.
+	 */
+	private final int[] harvested;
+
+	public DoubleBufferedCounters(int length) {
+		counters = new int[length];
+		harvested = new int[length];
+	}
+
+	public int length() {
+		return counters.length;
+	}
+
+	public void increment(int counterId) {
+		counters[counterId]++;
+	}
+
+	/**
+	 * Stores the hits since the previous harvest into the scratch array.
+	 * <p/>
+	 * The hits are computed in int arithmetic, so they are exact even if a counter overflows, unless a counter
+	 * is hit more than {@link Integer#MAX_VALUE} times between two harvests.
+	 *
+	 * @param scratch array of at least {@link #length()} elements, its first {@link #length()} elements are overwritten
+	 * @return true if any counter was hit since the previous harvest
+	 */
+	public synchronized boolean drainTo(int[] scratch) {
+		boolean hit = false;
+		for (int i = 0; i < counters.length; i++) {
+			int value = counters[i];
+			int hits = value - harvested[i];
+			scratch[i] = hits;
+			if (hits != 0) {
+				harvested[i] = value;
+				hit = true;
+			}
+		}
+		return hit;
+	}
+
+	/**
+	 * @return the hits since the previous harvest, see {@link #drainTo(int[])}
+	 */
+	public int[] getAndReset() {
+		int[] res = new int[counters.length];
+		drainTo(res);
+		return res;
+	}
+}
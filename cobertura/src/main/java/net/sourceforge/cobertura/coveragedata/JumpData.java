@@ -65,6 +65,16 @@ public class JumpData
 		return this.conditionNumber - ((JumpData) o).conditionNumber;
 	}
 
+	void setHits(long trueHits, long falseHits) {
+		lock.lock();
+		try {
+			this.trueHits = trueHits;
+			this.falseHits = falseHits;
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	void touchBranch(boolean branch, int new_hits) {
 		lock.lock();
 		try {
@@ -217,6 +217,10 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 		this.hits += new_hits;
 	}
 
+	void setHits(long hits) {
+		this.hits = hits;
+	}
+
 	void touchJump(int jumpNumber, boolean branch, int hits) {
 		getJumpData(jumpNumber).touchBranch(branch, hits);
 	}
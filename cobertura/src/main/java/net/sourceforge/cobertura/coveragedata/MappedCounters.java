@@ -0,0 +1,180 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>Counters of a single instrumented class, stored in a region of a {@link CountersFile}.</p>
+ * <p/>
+ * <p>The probes increment the counters in the memory mapped file directly, so the hits are in the file as soon
+ * as they happen and survive the JVM, even if it is killed. Once the class is {@link #describe(Class) described}
+ * in the file, its hits are reported only by folding the file into the coverage data with
+ * {@link CountersFile#fold(java.io.File, ProjectData)}, so {@link #drainTo(int[])} never reports anything for
+ * them and the hits are not counted twice. The counters files named after the data file are folded into it when it
+ * is used by the report, check or merge commands; files stored elsewhere have to be merged into the data file with
+ * <code>cobertura-merge</code>.</p>
+ * <p/>
+ * <p>When the counters file can't be created or is full, the counters are stored on the heap instead, and then
+ * they are harvested like <code>int[]</code> counters. So are the counters of a class, that has not been
+ * described yet.</p>
+ * <p/>
+ * <p>Like with <code>int[]</code> counters, increments of the same counter by several threads at once may
+ * be lost.</p>
+ */
+@CoverageIgnore
+public class MappedCounters {
+	private final ByteBuffer buffer;
+
+	/**
+	 * Position of the first counter in the {@link #buffer}.
+	 */
+	private final int offset;
+
+	private final int length;
+
+	/**
+	 * The counters file, whose mapped region is the {@link #buffer}, or null if the counters are stored on the heap.
+	 */
+	private final CountersFile countersFile;
+
+	/**
+	 * Start of the counters record in the {@link #countersFile}.
+	 */
+	private final int record;
+
+	/**
+	 * True once the class has been described in the {@link #countersFile}.
+	 */
+	private boolean described;
+
+	MappedCounters(ByteBuffer buffer, int offset, int length,
+			CountersFile countersFile, int record) {
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+		this.countersFile = countersFile;
+		this.record = record;
+	}
+
+	/**
+	 * Allocates the counters of the class in the counters file of this JVM. The code injected into static
+	 * initializers of instrumented classes calls this method.
+	 * <p/>
+	 * Only the name of the class is used, the class map is written into the file later by {@link #describe(Class)}.
+	 *
+	 * @param clazz  the instrumented class
+	 * @param length number of counters of the class
+	 */
+	public static MappedCounters create(Class<?> clazz, int length) {
+		CountersFile countersFile = CountersFile.getInstance();
+		if (countersFile != null) {
+			MappedCounters counters = countersFile.allocate(clazz, length);
+			if (counters != null) {
+				return counters;
+			}
+		}
+		return new MappedCounters(ByteBuffer.allocate(length << 2), 0, length,
+				null, 0);
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return true if the counters are stored in a counters file
+	 */
+	public boolean isMapped() {
+		return countersFile != null;
+	}
+
+	/**
+	 * @return true if the class is described in the counters file, so its hits are reported by folding the file
+	 */
+	public synchronized boolean isDescribed() {
+		return described;
+	}
+
+	/**
+	 * Writes the class map of the class into the counters file, unless it has been written already. From then on
+	 * the hits are reported only by folding the file. Must not be called from the static initializer of the class.
+	 *
+	 * @param clazz the class, whose counters these are
+	 */
+	synchronized void describe(Class<?> clazz) {
+		if (countersFile != null && !described) {
+			described = countersFile.describe(record, clazz);
+		}
+	}
+
+	public void increment(int counterId) {
+		int index = offset + (counterId << 2);
+		buffer.putInt(index, buffer.getInt(index) + 1);
+	}
+
+	/**
+	 * @return value of the counter, as stored in the counters file
+	 */
+	public int get(int counterId) {
+		return buffer.getInt(offset + (counterId << 2));
+	}
+
+	/**
+	 * Stores the hits since the previous harvest into the scratch array. Counters of a class described in the
+	 * counters file are reported by folding the file, so for them the scratch array is cleared.
+	 *
+	 * @param scratch array of at least {@link #length()} elements, its first {@link #length()} elements are overwritten
+	 * @return true if any counter was hit since the previous harvest
+	 */
+	public synchronized boolean drainTo(int[] scratch) {
+		if (described) {
+			Arrays.fill(scratch, 0, length, 0);
+			return false;
+		}
+		boolean hit = false;
+		for (int i = 0; i < length; i++) {
+			int index = offset + (i << 2);
+			int value = buffer.getInt(index);
+			scratch[i] = value;
+			if (value != 0) {
+				buffer.putInt(index, 0);
+				hit = true;
+			}
+		}
+		return hit;
+	}
+
+	/**
+	 * @return the hits since the previous harvest, see {@link #drainTo(int[])}
+	 */
+	public int[] getAndReset() {
+		int[] res = new int[length];
+		drainTo(res);
+		return res;
+	}
+}
@@ -30,14 +30,18 @@
 package net.sourceforge.cobertura.coveragedata;
 
 import net.sourceforge.cobertura.CoverageIgnore;
+import net.sourceforge.cobertura.util.ConfigurationUtil;
 import net.sourceforge.cobertura.util.FileLocker;
 import net.sourceforge.cobertura.util.ShutdownHooks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
 @CoverageIgnore
@@ -45,16 +49,42 @@ public class ProjectData extends CoverageDataContainer {
 	private static final Logger logger = LoggerFactory.getLogger(ProjectData.class);
 	private static final long serialVersionUID = 6;
 
-	private static ProjectData globalProjectData = null;
+	private static volatile ProjectData globalProjectData = null;
 
 	private static Thread shutdownHook;
+
+	/**
+	 * Saves the coverage data in the background, if the <code>net.sourceforge.cobertura.flushInterval</code>
+	 * property is set.
+	 */
+	private static Timer flushTimer;
+
+	/**
+	 * Number of {@link #saveGlobalProjectData()} calls in progress.
+	 */
+	private static final AtomicInteger savesInProgress = new AtomicInteger();
 	private static final transient Lock globalProjectDataLock = new ReentrantLock();
 
+	/**
+	 * How long to wait before checking again, whether the saved project data is still being modified.
+	 */
+	private static final long WRITERS_POLL_NANOS = 100000L;
+
+	/**
+	 * How long to wait for the threads that modify the saved project data, before it is saved anyway.
+	 */
+	static long writersTimeoutNanos = 5000000000L;
+
 	/**
 	 * This collection is used for quicker access to the list of classes.
 	 */
 	private Map classes = new HashMap();
 
+	/**
+	 * Number of threads that modify this instance as the global project data, see {@link #acquireGlobalProjectData()}.
+	 */
+	private final transient AtomicInteger globalDataWriters = new AtomicInteger();
+
 	public void addClassData(ClassData classData) {
 		lock.lock();
 		try {
@@ -179,11 +209,11 @@ public class ProjectData extends CoverageDataContainer {
 		try {
 			super.merge(coverageData);
 
-			for (Iterator iter = projectData.classes.keySet().iterator(); iter
+			for (Iterator iter = projectData.classes.entrySet().iterator(); iter
 					.hasNext();) {
-				Object key = iter.next();
-				if (!this.classes.containsKey(key)) {
-					this.classes.put(key, projectData.classes.get(key));
+				Map.Entry entry = (Map.Entry) iter.next();
+				if (!this.classes.containsKey(entry.getKey())) {
+					this.classes.put(entry.getKey(), entry.getValue());
 				}
 			}
 		} finally {
@@ -200,6 +230,11 @@ public class ProjectData extends CoverageDataContainer {
 	 * is not called by any of the Cobertura code or ant tasks.
 	 */
 	public static ProjectData getGlobalProjectData() {
+		ProjectData projectData = globalProjectData;
+		if (projectData != null) {
+			return projectData;
+		}
+
 		globalProjectDataLock.lock();
 		try {
 			if (globalProjectData != null)
@@ -214,6 +249,26 @@ public class ProjectData extends CoverageDataContainer {
 		}
 	}
 
+	/**
+	 * Like {@link #getGlobalProjectData()}, but the returned instance is not saved until it is released by
+	 * {@link #releaseGlobalProjectData(ProjectData)}, so it can be safely modified in the meantime.
+	 */
+	public static ProjectData acquireGlobalProjectData() {
+		while (true) {
+			ProjectData projectData = getGlobalProjectData();
+			projectData.globalDataWriters.incrementAndGet();
+			if (projectData == globalProjectData) {
+				return projectData;
+			}
+			// The instance has just been replaced in order to be saved.
+			projectData.globalDataWriters.decrementAndGet();
+		}
+	}
+
+	public static void releaseGlobalProjectData(ProjectData projectData) {
+		projectData.globalDataWriters.decrementAndGet();
+	}
+
 	// TODO: Is it possible to do this as a static initializer?
 	private static void initialize() {
 		// Hack for Tomcat - by saving project data right now we force loading
@@ -237,12 +292,53 @@ public class ProjectData extends CoverageDataContainer {
 		// Add a hook to save the data when the JVM exits
 		shutdownHook = new Thread(new SaveTimer());
 		Runtime.getRuntime().addShutdownHook(shutdownHook);
-		// Possibly also save the coverage data every x seconds?
-		//Timer timer = new Timer(true);
-		//timer.schedule(saveTimer, 100);
+
+		// Save the coverage data every x seconds, so it is not lost if the JVM is killed
+		long flushInterval = new ConfigurationUtil().getFlushInterval();
+		if (flushInterval > 0) {
+			flushTimer = scheduleFlush(flushInterval * 1000);
+		}
+	}
+
+	/**
+	 * Starts a daemon thread that saves the coverage data periodically. The next flush is scheduled only
+	 * when the previous one has finished, and a flush is skipped while another save is in progress, so
+	 * flushes never pile up under load. Instrumented code never waits for the flush.
+	 *
+	 * @param intervalMillis - delay between the end of a flush and the start of the next one
+	 */
+	static Timer scheduleFlush(long intervalMillis) {
+		Timer timer = new Timer("Cobertura flush", true);
+		timer.schedule(new FlushTask(), intervalMillis, intervalMillis);
+		return timer;
+	}
+
+	@CoverageIgnore
+	private static class FlushTask extends TimerTask {
+		public void run() {
+			if (savesInProgress.get() > 0) {
+				logger.debug("Skipping flush, coverage data is being saved");
+				return;
+			}
+			try {
+				saveGlobalProjectData();
+			} catch (Throwable t) {
+				// An exception would cancel the timer
+				logger.error("Cannot save coverage data", t);
+			}
+		}
 	}
 
 	public static void saveGlobalProjectData() {
+		savesInProgress.incrementAndGet();
+		try {
+			doSaveGlobalProjectData();
+		} finally {
+			savesInProgress.decrementAndGet();
+		}
+	}
+
+	private static void doSaveGlobalProjectData() {
 		ProjectData projectDataToSave = null;
 
 		globalProjectDataLock.lock();
@@ -250,9 +346,8 @@ public class ProjectData extends CoverageDataContainer {
 			projectDataToSave = getGlobalProjectData();
 
 			/*
-			 * The next statement is not necessary at the moment, because this method is only called
-			 * either at the very beginning or at the very end of a test.  If the code is changed
-			 * to save more frequently, then this will become important.
+			 * The data can be saved periodically (see scheduleFlush), so hits registered
+			 * while saving have to go to a new instance.
 			 */
 			globalProjectData = new ProjectData();
 		} finally {
@@ -260,19 +355,37 @@ public class ProjectData extends CoverageDataContainer {
 		}
 
 		/*
-		 * Now sleep a bit in case there is a thread still holding a reference to the "old"
-		 * globalProjectData (now referenced with projectDataToSave).  
-		 * We want it to finish its updates.  I assume 1 second is plenty of time.
+		 * Threads that acquired the "old" globalProjectData (now referenced with projectDataToSave)
+		 * before it was replaced may still be updating it. Wait until they have released it.
+		 * No other thread can acquire it anymore. A thread that never releases it (for example one that
+		 * is blocked during the shutdown) must not block the save forever.
 		 */
-		try {
-			Thread.sleep(1000);
-		} catch (InterruptedException e) {
+		long deadline = System.nanoTime() + writersTimeoutNanos;
+		while (projectDataToSave.globalDataWriters.get() > 0) {
+			if (System.nanoTime() - deadline >= 0) {
+				logger.warn("Cobertura: "
+						+ projectDataToSave.globalDataWriters.get()
+						+ " threads are still modifying the coverage data, saving it anyway");
+				break;
+			}
+			LockSupport.parkNanos(WRITERS_POLL_NANOS);
 		}
 
 		TouchCollector.applyTouchesOnProjectData(projectDataToSave);
 
-		// Get a file lock
 		File dataFile = CoverageDataFileHandler.getDefaultDataFile();
+		ConfigurationUtil config = new ConfigurationUtil();
+		if (config.getShards()) {
+			CoverageDataShards.save(projectDataToSave, dataFile);
+			return;
+		}
+		if (config.getJournal()) {
+			CoverageDataJournal.append(projectDataToSave, dataFile, config
+					.getJournalMaxSize());
+			return;
+		}
+
+		// Get a file lock
 		/*
 		 * A note about the next synchronized block:  Cobertura uses static fields to
 		 * hold the data.   When there are multiple classloaders, each classloader
@@ -298,15 +411,38 @@ public class ProjectData extends CoverageDataContainer {
 				// Read the old data, merge our current data into it, then
 				// write a new ser file.
 				if (fileLocker.lock()) {
-					ProjectData datafileProjectData = loadCoverageDataFromDatafile(dataFile);
-					if (datafileProjectData == null) {
-						datafileProjectData = projectDataToSave;
-					} else {
+					ProjectData datafileProjectData = projectDataToSave;
+					if (dataFile.isFile()) {
+						datafileProjectData = CoverageDataFileHandler
+								.loadCoverageData(dataFile);
+						if (datafileProjectData == null) {
+							// Replacing the file would lose the data saved by the previous flushes
+							logger.error("Cobertura: Coverage data file "
+									+ dataFile.getAbsolutePath()
+									+ " cannot be read, it is left as it is");
+							keepUnsaved(projectDataToSave);
+							return;
+						}
 						datafileProjectData.merge(projectDataToSave);
+					} else {
+						logger.info("Cobertura: Coverage data file "
+								+ dataFile.getAbsolutePath()
+								+ " does not exist.  Creating a new data file.");
 					}
-					CoverageDataFileHandler.saveCoverageData(
+					/*
+					 * The data file is replaced only once the new one is complete, so a JVM
+					 * killed during a (periodic) save does not leave a broken data file.
+					 */
+					CoverageDataFileHandler.replaceCoverageData(
 							datafileProjectData, dataFile);
+					logger.info("Cobertura: Saved information on "
+							+ datafileProjectData.getNumberOfClasses()
+							+ " classes.");
 				}
+			} catch (IOException e) {
+				logger.error("Cobertura: Error writing file "
+						+ dataFile.getAbsolutePath(), e);
+				keepUnsaved(projectDataToSave);
 			} finally {
 				// Release the file lock
 				fileLocker.release();
@@ -318,25 +454,21 @@ public class ProjectData extends CoverageDataContainer {
 		if (shutdownHook != null) {
 			Runtime.getRuntime().removeShutdownHook(shutdownHook);
 		}
-	}
-
-	private static ProjectData loadCoverageDataFromDatafile(File dataFile) {
-		ProjectData projectData = null;
-
-		// Read projectData from the serialized file.
-		if (dataFile.isFile()) {
-			projectData = CoverageDataFileHandler.loadCoverageData(dataFile);
+		if (flushTimer != null) {
+			flushTimer.cancel();
 		}
+	}
 
-		if (projectData == null) {
-			// We could not read from the serialized file, so use a new object.
-			logger
-					.info("Cobertura: Coverage data file "
-							+ dataFile.getAbsolutePath()
-							+ " either does not exist or is not readable.  Creating a new data file.");
+	/**
+	 * Merges data that could not be saved back into the global project data, so it is saved by the next save.
+	 */
+	private static void keepUnsaved(ProjectData projectData) {
+		ProjectData globalData = acquireGlobalProjectData();
+		try {
+			globalData.merge(projectData);
+		} finally {
+			releaseGlobalProjectData(globalData);
 		}
-
-		return projectData;
 	}
 
 }
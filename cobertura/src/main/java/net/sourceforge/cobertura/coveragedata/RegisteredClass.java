@@ -0,0 +1,450 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+import net.sourceforge.cobertura.instrument.pass3.AbstractCodeProvider;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <p>Instrumented class registered by {@link TouchCollector#registerClass(Class, Object)} together with the
+ * object that stores its counters.</p>
+ * <p/>
+ * <p>The counters are harvested directly from the counters object, so flushing the coverage data doesn't
+ * call the generated <code>__cobertura_get_and_reset_counters</code> method by reflection. The class map
+ * is asked for only once: the touch points reported by the generated <code>__cobertura_classmap</code>
+ * method are kept in an index, and every following flush applies the hit counters through it.</p>
+ * <p/>
+ * <p>The class is referenced strongly only until its class map is recorded, so the class can't be unloaded
+ * before. The {@link ClassRegistry} records it in the background shortly after the class is registered, without
+ * waiting for a harvest. After that the counters and the recorded class map are all that is needed to harvest the
+ * class, so it can be unloaded together with its class loader.</p>
+ */
+@CoverageIgnore
+class RegisteredClass {
+	private final String className;
+
+	private final WeakReference<Class<?>> classReference;
+
+	/**
+	 * The registered class, until its class map is recorded.
+	 */
+	private volatile Class<?> clazz;
+
+	/**
+	 * The counters field of the class. Its type depends on the code provider that instrumented the class.
+	 */
+	private final Object counters;
+
+	private volatile ClassmapIndex index;
+
+	/**
+	 * True if the class map could not be recorded, usually because the static initializer of the class failed.
+	 * The class is released anyway, and its hits are never applied.
+	 */
+	private volatile boolean failed;
+
+	/**
+	 * True once all the touch points have been applied by {@link #applyHits(ClassData, int[])}.
+	 */
+	private boolean applied;
+
+	RegisteredClass(Class<?> clazz, Object counters) {
+		this.className = clazz.getName();
+		this.classReference = new WeakReference<Class<?>>(clazz);
+		this.clazz = clazz;
+		this.counters = counters;
+	}
+
+	String getClassName() {
+		return className;
+	}
+
+	/**
+	 * @return the registered class, or null if it has been unloaded
+	 */
+	Class<?> getRegisteredClass() {
+		return classReference.get();
+	}
+
+	Object getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Does the same as the <code>__cobertura_get_and_reset_counters</code> method generated for the type of
+	 * the {@link #counters}.
+	 */
+	int[] getAndResetCounters() {
+		int[] res = new int[getCountersLength()];
+		drainCounters(res);
+		return res;
+	}
+
+	int getCountersLength() {
+		if (counters instanceof int[]) {
+			return ((int[]) counters).length;
+		} else if (counters instanceof boolean[]) {
+			return ((boolean[]) counters).length;
+		} else if (counters instanceof AtomicIntegerArray) {
+			return ((AtomicIntegerArray) counters).length();
+		} else if (counters instanceof StripedCounters) {
+			return ((StripedCounters) counters).length();
+		} else if (counters instanceof DoubleBufferedCounters) {
+			return ((DoubleBufferedCounters) counters).length();
+		} else if (counters instanceof MappedCounters) {
+			return ((MappedCounters) counters).length();
+		}
+		throw unknownCounters();
+	}
+
+	/**
+	 * Does the same as {@link #getAndResetCounters()}, but stores the counters into the scratch array, so
+	 * nothing is allocated.
+	 *
+	 * @param scratch array of at least {@link #getCountersLength()} elements
+	 * @return true if any counter was hit since the previous harvest
+	 */
+	boolean drainCounters(int[] scratch) {
+		boolean hit = false;
+		if (counters instanceof int[]) {
+			int[] c = (int[]) counters;
+			for (int i = 0; i < c.length; i++) {
+				int value = c[i];
+				scratch[i] = value;
+				if (value != 0) {
+					c[i] = 0;
+					hit = true;
+				}
+			}
+		} else if (counters instanceof boolean[]) {
+			boolean[] c = (boolean[]) counters;
+			for (int i = 0; i < c.length; i++) {
+				if (c[i]) {
+					scratch[i] = 1;
+					c[i] = false;
+					hit = true;
+				} else {
+					scratch[i] = 0;
+				}
+			}
+		} else if (counters instanceof AtomicIntegerArray) {
+			AtomicIntegerArray c = (AtomicIntegerArray) counters;
+			for (int i = 0; i < c.length(); i++) {
+				int value = c.getAndSet(i, 0);
+				scratch[i] = value;
+				hit |= value != 0;
+			}
+		} else if (counters instanceof StripedCounters) {
+			hit = ((StripedCounters) counters).drainTo(scratch);
+		} else if (counters instanceof DoubleBufferedCounters) {
+			hit = ((DoubleBufferedCounters) counters).drainTo(scratch);
+		} else if (counters instanceof MappedCounters) {
+			hit = ((MappedCounters) counters).drainTo(scratch);
+		} else {
+			throw unknownCounters();
+		}
+		return hit;
+	}
+
+	private IllegalStateException unknownCounters() {
+		return new IllegalStateException("Unknown type of counters: "
+				+ counters.getClass().getName());
+	}
+
+	/**
+	 * @return true once the class map of the class has been recorded, see {@link #recordClassmap()}
+	 */
+	boolean isClassmapRecorded() {
+		return index != null;
+	}
+
+	/**
+	 * @return true if recording the class map failed, see {@link #recordClassmap()}
+	 */
+	boolean isFailed() {
+		return failed;
+	}
+
+	/**
+	 * @return true once all the touch points of the class have been applied by {@link #applyHits(ClassData, int[])}
+	 */
+	boolean isApplied() {
+		return applied;
+	}
+
+	/**
+	 * Asks the class for its class map, unless it has been recorded already, and then releases the class.
+	 * Classes with {@link MappedCounters} are described in the counters file at the same time.
+	 * <p/>
+	 * The class map method is invoked by reflection, so the caller waits until the static initializer of the class
+	 * has finished. Several threads may record the class map at once; they record the same touch points.
+	 * <p/>
+	 * If the class map cannot be recorded, the class is marked as {@link #isFailed() failed} and released, so the
+	 * failure is reported only once and does not keep the class loader alive.
+	 */
+	void recordClassmap() throws Exception {
+		Class<?> c = clazz;
+		if (c == null) {
+			// the index (or the failure) is written before the class is released
+			return;
+		}
+		try {
+			ClassmapRecorder recorder = new ClassmapRecorder();
+			Method m = c.getDeclaredMethod(
+					AbstractCodeProvider.COBERTURA_CLASSMAP_METHOD_NAME,
+					LightClassmapListener.class);
+			m.setAccessible(true);
+			m.invoke(null, recorder);
+			if (counters instanceof MappedCounters) {
+				((MappedCounters) counters).describe(c);
+			}
+			index = recorder.toIndex();
+		} catch (Exception e) {
+			failed = true;
+			throw e;
+		} catch (LinkageError e) {
+			failed = true;
+			throw e;
+		} finally {
+			clazz = null;
+		}
+	}
+
+	/**
+	 * Applies the hits of the counters on the class data. Must not be called concurrently.
+	 * <p/>
+	 * The first call applies all the touch points of the class, so the class data describes every line and branch
+	 * of the class. The following calls apply only the touch points that were hit, because the others have been
+	 * saved already. Nothing is applied if the class map could not be recorded.
+	 *
+	 * @param classData the class data of this class
+	 * @param hits      counters of this class, see {@link #drainCounters(int[])}
+	 */
+	void applyHits(ClassData classData, int[] hits) throws Exception {
+		ClassmapIndex recorded = index;
+		if (recorded == null) {
+			recordClassmap();
+			recorded = index;
+			if (recorded == null) {
+				// failed
+				return;
+			}
+		}
+		recorded.apply(classData, hits, !applied);
+		applied = true;
+	}
+
+	/**
+	 * Immutable list of the touch points of a class, in the order the class map reported them.
+	 */
+	@CoverageIgnore
+	private static class ClassmapIndex {
+		private final String source;
+		private final TouchPoint[] touchPoints;
+
+		ClassmapIndex(String source, TouchPoint[] touchPoints) {
+			this.source = source;
+			this.touchPoints = touchPoints;
+		}
+
+		void apply(ClassData classData, int[] hits, boolean all) {
+			if (source != null) {
+				classData.setSourceFileName(source);
+			}
+			for (TouchPoint touchPoint : touchPoints) {
+				if (all || touchPoint.isHit(hits)) {
+					touchPoint.apply(classData, hits);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the {@link ClassmapIndex} from the calls of the generated class map method. The jumps and
+	 * switches are numbered within their line in the same way TouchCollector numbers them.
+	 */
+	@CoverageIgnore
+	private static class ClassmapRecorder implements LightClassmapListener {
+		private String source;
+		private final List<TouchPoint> touchPoints = new ArrayList<TouchPoint>();
+
+		private int currentLine = 0;
+		private int jumpsInLine = 0;
+		private int switchesInLine = 0;
+
+		private void updateLine(int newLine) {
+			if (newLine != currentLine) {
+				currentLine = newLine;
+				jumpsInLine = 0;
+				switchesInLine = 0;
+			}
+		}
+
+		public void setClazz(Class<?> clazz) {
+		}
+
+		public void setClazz(String clazz) {
+		}
+
+		public void setSource(String source) {
+			this.source = source;
+		}
+
+		public void putLineTouchPoint(int classLine, int counterId,
+				String methodName, String methodDescription) {
+			updateLine(classLine);
+			touchPoints.add(new LineTouchPoint(classLine, counterId,
+					methodName, methodDescription));
+		}
+
+		public void putJumpTouchPoint(int classLine, int trueCounterId,
+				int falseCounterId) {
+			updateLine(classLine);
+			touchPoints.add(new JumpTouchPoint(classLine, jumpsInLine++,
+					trueCounterId, falseCounterId));
+		}
+
+		public void putSwitchTouchPoint(int classLine, int maxBranches,
+				int... counterIds) {
+			updateLine(classLine);
+			touchPoints.add(new SwitchTouchPoint(classLine, switchesInLine++,
+					maxBranches, counterIds));
+		}
+
+		ClassmapIndex toIndex() {
+			return new ClassmapIndex(source, touchPoints
+					.toArray(new TouchPoint[touchPoints.size()]));
+		}
+	}
+
+	@CoverageIgnore
+	private static abstract class TouchPoint {
+		final int classLine;
+
+		TouchPoint(int classLine) {
+			this.classLine = classLine;
+		}
+
+		abstract boolean isHit(int[] hits);
+
+		abstract void apply(ClassData classData, int[] hits);
+
+		LineData getOrCreateLine(ClassData classData) {
+			LineData ld = classData.getLineData(classLine);
+			if (ld == null) {
+				ld = classData.addLine(classLine, null, null);
+			}
+			return ld;
+		}
+	}
+
+	@CoverageIgnore
+	private static class LineTouchPoint extends TouchPoint {
+		private final int counterId;
+		private final String methodName;
+		private final String methodDescription;
+
+		LineTouchPoint(int classLine, int counterId, String methodName,
+				String methodDescription) {
+			super(classLine);
+			this.counterId = counterId;
+			this.methodName = methodName;
+			this.methodDescription = methodDescription;
+		}
+
+		boolean isHit(int[] hits) {
+			return hits[counterId] != 0;
+		}
+
+		void apply(ClassData classData, int[] hits) {
+			classData.addLine(classLine, methodName, methodDescription).touch(
+					hits[counterId]);
+		}
+	}
+
+	@CoverageIgnore
+	private static class JumpTouchPoint extends TouchPoint {
+		private final int branchId;
+		private final int trueCounterId;
+		private final int falseCounterId;
+
+		JumpTouchPoint(int classLine, int branchId, int trueCounterId,
+				int falseCounterId) {
+			super(classLine);
+			this.branchId = branchId;
+			this.trueCounterId = trueCounterId;
+			this.falseCounterId = falseCounterId;
+		}
+
+		boolean isHit(int[] hits) {
+			return hits[trueCounterId] != 0 || hits[falseCounterId] != 0;
+		}
+
+		void apply(ClassData classData, int[] hits) {
+			LineData ld = getOrCreateLine(classData);
+			classData.addLineJump(classLine, branchId);
+			ld.touchJump(branchId, true, hits[trueCounterId]);
+			ld.touchJump(branchId, false, hits[falseCounterId]);
+		}
+	}
+
+	@CoverageIgnore
+	private static class SwitchTouchPoint extends TouchPoint {
+		private final int switchId;
+		private final int maxBranches;
+		private final int[] counterIds;
+
+		SwitchTouchPoint(int classLine, int switchId, int maxBranches,
+				int[] counterIds) {
+			super(classLine);
+			this.switchId = switchId;
+			this.maxBranches = maxBranches;
+			this.counterIds = counterIds;
+		}
+
+		boolean isHit(int[] hits) {
+			for (int counterId : counterIds) {
+				if (hits[counterId] != 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void apply(ClassData classData, int[] hits) {
+			LineData ld = getOrCreateLine(classData);
+			classData.addLineSwitch(classLine, switchId, 0,
+					counterIds.length - 2, maxBranches);
+			for (int i = 0; i < counterIds.length; i++) {
+				ld.touchSwitch(switchId, i - 1, hits[counterIds[i]]);
+			}
+		}
+	}
+}
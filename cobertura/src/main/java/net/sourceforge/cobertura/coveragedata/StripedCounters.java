@@ -0,0 +1,188 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * <p>Counters of a single instrumented class, striped in the same way as
+ * LongAdder stripes a single long.</p>
+ * <p/>
+ * <p>All increments go into the base array until the first CAS failure is
+ * observed. From then on every thread increments the stripe selected by its probe,
+ * so threads running the same hot code do not fight for the same cache line. The
+ * probe starts as a hash of the thread id and moves the thread to another stripe
+ * whenever a CAS on its current stripe fails, so two threads that happen to share
+ * a stripe do not keep contending on it. Stripes are allocated lazily, so classes
+ * that are never contended cost exactly as much memory as an
+ * {@link AtomicIntegerArray}.</p>
+ * <p/>
+ * <p>Every increment lands in exactly one cell, and {@link #getAndReset()}
+ * removes each cell atomically, so no hits are ever lost or counted twice.</p>
+ */
+@CoverageIgnore
+public class StripedCounters {
+	/**
+	 * Number of stripes: the number of CPUs rounded up to a power of two, but not more than 64.
+	 */
+	static final int STRIPES;
+
+	static {
+		int cpus = Runtime.getRuntime().availableProcessors();
+		int stripes = 1;
+		while (stripes < cpus && stripes < 64) {
+			stripes <<= 1;
+		}
+		STRIPES = stripes;
+	}
+
+	/**
+	 * Stripe selector of the current thread, shared by all the instances, as
+	 * the probe of LongAdder is.
+	 */
+	private static final ThreadLocal<int[]> PROBE = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			int h = hash(Thread.currentThread().getId());
+			return new int[]{h != 0 ? h : 1};
+		}
+	};
+
+	private final AtomicIntegerArray base;
+
+	/**
+	 * Null until contention has been detected on the {@link #base} array.
+	 */
+	private volatile AtomicIntegerArray[] stripes;
+
+	public StripedCounters(int length) {
+		base = new AtomicIntegerArray(length);
+	}
+
+	public int length() {
+		return base.length();
+	}
+
+	public void increment(int counterId) {
+		AtomicIntegerArray[] s = stripes;
+		if (s == null) {
+			int value = base.get(counterId);
+			if (base.compareAndSet(counterId, value, value + 1)) {
+				return;
+			}
+			s = expand();
+		}
+		int[] probe = PROBE.get();
+		while (true) {
+			int index = probe[0] & (s.length - 1);
+			AtomicIntegerArray stripe = s[index];
+			if (stripe == null) {
+				stripe = createStripe(s, index);
+			}
+			int value = stripe.get(counterId);
+			if (stripe.compareAndSet(counterId, value, value + 1)) {
+				return;
+			}
+			probe[0] = advanceProbe(probe[0]);
+		}
+	}
+
+	/**
+	 * @return sum of all the stripes for each counter. All the stripes are reset to zero.
+	 */
+	public int[] getAndReset() {
+		int[] res = new int[base.length()];
+		drainTo(res);
+		return res;
+	}
+
+	/**
+	 * Does the same as {@link #getAndReset()}, but stores the sums into the scratch array.
+	 *
+	 * @param scratch array of at least {@link #length()} elements, its first {@link #length()} elements are overwritten
+	 * @return true if any counter was hit
+	 */
+	public synchronized boolean drainTo(int[] scratch) {
+		boolean hit = false;
+		int length = base.length();
+		for (int i = 0; i < length; i++) {
+			int value = base.getAndSet(i, 0);
+			scratch[i] = value;
+			hit |= value != 0;
+		}
+		AtomicIntegerArray[] s = stripes;
+		if (s != null) {
+			for (AtomicIntegerArray stripe : s) {
+				if (stripe != null) {
+					for (int i = 0; i < length; i++) {
+						int value = stripe.getAndSet(i, 0);
+						scratch[i] += value;
+						hit |= value != 0;
+					}
+				}
+			}
+		}
+		return hit;
+	}
+
+	private synchronized AtomicIntegerArray[] expand() {
+		if (stripes == null) {
+			stripes = new AtomicIntegerArray[STRIPES];
+		}
+		return stripes;
+	}
+
+	private synchronized AtomicIntegerArray createStripe(
+			AtomicIntegerArray[] s, int index) {
+		if (s[index] == null) {
+			s[index] = new AtomicIntegerArray(base.length());
+		}
+		return s[index];
+	}
+
+	/**
+	 * Spreads sequential thread ids over the stripes (mix function of MurmurHash3).
+	 */
+	private static int hash(long threadId) {
+		int h = (int) (threadId ^ (threadId >>> 32));
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Moves a probe to a pseudo-random other value (xorshift, as LongAdder does).
+	 */
+	static int advanceProbe(int probe) {
+		probe ^= probe << 13;
+		probe ^= probe >>> 17;
+		probe ^= probe << 5;
+		return probe;
+	}
+}
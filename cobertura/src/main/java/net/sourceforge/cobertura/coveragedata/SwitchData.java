@@ -68,6 +68,18 @@ public class SwitchData
 		this(switchNumber, new int[0], maxBranches);
 	}
 
+	/**
+	 * Creates the switch with the given hits, as read from a data file.
+	 */
+	SwitchData(int switchNumber, int[] keys, long[] hits, long defaultHits,
+			int maxBranches) {
+		this.switchNumber = switchNumber;
+		this.keys = keys;
+		this.hits = hits;
+		this.defaultHits = defaultHits;
+		this.maxBranches = maxBranches;
+	}
+
 	public int compareTo(Object o) {
 		if (!o.getClass().equals(SwitchData.class))
 			return Integer.MAX_VALUE;
@@ -153,6 +165,14 @@ public class SwitchData
 		maxBranches = Math.min(maxBranches, switchData.getMaxBranches());
 	}
 
+	int[] getKeys() {
+		return keys;
+	}
+
+	long[] getAllHits() {
+		return hits;
+	}
+
 	public int getMaxBranches() {
 		return maxBranches;
 	}
@@ -40,12 +40,21 @@ public class TouchCollector {
 	private static final Logger logger = LoggerFactory.getLogger(TouchCollector.class);
 	/*In fact - concurrentHashset*/
 	private static Map<Class<?>, Integer> registeredClasses = new ConcurrentHashMap<Class<?>, Integer>();
+	/**
+	 * Classes registered together with their counters by {@link #registerClass(Class, Object)}.
+	 */
+	private static final ClassRegistry classRegistry = new ClassRegistry();
+	/**
+	 * Reused by {@link #applyTouchesOnProjectData(ProjectData)} for the counters of every registered class,
+	 * so harvesting them allocates nothing once it is large enough.
+	 */
+	private static int[] scratchCounters = new int[0];
 
 	static {
 		ProjectData.getGlobalProjectData(); // To call ProjectData.initialize();
 	}
 
-	public static synchronized void registerClass(Class<?> classa) {
+	public static void registerClass(Class<?> classa) {
 		registeredClasses.put(classa, 0);
 	}
 
@@ -63,7 +72,54 @@ public class TouchCollector {
 	 * @param classa Class that needs to be registered.
 	 * @throws ClassNotFoundException 
 	 */
-	public static synchronized void registerClass(String classa)
+	public static void registerClass(String classa)
+			throws ClassNotFoundException {
+		registerClass(findClass(classa));
+	}
+
+	/**
+	 * Registers the class together with its counters, so the counters can be harvested without reflection.
+	 * The code injected into static initializers of instrumented classes calls this method.
+	 * <p/>
+	 * The method takes no lock, so classes loaded by many threads at once are not serialized here.
+	 *
+	 * @param classa   class that needs to be registered
+	 * @param counters the object storing counters of the class
+	 */
+	public static void registerClass(Class<?> classa, Object counters) {
+		classRegistry.register(classa, counters);
+	}
+
+	/**
+	 * Allocates the counters of a class and registers the class, unless it has been registered already. The
+	 * code generated into classes instrumented with lazy counters calls this method, when the class executes
+	 * instrumented code for the first time.
+	 * <p/>
+	 * The method takes no lock: if several threads allocate the counters at once, the counters registered first
+	 * are returned to all of them. In particular the class itself is not locked, because the application may use
+	 * it as a monitor.
+	 *
+	 * @param classa class that needs to be registered
+	 * @param length number of counters of the class
+	 * @return the registered counters of the class
+	 */
+	public static int[] allocateCounters(Class<?> classa, int length) {
+		return (int[]) classRegistry.registerIfAbsent(classa, new int[length]);
+	}
+
+	/**
+	 * This method is only for backward compatibility with classes that look up the registered class by its name.
+	 *
+	 * @param classa   internal name of the class that needs to be registered
+	 * @param counters the object storing counters of the class
+	 * @throws ClassNotFoundException
+	 */
+	public static void registerClass(String classa, Object counters)
+			throws ClassNotFoundException {
+		registerClass(findClass(classa), counters);
+	}
+
+	private static Class<?> findClass(String classa)
 			throws ClassNotFoundException {
 		try {
 			// If it's not in the system jvm, then search the current thread for the class.
@@ -75,25 +131,20 @@ public class TouchCollector {
 			// checks to see if cobertura code is in there. This is here because there are situations where multiple
 			// classloaders might be invoked and it requires the check of multiple classloaders.
 
-			boolean found = false;
 			Class<?> clazz;
             try {
                 clazz = Class.forName(classa.replace("/", "."), false,
                         Thread.currentThread().getContextClassLoader());
                 for (Method meth : clazz.getMethods()) {
                     if (meth.toString().contains("net.sourceforge.cobertura")) {
-                        registerClass(clazz);
-                        found = true;
+                        return clazz;
                     }
                 }
             } catch (NoClassDefFoundError ncdfe) {
                 // "Expected", try described fallback
             }
 
-			if (!found) {
-				clazz = Class.forName(classa.replace("/", "."));
-				registerClass(clazz);
-			}
+			return Class.forName(classa.replace("/", "."));
 		} catch (ClassNotFoundException e) {
 			logger.error("Exception when registering class: "
 					+ classa, e);
@@ -109,9 +160,38 @@ public class TouchCollector {
 			ClassData cd = projectData.getOrCreateClassData(c.getName());
 			applyTouchesToSingleClassOnProjectData(cd, c);
 		}
+		int skipped = 0;
+		for (RegisteredClass rc : classRegistry.getLiveClasses()) {
+			if (!applyTouchesToSingleClassOnProjectData(projectData, rc)) {
+				skipped++;
+			}
+		}
+		RegisteredClass retired;
+		while ((retired = classRegistry.pollRetiredClass()) != null) {
+			logger.debug("Unloaded: {}", retired.getClassName());
+			if (!applyTouchesToSingleClassOnProjectData(projectData, retired)) {
+				skipped++;
+			}
+		}
+		logger.debug("Skipped {} classes without hits", skipped);
 		logger.debug("===================  END OF REPORT  ======================== ");
 	}
 
+	/**
+	 * @return number of registered classes, whose class loaders have not been collected yet
+	 */
+	public static int getLiveClassesCount() {
+		return classRegistry.getLiveClassesCount();
+	}
+
+	/**
+	 * @return number of registered classes, whose class loaders have been collected. Their counters are harvested
+	 *         once more by the next {@link #applyTouchesOnProjectData(ProjectData)}.
+	 */
+	public static long getRetiredClassesCount() {
+		return classRegistry.getRetiredClassesCount();
+	}
+
 	private static void applyTouchesToSingleClassOnProjectData(
 			final ClassData classData, final Class<?> c) {
 		logger.trace("----------- " + maybeCanonicalName(c)
@@ -134,6 +214,42 @@ public class TouchCollector {
 		}
 	}
 
+	/**
+	 * Classes without any hit since the previous harvest are skipped, unless their touch points have never
+	 * been applied (then the lines of the class are reported, even if none of them was executed). Merging
+	 * the saved data with the data file keeps the touch points of the skipped classes. For the same reason only
+	 * the touch points that were hit are applied on the other classes, see
+	 * {@link RegisteredClass#applyHits(ClassData, int[])}. Classes whose class map could not be recorded
+	 * are always skipped.
+	 *
+	 * @return false if the class was skipped
+	 */
+	private static boolean applyTouchesToSingleClassOnProjectData(
+			final ProjectData projectData, final RegisteredClass rc) {
+		if (rc.isFailed()) {
+			return false;
+		}
+		try {
+			int length = rc.getCountersLength();
+			if (scratchCounters.length < length) {
+				scratchCounters = new int[length];
+			}
+			if (!rc.drainCounters(scratchCounters) && rc.isApplied()) {
+				return false;
+			}
+			logger.debug("Report: {}", rc.getClassName());
+			ClassData classData = projectData.getOrCreateClassData(rc
+					.getClassName());
+			rc.applyHits(classData, scratchCounters);
+		} catch (Exception e) {
+			logger.error("Cannot apply touches", e);
+		} catch (LinkageError e) {
+			// The static initializer of the class failed, the class is not harvested again.
+			logger.error("Cannot apply touches", e);
+		}
+		return true;
+	}
+
     private static String maybeCanonicalName(final Class<?> c) {
 
         /* observed getCanonicalName throwing a
@@ -153,80 +269,4 @@ public class TouchCollector {
             return c.getName();
         }
     }
-
-	@CoverageIgnore
-	private static class ApplyToClassDataLightClassmapListener
-			implements
-				LightClassmapListener {
-		//private AtomicInteger idProvider=new AtomicInteger(0);
-		private final ClassData classData;
-		private final int[] res;
-
-		private int currentLine = 0;
-		private int jumpsInLine = 0;
-		private int switchesInLine = 0;
-
-		private void updateLine(int new_line) {
-			if (new_line != currentLine) {
-				currentLine = new_line;
-				jumpsInLine = 0;
-				switchesInLine = 0;
-			}
-		}
-
-		public ApplyToClassDataLightClassmapListener(ClassData cd, int[] res) {
-			classData = cd;
-			this.res = res;
-		}
-
-		public void setSource(String source) {
-			logger.debug("source: " + source);
-			classData.setSourceFileName(source);
-
-		}
-
-		public void setClazz(Class<?> clazz) {
-		}
-
-		public void setClazz(String clazz) {
-		}
-
-		public void putLineTouchPoint(int classLine, int counterId,
-				String methodName, String methodDescription) {
-			updateLine(classLine);
-			LineData ld = classData.addLine(classLine, methodName,
-					methodDescription);
-			ld.touch(res[counterId]);
-		}
-
-		public void putSwitchTouchPoint(int classLine, int maxBranches,
-				int... counterIds) {
-			updateLine(classLine);
-			LineData ld = getOrCreateLine(classLine);
-			int switchId = switchesInLine++;
-			classData.addLineSwitch(classLine, switchId, 0,
-					counterIds.length - 2, maxBranches);
-			for (int i = 0; i < counterIds.length; i++) {
-				ld.touchSwitch(switchId, i - 1, res[counterIds[i]]);
-			}
-		}
-
-		public void putJumpTouchPoint(int classLine, int trueCounterId,
-				int falseCounterId) {
-			updateLine(classLine);
-			LineData ld = getOrCreateLine(classLine);
-			int branchId = jumpsInLine++;
-			classData.addLineJump(classLine, branchId);
-			ld.touchJump(branchId, true, res[trueCounterId]);
-			ld.touchJump(branchId, false, res[falseCounterId]);
-		}
-
-		private LineData getOrCreateLine(int classLine) {
-			LineData ld = classData.getLineData(classLine);
-			if (ld == null) {
-				ld = classData.addLine(classLine, null, null);
-			}
-			return ld;
-		}
-	}
 }
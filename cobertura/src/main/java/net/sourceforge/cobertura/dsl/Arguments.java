@@ -2,6 +2,7 @@ package net.sourceforge.cobertura.dsl;
 
 import net.sourceforge.cobertura.check.CoverageThreshold;
 import net.sourceforge.cobertura.util.FileFinder;
+import net.sourceforge.cobertura.instrument.ClassVerifier;
 import net.sourceforge.cobertura.instrument.CoberturaFile;
 
 import java.io.File;
@@ -47,6 +48,17 @@ public class Arguments {
 	private boolean failOnError;
 	private boolean ignoreTrivial;
 	private boolean threadsafeRigorous;
+	private boolean threadsafeStriped;
+	private boolean doubleBuffered;
+	private boolean mappedCounters;
+	private boolean lazyCounters;
+	private boolean hitsOnly;
+	private boolean minimizeProbes;
+	private File cacheDirectory;
+	private long cacheMaxSize;
+	private int threads;
+	private ClassVerifier.Mode verifyMode;
+	private double verifySampleRate;
 
 	private String encoding;
 
@@ -70,7 +82,12 @@ public class Arguments {
 			Collection<Pattern> classPatternExcludeClassesRegexes,
 			boolean calculateMethodComplexity,
 			boolean failOnError, boolean ignoreTrivial,
-			boolean threadsafeRigorous, String encoding,
+			boolean threadsafeRigorous, boolean threadsafeStriped,
+			boolean doubleBuffered, boolean mappedCounters,
+			boolean lazyCounters, boolean hitsOnly,
+			boolean minimizeProbes, File cacheDirectory, long cacheMaxSize,
+			int threads, ClassVerifier.Mode verifyMode,
+			double verifySampleRate, String encoding,
 			Set<CoverageThreshold> minimumCoverageThresholds,
 			double classLineThreshold, double classBranchThreshold,
 			double packageLineThreshold, double packageBranchThreshold,
@@ -94,6 +111,17 @@ public class Arguments {
 		this.failOnError = failOnError;
 		this.ignoreTrivial = ignoreTrivial;
 		this.threadsafeRigorous = threadsafeRigorous;
+		this.threadsafeStriped = threadsafeStriped;
+		this.doubleBuffered = doubleBuffered;
+		this.mappedCounters = mappedCounters;
+		this.lazyCounters = lazyCounters;
+		this.hitsOnly = hitsOnly;
+		this.minimizeProbes = minimizeProbes;
+		this.cacheDirectory = cacheDirectory;
+		this.cacheMaxSize = cacheMaxSize;
+		this.threads = threads;
+		this.verifyMode = verifyMode;
+		this.verifySampleRate = verifySampleRate;
 		this.encoding = encoding;
 		this.minimumCoverageThresholds = Collections
 				.unmodifiableSet(minimumCoverageThresholds);
@@ -159,6 +187,50 @@ public class Arguments {
 		return threadsafeRigorous;
 	}
 
+	public boolean isThreadsafeStriped() {
+		return threadsafeStriped;
+	}
+
+	public boolean isDoubleBuffered() {
+		return doubleBuffered;
+	}
+
+	public boolean isMappedCounters() {
+		return mappedCounters;
+	}
+
+	public boolean isLazyCounters() {
+		return lazyCounters;
+	}
+
+	public boolean isHitsOnly() {
+		return hitsOnly;
+	}
+
+	public boolean isMinimizeProbes() {
+		return minimizeProbes;
+	}
+
+	public File getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public long getCacheMaxSize() {
+		return cacheMaxSize;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public ClassVerifier.Mode getVerifyMode() {
+		return verifyMode;
+	}
+
+	public double getVerifySampleRate() {
+		return verifySampleRate;
+	}
+
 	public String getEncoding() {
 		return encoding;
 	}
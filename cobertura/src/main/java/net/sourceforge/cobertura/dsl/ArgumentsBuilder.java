@@ -2,6 +2,7 @@ package net.sourceforge.cobertura.dsl;
 
 import net.sourceforge.cobertura.check.CoverageThreshold;
 import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.instrument.ClassVerifier;
 import net.sourceforge.cobertura.instrument.CoberturaFile;
 import net.sourceforge.cobertura.util.FileFinder;
 import net.sourceforge.cobertura.util.RegexUtil;
@@ -43,6 +44,16 @@ public class ArgumentsBuilder {
 	static final boolean DEFAULT_FAIL_ON_ERROR = false;
 	static final boolean DEFAULT_IGNORE_TRIVIAL = false;
 	static final boolean DEFAULT_THREADSAFE_RIGOROUS = false;
+	static final boolean DEFAULT_THREADSAFE_STRIPED = false;
+	static final boolean DEFAULT_DOUBLE_BUFFERED = false;
+	static final boolean DEFAULT_MAPPED_COUNTERS = false;
+	static final boolean DEFAULT_LAZY_COUNTERS = false;
+	static final boolean DEFAULT_HITS_ONLY = false;
+	static final boolean DEFAULT_MINIMIZE_PROBES = false;
+	static final long DEFAULT_CACHE_MAX_SIZE = 256L * 1024 * 1024;
+	static final int DEFAULT_THREADS = 1;
+	static final ClassVerifier.Mode DEFAULT_VERIFY_MODE = ClassVerifier.Mode.NONE;
+	static final double DEFAULT_VERIFY_SAMPLE_RATE = 0.1;
 
 	private Arguments arguments;
 
@@ -60,6 +71,17 @@ public class ArgumentsBuilder {
 	private boolean failOnError;
 	private boolean ignoreTrivial;
 	private boolean threadsafeRigorous;
+	private boolean threadsafeStriped;
+	private boolean doubleBuffered;
+	private boolean mappedCounters;
+	private boolean lazyCounters;
+	private boolean hitsOnly;
+	private boolean minimizeProbes;
+	private File cacheDirectory;
+	private long cacheMaxSize;
+	private int threads;
+	private ClassVerifier.Mode verifyMode;
+	private double verifySampleRate;
 
 	private String encoding;
 
@@ -152,6 +174,70 @@ public class ArgumentsBuilder {
 		return this;
 	}
 
+	public ArgumentsBuilder threadsafeStriped(boolean threadsafeStriped) {
+		this.threadsafeStriped = threadsafeStriped;
+		return this;
+	}
+
+	public ArgumentsBuilder doubleBuffered(boolean doubleBuffered) {
+		this.doubleBuffered = doubleBuffered;
+		return this;
+	}
+
+	public ArgumentsBuilder mappedCounters(boolean mappedCounters) {
+		this.mappedCounters = mappedCounters;
+		return this;
+	}
+
+	public ArgumentsBuilder lazyCounters(boolean lazyCounters) {
+		this.lazyCounters = lazyCounters;
+		return this;
+	}
+
+	public ArgumentsBuilder hitsOnly(boolean hitsOnly) {
+		this.hitsOnly = hitsOnly;
+		return this;
+	}
+
+	public ArgumentsBuilder minimizeProbes(boolean minimizeProbes) {
+		this.minimizeProbes = minimizeProbes;
+		return this;
+	}
+
+	public ArgumentsBuilder setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = new File(cacheDirectory);
+		return this;
+	}
+
+	public ArgumentsBuilder cacheMaxSize(long cacheMaxSize) {
+		this.cacheMaxSize = cacheMaxSize;
+		return this;
+	}
+
+	public ArgumentsBuilder threads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException(String.format(
+					"The value %s is invalid.  Number of threads must be at least 1",
+					threads));
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * @param verifyMode - one of "none", "all", "sample" or "failures", see {@link ClassVerifier}
+	 */
+	public ArgumentsBuilder setVerifyMode(String verifyMode) {
+		this.verifyMode = ClassVerifier.Mode.valueOf(verifyMode
+				.toUpperCase(Locale.ENGLISH));
+		return this;
+	}
+
+	public ArgumentsBuilder setVerifySampleRate(double verifySampleRate) {
+		this.verifySampleRate = inRange(verifySampleRate);
+		return this;
+	}
+
 	public ArgumentsBuilder listOfFilesToInstrument(String listFileName) {
 		String baseDir = getBaseDirectory();
 		try {
@@ -261,7 +347,12 @@ public class ArgumentsBuilder {
 				classPatternIncludeClassesRegexes,
 				classPatternExcludeClassesRegexes, calculateMethodComplexity,
 				failOnError, ignoreTrivial,
-				threadsafeRigorous, encoding, minimumCoverageThresholds,
+				threadsafeRigorous, threadsafeStriped, doubleBuffered,
+				mappedCounters, lazyCounters, hitsOnly,
+				minimizeProbes,
+				cacheDirectory, cacheMaxSize, threads, verifyMode,
+				verifySampleRate, encoding,
+				minimumCoverageThresholds,
 				classLineThreshold, classBranchThreshold, packageLineThreshold,
 				packageBranchThreshold, totalLineThreshold,
 				totalBranchThreshold, filesToInstrument, filesToMerge,
@@ -303,6 +394,17 @@ public class ArgumentsBuilder {
 		failOnError = DEFAULT_FAIL_ON_ERROR;
 		ignoreTrivial = DEFAULT_IGNORE_TRIVIAL;
 		threadsafeRigorous = DEFAULT_THREADSAFE_RIGOROUS;
+		threadsafeStriped = DEFAULT_THREADSAFE_STRIPED;
+		doubleBuffered = DEFAULT_DOUBLE_BUFFERED;
+		mappedCounters = DEFAULT_MAPPED_COUNTERS;
+		lazyCounters = DEFAULT_LAZY_COUNTERS;
+		hitsOnly = DEFAULT_HITS_ONLY;
+		minimizeProbes = DEFAULT_MINIMIZE_PROBES;
+		cacheDirectory = null;
+		cacheMaxSize = DEFAULT_CACHE_MAX_SIZE;
+		threads = DEFAULT_THREADS;
+		verifyMode = DEFAULT_VERIFY_MODE;
+		verifySampleRate = DEFAULT_VERIFY_SAMPLE_RATE;
 		encoding = DEFAULT_ENCODING;
 	}
 
@@ -1,14 +1,20 @@
 package net.sourceforge.cobertura.dsl;
 
 import net.sourceforge.cobertura.check.CheckCoverageTask;
+import net.sourceforge.cobertura.coveragedata.CountersFile;
 import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.coveragedata.CoverageDataJournal;
+import net.sourceforge.cobertura.coveragedata.CoverageDataShards;
 import net.sourceforge.cobertura.coveragedata.ProjectData;
 import net.sourceforge.cobertura.instrument.CodeInstrumentationTask;
 import net.sourceforge.cobertura.merge.MergeProjectDataFilesTask;
 import net.sourceforge.cobertura.reporting.CompositeReport;
 import net.sourceforge.cobertura.reporting.Report;
 import net.sourceforge.cobertura.reporting.ReportingTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static net.sourceforge.cobertura.coveragedata.TouchCollector.applyTouchesOnProjectData;
@@ -34,6 +40,8 @@ import static net.sourceforge.cobertura.coveragedata.TouchCollector.applyTouches
  */
 
 public class Cobertura {
+	private static final Logger logger = LoggerFactory
+			.getLogger(Cobertura.class);
 
 	private Arguments args;
 	private ProjectData projectData;
@@ -121,12 +129,20 @@ public class Cobertura {
 	}
 
 	/**
-	 * Serializes project data to file specified in constructor args
+	 * Serializes project data to file specified in constructor args. The hits of the counters files merged before
+	 * are marked as folded once the file has been written, so merging them again doesn't count them twice.
 	 * @return this Cobertura instance
 	 */
 	public Cobertura saveProjectData() {
-		CoverageDataFileHandler.saveCoverageData(getProjectDataInstance(), args
-				.getDataFile());
+		try {
+			CoverageDataFileHandler.replaceCoverageData(
+					getProjectDataInstance(), args.getDataFile());
+		} catch (IOException e) {
+			logger.error("Cobertura: Error writing file "
+					+ args.getDataFile().getAbsolutePath(), e);
+			return this;
+		}
+		mergeProjectDataFilesTask.commitFoldedCounters();
 		return this;
 	}
 
@@ -136,6 +152,10 @@ public class Cobertura {
 		if (projectData != null) {
 			return projectData;
 		}
+		// Fold the data saved by JVMs running in journal or shard mode, or with mapped counters
+		CoverageDataJournal.compact(args.getDataFile());
+		CoverageDataShards.compact(args.getDataFile());
+		CountersFile.compact(args.getDataFile());
 		if (args.getDataFile().isFile())
 			projectData = CoverageDataFileHandler.loadCoverageData(args
 					.getDataFile());
@@ -0,0 +1,244 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.util.IOUtil;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * <p>Finds common super classes for {@link CoberturaClassWriter} without loading any class.</p>
+ * <p/>
+ * <p>The super class and the interfaces of a type are read from the header of its class file, that is
+ * looked up as a resource on the system class loader, the auxClasspath and the directories and archives
+ * that are being instrumented. Classes that are instrumented register their headers with
+ * {@link #addClass(String, String, String[], boolean)}, so they are found even if they are nested in
+ * another archive. Loading the classes into the instrumenting JVM would be slower, would fill the
+ * permanent generation and could even run their static initializers.</p>
+ * <p/>
+ * <p>The headers are cached by class name, and the resolver can be shared by many threads. Because of that a
+ * resolver must only be used for classes of a single class path: the instrument task has one, but the classes
+ * loaded by different class loaders need different resolvers.</p>
+ */
+public class ClassHierarchyResolver {
+	static final String OBJECT = "java/lang/Object";
+
+	private final ConcurrentMap<String, ClassInfo> classInfos = new ConcurrentHashMap<String, ClassInfo>();
+
+	/**
+	 * Class loaders that are only used to read class files as resources.
+	 */
+	private final List<ClassLoader> classFileLoaders = new CopyOnWriteArrayList<ClassLoader>();
+
+	/**
+	 * Directories and archives, in which class files are looked up after the {@link #classFileLoaders}.
+	 * An archive is opened only while a class file is read from it, so it is never left open (and locked
+	 * on Windows) when the instrumented archive replaces it.
+	 */
+	private final List<File> classpathEntries = new CopyOnWriteArrayList<File>();
+
+	/**
+	 * Creates a resolver that reads class files from the system class loader and the auxClasspath.
+	 */
+	public ClassHierarchyResolver() {
+		classFileLoaders.add(ClassLoader.getSystemClassLoader());
+		if (InstrumentMain.urlClassLoader != null) {
+			classFileLoaders.add(InstrumentMain.urlClassLoader);
+		}
+	}
+
+	/**
+	 * Adds a directory or an archive, in which class files are looked up.
+	 */
+	public void addClasspathEntry(File file) {
+		classpathEntries.add(file);
+	}
+
+	/**
+	 * Registers the header of a class, so its class file doesn't have to be looked up.
+	 *
+	 * @param name       internal name of the class
+	 * @param superName  internal name of the super class, or null for {@link Object}
+	 * @param interfaces internal names of the implemented interfaces
+	 */
+	public void addClass(String name, String superName, String[] interfaces,
+			boolean isInterface) {
+		classInfos.putIfAbsent(name, new ClassInfo(superName, interfaces,
+				isInterface));
+	}
+
+	/**
+	 * Returns the internal name of the most specific common super class of two types, in the same way
+	 * as {@link org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)}.
+	 *
+	 * @param classLoader class loader, that is searched for class files first, or null
+	 *
+	 * @throws RuntimeException if the class file of a type was not found
+	 */
+	public String getCommonSuperClass(String type1, String type2,
+			ClassLoader classLoader) {
+		if (type1.equals(type2)) {
+			return type1;
+		}
+		ClassInfo info1 = getClassInfo(type1, classLoader);
+		ClassInfo info2 = getClassInfo(type2, classLoader);
+		if (isAssignableFrom(type1, type2, classLoader)) {
+			return type1;
+		}
+		if (isAssignableFrom(type2, type1, classLoader)) {
+			return type2;
+		}
+		if (info1.isInterface || info2.isInterface) {
+			return OBJECT;
+		}
+		Set<String> superClasses2 = new HashSet<String>();
+		for (String type = type2; type != null; type = getClassInfo(type,
+				classLoader).superName) {
+			superClasses2.add(type);
+		}
+		String type = info1.superName;
+		while (type != null && !superClasses2.contains(type)) {
+			type = getClassInfo(type, classLoader).superName;
+		}
+		return type != null ? type : OBJECT;
+	}
+
+	/**
+	 * @return true if the type is the same as the subtype or one of its super classes or interfaces
+	 */
+	private boolean isAssignableFrom(String type, String subtype,
+			ClassLoader classLoader) {
+		if (OBJECT.equals(type)) {
+			return true;
+		}
+		Set<String> visited = new HashSet<String>();
+		LinkedList<String> queue = new LinkedList<String>();
+		queue.add(subtype);
+		while (!queue.isEmpty()) {
+			String current = queue.removeFirst();
+			if (current.equals(type)) {
+				return true;
+			}
+			if (visited.add(current)) {
+				ClassInfo info = getClassInfo(current, classLoader);
+				if (info.superName != null) {
+					queue.add(info.superName);
+				}
+				queue.addAll(Arrays.asList(info.interfaces));
+			}
+		}
+		return false;
+	}
+
+	private ClassInfo getClassInfo(String type, ClassLoader classLoader) {
+		ClassInfo info = classInfos.get(type);
+		if (info == null) {
+			info = readClassInfo(type, classLoader);
+			ClassInfo previous = classInfos.putIfAbsent(type, info);
+			if (previous != null) {
+				info = previous;
+			}
+		}
+		return info;
+	}
+
+	private ClassInfo readClassInfo(String type, ClassLoader classLoader) {
+		String resource = type + ".class";
+		InputStream is = null;
+		ZipFile zipFile = null;
+		try {
+			if (classLoader != null) {
+				is = classLoader.getResourceAsStream(resource);
+			}
+			Iterator<ClassLoader> iter = classFileLoaders.iterator();
+			while (is == null && iter.hasNext()) {
+				is = iter.next().getResourceAsStream(resource);
+			}
+			Iterator<File> entries = classpathEntries.iterator();
+			while (is == null && entries.hasNext()) {
+				File entry = entries.next();
+				if (entry.isDirectory()) {
+					File file = new File(entry, resource);
+					if (file.isFile()) {
+						is = new FileInputStream(file);
+					}
+				} else if (entry.isFile()) {
+					zipFile = new ZipFile(entry);
+					ZipEntry zipEntry = zipFile.getEntry(resource);
+					if (zipEntry != null) {
+						is = zipFile.getInputStream(zipEntry);
+					} else {
+						zipFile.close();
+						zipFile = null;
+					}
+				}
+			}
+			if (is == null) {
+				throw new RuntimeException("Class file not found: " + resource);
+			}
+			ClassReader cr = new ClassReader(is);
+			return new ClassInfo(cr.getSuperName(), cr.getInterfaces(), (cr
+					.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read class file: "
+					+ resource, e);
+		} finally {
+			IOUtil.closeInputStream(is);
+			closeZipFile(zipFile);
+		}
+	}
+
+	private static void closeZipFile(ZipFile zipFile) {
+		if (zipFile != null) {
+			try {
+				zipFile.close();
+			} catch (IOException e) {
+				// Only the header was read, so there is nothing to lose.
+			}
+		}
+	}
+
+	private static class ClassInfo {
+		final String superName;
+		final String[] interfaces;
+		final boolean isInterface;
+
+		ClassInfo(String superName, String[] interfaces, boolean isInterface) {
+			this.superName = superName;
+			this.interfaces = interfaces != null ? interfaces : new String[0];
+			this.isInterface = isInterface;
+		}
+	}
+}
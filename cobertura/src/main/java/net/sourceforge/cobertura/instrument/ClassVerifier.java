@@ -0,0 +1,176 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.util.CheckClassAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Diagnostic verification of instrumented classes.</p>
+ * <p/>
+ * <p>Instrumentation does not verify the classes it creates, because the data-flow analysis of
+ * {@link CheckClassAdapter#verify(ClassReader, ClassLoader, boolean, PrintWriter)} costs more than
+ * the instrumentation itself. When a class is rejected by the JVM after instrumentation, the verification
+ * can be switched on to find out which method is broken:
+ * <ul>
+ * <li>{@link Mode#ALL} - every instrumented class is verified</li>
+ * <li>{@link Mode#SAMPLE} - only a fraction of the classes is verified. The classes are chosen by the hash
+ * of their names, so the same classes are verified in every run.</li>
+ * <li>{@link Mode#FAILURES} - nothing is verified, but when the instrumentation of a class fails, it is repeated
+ * with {@link CheckClassAdapter} to find the instruction that caused the failure</li>
+ * </ul>
+ * </p>
+ * <p/>
+ * <p>The problems are reported as warnings of this class' logger, so they can be separated from the
+ * rest of the instrumentation log.</p>
+ */
+public class ClassVerifier {
+	private static final Logger logger = LoggerFactory
+			.getLogger(ClassVerifier.class);
+
+	public enum Mode {
+		NONE, ALL, SAMPLE, FAILURES
+	}
+
+	private final Mode mode;
+
+	private final double sampleRate;
+
+	private final AtomicInteger verifiedClasses = new AtomicInteger();
+
+	private final AtomicInteger invalidClasses = new AtomicInteger();
+
+	/**
+	 * @param mode       - which classes should be verified
+	 * @param sampleRate - fraction of the classes verified in {@link Mode#SAMPLE} mode
+	 */
+	public ClassVerifier(Mode mode, double sampleRate) {
+		this.mode = mode;
+		this.sampleRate = sampleRate;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return true if the instrumented class should be verified
+	 */
+	public boolean shouldVerify(String className) {
+		switch (mode) {
+			case ALL :
+				return true;
+			case SAMPLE :
+				return (className.hashCode() & Integer.MAX_VALUE) % 10000 < sampleRate * 10000;
+			default :
+				return false;
+		}
+	}
+
+	/**
+	 * @return true if the instrumentation of a class should be repeated with {@link CheckClassAdapter} when it fails
+	 */
+	public boolean shouldCheckFailures() {
+		return mode == Mode.FAILURES;
+	}
+
+	/**
+	 * Verifies bytecode of all methods of the instrumented class and reports the problems.
+	 *
+	 * @param className   - name of the class
+	 * @param content     - the instrumented class
+	 * @param classLoader - class loader used to load types needed by the verification, may be null
+	 *
+	 * @return true if the class is valid
+	 */
+	public boolean verify(String className, byte[] content,
+			ClassLoader classLoader) {
+		verifiedClasses.incrementAndGet();
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		try {
+			CheckClassAdapter.verify(new ClassReader(content),
+					classLoader != null ? classLoader : getClass()
+							.getClassLoader(), false, pw);
+		} catch (Throwable t) {
+			// Types used by the class could not be loaded
+			t.printStackTrace(pw);
+		}
+		pw.flush();
+		if (sw.getBuffer().length() > 0) {
+			invalidClasses.incrementAndGet();
+			logger.warn("Instrumented class " + className
+					+ " failed verification:\n" + sw);
+			return false;
+		}
+		logger.debug("Instrumented class " + className + " is valid");
+		return true;
+	}
+
+	/**
+	 * Reports the problem found by {@link CheckClassAdapter} while repeating failed instrumentation of a class.
+	 */
+	public void reportFailure(String className, Throwable t) {
+		invalidClasses.incrementAndGet();
+		logger.warn("Instrumentation of class " + className
+				+ " failed verification", t);
+	}
+
+	/**
+	 * @return number of classes verified by {@link #verify(String, byte[], ClassLoader)}
+	 */
+	public int getVerifiedClasses() {
+		return verifiedClasses.get();
+	}
+
+	/**
+	 * @return number of classes that failed verification
+	 */
+	public int getInvalidClasses() {
+		return invalidClasses.get();
+	}
+
+	/**
+	 * Logs the number of the verified and invalid classes.
+	 */
+	public void logSummary() {
+		if (mode == Mode.NONE) {
+			return;
+		}
+		String summary = String.format(
+				"Verified %d instrumented classes, %d failed verification",
+				getVerifiedClasses(), getInvalidClasses());
+		if (getInvalidClasses() > 0) {
+			logger.warn(summary);
+		} else {
+			logger.info(summary);
+		}
+	}
+}
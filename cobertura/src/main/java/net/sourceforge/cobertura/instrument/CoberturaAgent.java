@@ -0,0 +1,60 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.dsl.Arguments;
+import net.sourceforge.cobertura.util.CommandLineBuilder;
+
+import java.lang.instrument.Instrumentation;
+
+/**
+ * <p>Java agent that instruments classes while they are loaded, instead of instrumenting them
+ * on disk before the tests are run.</p>
+ * <p/>
+ * <p>The agent accepts the same options as {@link InstrumentMain} (except of files to instrument), separated by commas:
+ * <pre>
+ * java -javaagent:cobertura.jar=--datafile,cobertura.ser,--includeClasses,com\.example\..* ...
+ * </pre>
+ * Use <code>--commandsfile</code> for options that contain commas. Cobertura jar and its dependencies
+ * (ASM, ORO and SLF4J) have to be on the classpath of the application.</p>
+ * <p/>
+ * <p>Hits are saved into the data file when the JVM exits, in the same way as for classes instrumented
+ * by {@link InstrumentMain}.</p>
+ */
+public class CoberturaAgent {
+
+	public static void premain(String agentArgs, Instrumentation instrumentation)
+			throws Exception {
+		String[] args = agentArgs == null || agentArgs.length() == 0
+				? new String[0]
+				: agentArgs.split(",");
+		args = CommandLineBuilder.preprocessCommandLineArguments(args);
+		Arguments arguments = InstrumentMain.createArgumentsFromCMDParams(args)
+				.build();
+		CoverageDataFileHandler.setDefaultDataFile(arguments.getDataFile());
+		instrumentation.addTransformer(new CoberturaClassFileTransformer(
+				arguments));
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.dsl.Arguments;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * <p>{@link ClassFileTransformer} that instruments classes with {@link CoberturaInstrumenter} while they are being loaded.</p>
+ * <p/>
+ * <p>Only classes that match the {@link ClassPattern} of the {@link Arguments} are instrumented. Classes loaded by the bootstrap
+ * class loader, classes that are redefined and classes of Cobertura and its dependencies are never instrumented.</p>
+ * <p/>
+ * <p>Information about the touch-points of the instrumented classes is stored into {@link ProjectData#acquireGlobalProjectData()},
+ * so it is saved into the data file together with the hits when the JVM exits.</p>
+ */
+public class CoberturaClassFileTransformer implements ClassFileTransformer {
+	private static final Logger logger = LoggerFactory
+			.getLogger(CoberturaClassFileTransformer.class);
+
+	/**
+	 * Packages (internal names) of classes that are never instrumented.
+	 */
+	private static final String[] IGNORED_PACKAGES = {"java/", "javax/",
+			"sun/", "com/sun/", "jdk/", "net/sourceforge/cobertura/",
+			"org/objectweb/asm/", "org/apache/oro/", "org/slf4j/",
+			"ch/qos/logback/"};
+
+	private final Arguments arguments;
+
+	private final ClassPattern classPattern;
+
+	/**
+	 * Shared by all the instrumenters, or null if no cache directory was given.
+	 */
+	private final InstrumentationCache instrumentationCache;
+
+	/**
+	 * Shared by all the instrumenters, or null if no verification was requested.
+	 */
+	private final ClassVerifier classVerifier;
+
+	/**
+	 * Shared by the instrumenters of the classes of the same class loader, so the headers of super classes are read
+	 * only once per class loader. Class loaders may define different classes with the same name (e.g. two web
+	 * applications or a redeployed one), so a resolver that caches headers by name must not be shared by them.
+	 * The class loaders are referenced weakly, so the headers cached for a collected class loader are dropped.
+	 */
+	private final Map<ClassLoader, ClassHierarchyResolver> classHierarchyResolvers = new WeakHashMap<ClassLoader, ClassHierarchyResolver>();
+
+	public CoberturaClassFileTransformer(Arguments arguments) {
+		this.arguments = arguments;
+		this.classPattern = CodeInstrumentationTask
+				.createClassPattern(arguments);
+		this.instrumentationCache = CodeInstrumentationTask
+				.createInstrumentationCache(arguments);
+		this.classVerifier = CodeInstrumentationTask
+				.createClassVerifier(arguments);
+	}
+
+	public byte[] transform(ClassLoader loader, String className,
+			Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+			byte[] classfileBuffer) {
+		if (loader == null || className == null
+				|| classBeingRedefined != null || isIgnored(className)
+				|| !classPattern.matches(className)) {
+			return null;
+		}
+		/*
+		 * The global project data is acquired every time, because it is replaced whenever
+		 * it is saved. It is not saved until it is released again.
+		 */
+		ProjectData projectData = ProjectData.acquireGlobalProjectData();
+		try {
+			/*
+			 * The instrumenter is cheap to create and is not shared, so classes can be loaded
+			 * (and instrumented) by many threads at once.
+			 */
+			CoberturaInstrumenter coberturaInstrumenter = CodeInstrumentationTask
+					.createCoberturaInstrumenter(arguments, projectData);
+			coberturaInstrumenter.setClassLoader(loader);
+			coberturaInstrumenter.setInstrumentationCache(instrumentationCache);
+			coberturaInstrumenter.setClassVerifier(classVerifier);
+			coberturaInstrumenter
+					.setClassHierarchyResolver(getClassHierarchyResolver(loader));
+			CoberturaInstrumenter.InstrumentationResult res = coberturaInstrumenter
+					.instrumentClass(new ByteArrayInputStream(classfileBuffer));
+			if (res != null) {
+				logger.debug("Instrumented class while loading: " + className);
+				return res.getContent();
+			}
+		} catch (Throwable t) {
+			// Exceptions thrown from here are ignored by the JVM, so we at least log them.
+			logger.warn("Unable to instrument class " + className, t);
+		} finally {
+			ProjectData.releaseGlobalProjectData(projectData);
+		}
+		return null;
+	}
+
+	ClassHierarchyResolver getClassHierarchyResolver(ClassLoader loader) {
+		synchronized (classHierarchyResolvers) {
+			ClassHierarchyResolver classHierarchyResolver = classHierarchyResolvers
+					.get(loader);
+			if (classHierarchyResolver == null) {
+				classHierarchyResolver = new ClassHierarchyResolver();
+				classHierarchyResolvers.put(loader, classHierarchyResolver);
+			}
+			return classHierarchyResolver;
+		}
+	}
+
+	private static boolean isIgnored(String className) {
+		for (String ignoredPackage : IGNORED_PACKAGES) {
+			if (className.startsWith(ignoredPackage)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
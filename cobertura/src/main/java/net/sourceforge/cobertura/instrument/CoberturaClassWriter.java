@@ -10,58 +10,35 @@ import org.objectweb.asm.ClassWriter;
  *
  */
 public class CoberturaClassWriter extends ClassWriter {
+	/**
+	 * Finds common super classes without loading them.
+	 */
+	private final ClassHierarchyResolver classHierarchyResolver;
+
+	/**
+	 * Class loader that loaded (or is loading) the instrumented class, or null if unknown.
+	 */
+	private final ClassLoader classLoader;
+
 	public CoberturaClassWriter(final int flags) {
+		this(flags, new ClassHierarchyResolver(), null);
+	}
+
+	public CoberturaClassWriter(final int flags,
+			final ClassHierarchyResolver classHierarchyResolver,
+			final ClassLoader classLoader) {
 		super(flags);
+		this.classHierarchyResolver = classHierarchyResolver;
+		this.classLoader = classLoader;
 	}
 
+	/**
+	 * Unlike the default implementation, this one never loads the classes. The class loader of the
+	 * instrumented class (if known) is only searched for class files.
+	 */
 	@Override
 	protected String getCommonSuperClass(final String type1, final String type2) {
-		try {
-			return super.getCommonSuperClass(type1, type2);
-		} catch (RuntimeException e) {
-			// Since the default super construction failed we need to dig further.
-		}
-
-		Class<?> c, d;
-		// If system class fails to load, then let's use the auxClasspath url instead.
-		try {
-			c = Class.forName(type1.replace('/', '.'), false, ClassLoader
-					.getSystemClassLoader());
-		} catch (Exception e) {
-			try {
-				c = Class.forName(type1.replace('/', '.'), false,
-						InstrumentMain.urlClassLoader);
-			} catch (Exception e1) {
-				throw new RuntimeException(e1);
-			}
-		}
-
-		// If system class fails to load, then let's use the auxClasspath url instead.
-		try {
-			d = Class.forName(type2.replace('/', '.'), false, ClassLoader
-					.getSystemClassLoader());
-		} catch (Exception e) {
-			try {
-				d = Class.forName(type2.replace('/', '.'), false,
-						InstrumentMain.urlClassLoader);
-			} catch (Exception e1) {
-				throw new RuntimeException(e1);
-			}
-		}
-
-		if (c.isAssignableFrom(d)) {
-			return type1;
-		}
-		if (d.isAssignableFrom(c)) {
-			return type2;
-		}
-		if (c.isInterface() || d.isInterface()) {
-			return "java/lang/Object";
-		} else {
-			do {
-				c = c.getSuperclass();
-			} while (!c.isAssignableFrom(d));
-			return c.getName().replace('.', '/');
-		}
+		return classHierarchyResolver.getCommonSuperClass(type1, type2,
+				classLoader);
 	}
 }
@@ -25,20 +25,37 @@
 
 package net.sourceforge.cobertura.instrument;
 
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.DoubleBufferedCounters;
+import net.sourceforge.cobertura.coveragedata.MappedCounters;
 import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.coveragedata.StripedCounters;
 import net.sourceforge.cobertura.instrument.pass1.DetectDuplicatedCodeClassVisitor;
 import net.sourceforge.cobertura.instrument.pass1.DetectIgnoredCodeClassVisitor;
 import net.sourceforge.cobertura.instrument.pass2.BuildClassMapClassVisitor;
+import net.sourceforge.cobertura.instrument.pass3.AtomicArrayCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.CodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.DoubleBufferedCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.FastArrayCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.HitsOnlyCodeProvider;
 import net.sourceforge.cobertura.instrument.pass3.InjectCodeClassInstrumenter;
+import net.sourceforge.cobertura.instrument.pass3.LazyArrayCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.MappedCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.StripedArrayCodeProvider;
 import net.sourceforge.cobertura.util.IOUtil;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.util.CheckClassAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.regex.Pattern;
 
@@ -51,6 +68,8 @@ import java.util.regex.Pattern;
  * rendered in different places of destination code</li>
  * <li>Read only: {@link BuildClassMapClassVisitor} - finds all touch-points and other interesting
  * information that are in the class and store it in {@link ClassMap}.
+ * <p/>
+ * Both read only passes visit the same {@link ClassNode}, so the class is parsed once for them.</li>
  * <li>Real instrumentation: {@link InjectCodeClassInstrumenter}. Uses {#link ClassMap} to inject
  * code into the class</li>
  * </ol>
@@ -61,6 +80,20 @@ public class CoberturaInstrumenter {
 	private static final Logger logger = LoggerFactory
 			.getLogger(CoberturaInstrumenter.class);
 
+	/**
+	 * Version of the generated code, that is a part of the {@link #getOptionsFingerprint()}.
+	 * Increment it whenever any {@link CodeProvider} or pass changes the code it generates,
+	 * so classes instrumented by an older Cobertura are not taken from the {@link #instrumentationCache}.
+	 */
+	static final int CODE_VERSION = 1;
+
+	/**
+	 * SHA-1 hash of the Cobertura jar, computed on the first use. It is empty
+	 * when Cobertura is loaded from a classes directory (tests, IDE), so the
+	 * {@link #CODE_VERSION} is the only identity of the code then.
+	 */
+	private static String jarHash;
+
 	/**
 	 * During the instrumentation process we are feeling {@link ProjectData}, to generate from
 	 * it the *.ser file.
@@ -112,6 +145,86 @@ public class CoberturaInstrumenter {
 	 */
 	private boolean threadsafeRigorous;
 
+	/**
+	 * Setting to true causes cobertura to count hits precisely like {@link #threadsafeRigorous}, but every
+	 * thread increments its own stripe of counters, so there is no contention on a single cache line
+	 * when many threads execute the same code.
+	 * <p/>
+	 * In implementation it means that {@link StripedCounters} will be used instead of int[].
+	 * {@link #threadsafeRigorous} takes precedence if both are set.
+	 */
+	private boolean threadsafeStriped;
+
+	/**
+	 * Setting to true causes cobertura to keep two buffers of counters for every class: the counters and their
+	 * values at the previous harvest. Harvesting the counters doesn't reset them and doesn't allocate anything.
+	 * <p/>
+	 * In implementation it means that {@link DoubleBufferedCounters} will be used instead of int[].
+	 * {@link #threadsafeRigorous} and {@link #threadsafeStriped} take precedence.
+	 */
+	private boolean doubleBuffered;
+
+	/**
+	 * Setting to true causes cobertura to store the counters of all classes in a memory mapped file, so the hits
+	 * survive the JVM even if it is killed. The JVM doesn't save these hits into the data file: the report, check
+	 * and merge commands fold the counters files named after the data file into it, and other counters files are
+	 * folded by merging them.
+	 * <p/>
+	 * In implementation it means that {@link MappedCounters} will be used instead of int[].
+	 * {@link #threadsafeRigorous} and {@link #threadsafeStriped} take precedence.
+	 */
+	private boolean mappedCounters;
+
+	/**
+	 * Setting to true causes cobertura to allocate the counters of a class and to register the class only when the
+	 * class executes instrumented code for the first time, instead of in its static initializer. Classes that are
+	 * loaded but never executed cost no heap and no harvesting work.
+	 * <p/>
+	 * In implementation it means that {@link LazyArrayCodeProvider} will be used instead of
+	 * {@link FastArrayCodeProvider}. All the other counters models take precedence.
+	 */
+	private boolean lazyCounters;
+
+	/**
+	 * Setting to true causes cobertura to record only whether a line or a branch was hit, not how many times.
+	 * Every hit is reported as a single one.
+	 * <p/>
+	 * In implementation it means that boolean[] will be used instead of int[], and the probes write into it only
+	 * when the slot is not set yet. The option takes precedence over {@link #threadsafeRigorous} and
+	 * {@link #threadsafeStriped} (and {@link #doubleBuffered}), which only make sense when counting.
+	 */
+	private boolean hitsOnly;
+
+	/**
+	 * Setting to true causes cobertura to split every method into basic blocks and to place line probes only
+	 * at the last line of every block. The hits of the other lines of the block are inferred from it.
+	 * <p/>
+	 * When a line throws an exception, the previous lines of the same block are reported as not executed.
+	 */
+	private boolean minimizeProbes;
+
+	/**
+	 * Class loader that loads the instrumented classes. It is searched for class files of the types
+	 * in the instrumented classes first. If it is null, only the {@link #classHierarchyResolver} is used.
+	 */
+	private ClassLoader classLoader;
+
+	/**
+	 * Finds common super classes of types in the instrumented classes. If it is not set, a resolver
+	 * searching the system class loader and the auxClasspath is created.
+	 */
+	private ClassHierarchyResolver classHierarchyResolver;
+
+	/**
+	 * Cache of already instrumented classes. If it is null, every class is instrumented again.
+	 */
+	private InstrumentationCache instrumentationCache;
+
+	/**
+	 * Verifies the instrumented classes for diagnostic purposes. If it is null, nothing is verified.
+	 */
+	private ClassVerifier classVerifier;
+
 	/**
 	 * Analyzes and instruments class given by path.
 	 * <p/>
@@ -152,22 +265,60 @@ public class CoberturaInstrumenter {
 	 */
 	public InstrumentationResult instrumentClass(InputStream inputStream)
 			throws IOException {
-		ClassReader cr0 = new ClassReader(inputStream);
-		ClassWriter cw0 = new ClassWriter(0);
+		byte[] classBytes = IOUtil.createByteArrayFromInputStream(inputStream);
+		if (instrumentationCache == null) {
+			return instrumentClass(classBytes, null, false);
+		}
+
+		String key = instrumentationCache.getKey(getOptionsFingerprint(),
+				classBytes);
+		InstrumentationCache.Entry entry = instrumentationCache.get(key);
+		if (entry != null) {
+			logger.debug("Using cached instrumentation of class: "
+					+ entry.getClassName());
+			ClassData classData = entry.getClassData();
+			projectData.getOrCreateClassData(classData.getName()).merge(
+					classData);
+			return entry.getContent() != null ? new InstrumentationResult(
+					entry.getClassName(), entry.getContent()) : null;
+		}
+		return instrumentClass(classBytes, key, false);
+	}
+
+	/**
+	 * Analyzes and instruments the class. If the cacheKey is not null, the result is stored
+	 * into the {@link #instrumentationCache}.
+	 *
+	 * @param check - if true, the instrumented class is checked by {@link CheckClassAdapter} while it is created
+	 */
+	private InstrumentationResult instrumentClass(byte[] classBytes,
+			String cacheKey, boolean check) {
+		/*
+		 * The read only passes analyze the tree of the class, so the class is parsed
+		 * only once for them and nothing is written until the last pass.
+		 */
+		ClassNode classNode = new ClassNode();
+		new ClassReader(classBytes).accept(classNode, ClassReader.EXPAND_FRAMES);
+		if (classHierarchyResolver == null) {
+			classHierarchyResolver = new ClassHierarchyResolver();
+		}
+		String[] interfaces = (String[]) classNode.interfaces
+				.toArray(new String[classNode.interfaces.size()]);
+		classHierarchyResolver.addClass(classNode.name, classNode.superName,
+				interfaces, (classNode.access & Opcodes.ACC_INTERFACE) != 0);
+
 		DetectIgnoredCodeClassVisitor detectIgnoredCv = new DetectIgnoredCodeClassVisitor(
-				cw0, ignoreTrivial, ignoreMethodAnnotations);
+				null, ignoreTrivial, ignoreMethodAnnotations);
 		DetectDuplicatedCodeClassVisitor cv0 = new DetectDuplicatedCodeClassVisitor(
 				detectIgnoredCv);
-		cr0.accept(cv0, 0);
+		classNode.accept(cv0);
 
-		ClassReader cr = new ClassReader(cw0.toByteArray());
-		ClassWriter cw = new ClassWriter(0);
-		BuildClassMapClassVisitor cv = new BuildClassMapClassVisitor(cw,
+		BuildClassMapClassVisitor cv = new BuildClassMapClassVisitor(null,
 				ignoreRegexes, ignoreClassAnnotations,
 				cv0.getDuplicatesLinesCollector(),
-				detectIgnoredCv.getIgnoredMethodNamesAndSignatures());
-
-		cr.accept(cv, ClassReader.EXPAND_FRAMES);
+				detectIgnoredCv.getIgnoredMethodNamesAndSignatures(),
+				minimizeProbes);
+		classNode.accept(cv);
 
 		if (logger.isDebugEnabled()) {
 			logger
@@ -196,35 +347,168 @@ public class CoberturaInstrumenter {
 		cv.getClassMap().applyOnProjectData(projectData,
 				cv.shouldBeInstrumented());
 
+		InstrumentationResult result = null;
 		if (cv.shouldBeInstrumented()) {
 			/*
 			 *  BuildClassMapClassInstrumenter and DetectDuplicatedCodeClassVisitor has not modificated bytecode,
 			 *  so we can use any bytecode representation of that class.
 			 */
-			ClassReader cr2 = new ClassReader(cw0.toByteArray());
+			ClassReader cr2 = new ClassReader(classBytes);
 			ClassWriter cw2 = new CoberturaClassWriter(
-					ClassWriter.COMPUTE_FRAMES);
+					ClassWriter.COMPUTE_FRAMES, classHierarchyResolver,
+					classLoader);
 			cv.getClassMap().assignCounterIds();
 			logger.debug("Assigned " + cv.getClassMap().getMaxCounterId()
 					+ " counters for class:" + cv.getClassMap().getClassName());
 			InjectCodeClassInstrumenter cv2 = new InjectCodeClassInstrumenter(
-					cw2, ignoreRegexes, threadsafeRigorous, cv.getClassMap(),
+					check ? new CheckClassAdapter(cw2, false) : cw2,
+					ignoreRegexes, createCodeProvider(), cv.getClassMap(),
 					cv0.getDuplicatesLinesCollector(), detectIgnoredCv
 							.getIgnoredMethodNamesAndSignatures());
-			cr2.accept(new CheckClassAdapter(cv2), ClassReader.SKIP_FRAMES);
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			CheckClassAdapter.verify(new ClassReader(cw2.toByteArray()), false,
-					pw);
-			logger.debug(sw.toString());
-
-			return new InstrumentationResult(cv.getClassMap().getClassName(),
-					cw2.toByteArray());
+			try {
+				cr2.accept(cv2, ClassReader.SKIP_FRAMES);
+			} catch (RuntimeException e) {
+				if (!check && classVerifier != null
+						&& classVerifier.shouldCheckFailures()) {
+					checkFailedClass(classBytes, cv.getClassMap()
+							.getClassName());
+				}
+				throw e;
+			}
+
+			byte[] content = cw2.toByteArray();
+			if (classVerifier != null
+					&& classVerifier.shouldVerify(cv.getClassMap()
+							.getClassName())) {
+				classVerifier.verify(cv.getClassMap().getClassName(), content,
+						classLoader);
+			}
+			result = new InstrumentationResult(cv.getClassMap().getClassName(),
+					content);
 		} else {
 			logger.debug("Class shouldn't be instrumented: "
 					+ cv.getClassMap().getClassName());
-			return null;
 		}
+
+		if (cacheKey != null) {
+			/*
+			 * The projectData could already contain data of other classes (or hits of this one),
+			 * so we store data created from the classmap alone.
+			 */
+			ClassData classData = cv.getClassMap().applyOnProjectData(
+					new ProjectData(), cv.shouldBeInstrumented());
+			instrumentationCache.put(cacheKey, cv.getClassMap().getClassName(),
+					result != null ? result.getContent() : null, classData);
+		}
+		return result;
+	}
+
+	/**
+	 * Repeats instrumentation of the class with {@link CheckClassAdapter}, that reports the first
+	 * incorrect instruction, and reports the problem to the {@link #classVerifier}.
+	 */
+	private void checkFailedClass(byte[] classBytes, String className) {
+		try {
+			instrumentClass(classBytes, null, true);
+		} catch (Throwable t) {
+			classVerifier.reportFailure(className, t);
+		}
+	}
+
+	/**
+	 * @return description of all options that change the result of the instrumentation, so the
+	 * {@link #instrumentationCache} is not used for classes instrumented with different options.
+	 */
+	String getOptionsFingerprint() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getClass().getPackage().getImplementationVersion());
+		sb.append(";code=").append(CODE_VERSION);
+		sb.append(";jar=").append(getJarHash());
+		sb.append(";codeProvider=").append(
+				createCodeProvider().getClass().getName());
+		List<String> regexes = new ArrayList<String>();
+		for (Pattern pattern : ignoreRegexes) {
+			regexes.add(pattern.pattern());
+		}
+		Collections.sort(regexes);
+		sb.append(";ignore=").append(regexes);
+		sb.append(";ignoreMethodAnnotations=").append(
+				new TreeSet<String>(ignoreMethodAnnotations));
+		sb.append(";ignoreClassAnnotations=").append(
+				new TreeSet<String>(ignoreClassAnnotations));
+		sb.append(";ignoreTrivial=").append(ignoreTrivial);
+		sb.append(";threadsafeRigorous=").append(threadsafeRigorous);
+		sb.append(";threadsafeStriped=").append(threadsafeStriped);
+		sb.append(";doubleBuffered=").append(doubleBuffered);
+		sb.append(";mappedCounters=").append(mappedCounters);
+		sb.append(";lazyCounters=").append(lazyCounters);
+		sb.append(";hitsOnly=").append(hitsOnly);
+		sb.append(";minimizeProbes=").append(minimizeProbes);
+		return sb.toString();
+	}
+
+	private static synchronized String getJarHash() {
+		if (jarHash == null) {
+			jarHash = "";
+			try {
+				CodeSource codeSource = CoberturaInstrumenter.class
+						.getProtectionDomain().getCodeSource();
+				File jar = codeSource != null ? new File(codeSource
+						.getLocation().toURI()) : null;
+				if (jar != null && jar.isFile()) {
+					jarHash = hashFile(jar);
+				}
+			} catch (Exception e) {
+				logger.debug("Cannot compute the hash of the Cobertura jar", e);
+			}
+		}
+		return jarHash;
+	}
+
+	private static String hashFile(File file) throws IOException,
+			NoSuchAlgorithmException {
+		MessageDigest digest = MessageDigest.getInstance("SHA-1");
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		} finally {
+			IOUtil.closeInputStream(is);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : digest.digest()) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+					Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Creates the {@link CodeProvider} that matches the configured counters model.
+	 */
+	private CodeProvider createCodeProvider() {
+		if (hitsOnly) {
+			return new HitsOnlyCodeProvider();
+		}
+		if (threadsafeRigorous) {
+			return new AtomicArrayCodeProvider();
+		}
+		if (threadsafeStriped) {
+			return new StripedArrayCodeProvider();
+		}
+		if (mappedCounters) {
+			return new MappedCodeProvider();
+		}
+		if (doubleBuffered) {
+			return new DoubleBufferedCodeProvider();
+		}
+		if (lazyCounters) {
+			return new LazyArrayCodeProvider();
+		}
+		return new FastArrayCodeProvider();
 	}
 
 	/**
@@ -318,6 +602,48 @@ public class CoberturaInstrumenter {
 		this.threadsafeRigorous = threadsafeRigorous;
 	}
 
+	public void setThreadsafeStriped(boolean threadsafeStriped) {
+		this.threadsafeStriped = threadsafeStriped;
+	}
+
+	public void setDoubleBuffered(boolean doubleBuffered) {
+		this.doubleBuffered = doubleBuffered;
+	}
+
+	public void setMappedCounters(boolean mappedCounters) {
+		this.mappedCounters = mappedCounters;
+	}
+
+	public void setLazyCounters(boolean lazyCounters) {
+		this.lazyCounters = lazyCounters;
+	}
+
+	public void setHitsOnly(boolean hitsOnly) {
+		this.hitsOnly = hitsOnly;
+	}
+
+	public void setMinimizeProbes(boolean minimizeProbes) {
+		this.minimizeProbes = minimizeProbes;
+	}
+
+	public void setClassLoader(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	public void setClassHierarchyResolver(
+			ClassHierarchyResolver classHierarchyResolver) {
+		this.classHierarchyResolver = classHierarchyResolver;
+	}
+
+	public void setInstrumentationCache(
+			InstrumentationCache instrumentationCache) {
+		this.instrumentationCache = instrumentationCache;
+	}
+
+	public void setClassVerifier(ClassVerifier classVerifier) {
+		this.classVerifier = classVerifier;
+	}
+
 	public void setFailOnError(boolean failOnError) {
 		this.failOnError = failOnError;
 	}
@@ -7,6 +7,12 @@ import net.sourceforge.cobertura.util.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -44,27 +50,131 @@ import org.slf4j.LoggerFactory;
  */
 public class CodeInstrumentationTask {
 	private static final LoggerWrapper logger = new LoggerWrapper();
+	private Arguments arguments;
 	private CoberturaInstrumenter coberturaInstrumenter;
+	private InstrumentationCache instrumentationCache;
+	private ClassVerifier classVerifier;
+	private ClassHierarchyResolver classHierarchyResolver;
 	private File destinationDirectory;
 	private ClassPattern classPattern;
 
+	/**
+	 * Instruments the classes when more than one thread was requested, otherwise it is null and
+	 * the classes are instrumented by the calling thread.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Maximum number of archive entries that are kept in memory while their classes are being instrumented.
+	 */
+	private int maxPendingEntries;
+
+	/**
+	 * Instrumentation of class files that has been submitted to the {@link #executor}.
+	 */
+	private final List<Future<?>> pendingClasses = new ArrayList<Future<?>>();
+
+	/**
+	 * Every worker of the {@link #executor} fills its own {@link ProjectData}, so the workers don't
+	 * contend for the locks of the shared one. They are merged when all the classes are instrumented.
+	 */
+	private final List<ProjectData> workersProjectData = Collections
+			.synchronizedList(new ArrayList<ProjectData>());
+
+	private final ThreadLocal<CoberturaInstrumenter> workerInstrumenter = new ThreadLocal<CoberturaInstrumenter>() {
+		@Override
+		protected CoberturaInstrumenter initialValue() {
+			ProjectData workerProjectData = new ProjectData();
+			workersProjectData.add(workerProjectData);
+			CoberturaInstrumenter instrumenter = createCoberturaInstrumenter(
+					arguments, workerProjectData);
+			instrumenter.setInstrumentationCache(instrumentationCache);
+			instrumenter.setClassVerifier(classVerifier);
+			instrumenter.setClassHierarchyResolver(classHierarchyResolver);
+			return instrumenter;
+		}
+	};
+
 	public CodeInstrumentationTask instrument(Arguments arguments,
 			ProjectData projectData) throws Throwable {
+		this.arguments = arguments;
 		destinationDirectory = arguments.getDestinationDirectory();
-		classPattern = new ClassPattern();
-		coberturaInstrumenter = new CoberturaInstrumenter();
-		coberturaInstrumenter.setIgnoreRegexes(arguments.getIgnoreRegexes());
+		classPattern = createClassPattern(arguments);
+		instrumentationCache = createInstrumentationCache(arguments);
+		classVerifier = createClassVerifier(arguments);
+		classHierarchyResolver = createClassHierarchyResolver(arguments);
+		coberturaInstrumenter = createCoberturaInstrumenter(arguments,
+				projectData);
+		coberturaInstrumenter.setInstrumentationCache(instrumentationCache);
+		coberturaInstrumenter.setClassVerifier(classVerifier);
+		coberturaInstrumenter.setClassHierarchyResolver(classHierarchyResolver);
+		maxPendingEntries = arguments.getThreads() * 4;
+		if (arguments.getThreads() > 1) {
+			executor = Executors.newFixedThreadPool(arguments.getThreads());
+		}
 		// Parse our parameters
 		Set<CoberturaFile> filePaths = arguments.getFilesToInstrument();
 
 		File dataFile = arguments.getDataFile();
-		destinationDirectory = arguments.getDestinationDirectory();
-		coberturaInstrumenter.setDestinationDirectory(destinationDirectory);
-		arguments.getIgnoreRegexes();
+
+		// Instrument classes
+		logger.info(String.format("Instrumenting %s %s %s", filePaths.size(),
+				(filePaths.size() == 1 ? "file" : "files"),
+				(destinationDirectory != null ? " to "
+						+ destinationDirectory.getAbsoluteFile() : "")));
+
+		try {
+			Iterator<CoberturaFile> iter = filePaths.iterator();
+			while (iter.hasNext()) {
+				CoberturaFile coberturaFile = iter.next();
+				if (coberturaFile.isArchive()) {
+					addInstrumentationToArchive(coberturaFile);
+				} else {
+					addInstrumentation(coberturaFile);
+				}
+			}
+			for (Future<?> pendingClass : pendingClasses) {
+				getResult(pendingClass);
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+
+		for (ProjectData workerProjectData : workersProjectData) {
+			projectData.merge(workerProjectData);
+		}
+		if (classVerifier != null) {
+			classVerifier.logSummary();
+		}
+
+		// Save coverage data (ser file with list of touch points, but not hits registered).
+		CoverageDataFileHandler.saveCoverageData(projectData, dataFile);
+		return this;
+	}
+
+	/**
+	 * Creates {@link ClassPattern} of classes that should be instrumented according to given arguments.
+	 */
+	static ClassPattern createClassPattern(Arguments arguments) {
+		ClassPattern classPattern = new ClassPattern();
 		classPattern.addExcludeClassesRegex(arguments
 				.getClassPatternExcludeClassesRegexes());
 		classPattern.addIncludeClassesRegex(arguments
 				.getClassPatternIncludeClassesRegexes());
+		return classPattern;
+	}
+
+	/**
+	 * Creates {@link CoberturaInstrumenter} configured by given arguments, that fills given projectData.
+	 */
+	static CoberturaInstrumenter createCoberturaInstrumenter(
+			Arguments arguments, ProjectData projectData) {
+		CoberturaInstrumenter coberturaInstrumenter = new CoberturaInstrumenter();
+		coberturaInstrumenter.setIgnoreRegexes(arguments.getIgnoreRegexes());
+		coberturaInstrumenter.setDestinationDirectory(arguments
+				.getDestinationDirectory());
 		coberturaInstrumenter.setIgnoreTrivial(arguments.isIgnoreTrivial());
 		coberturaInstrumenter.setIgnoreMethodAnnotations(arguments
 				.getIgnoreMethodAnnotations());
@@ -72,28 +182,103 @@ public class CodeInstrumentationTask {
 				.getIgnoreClassAnnotations());
 		coberturaInstrumenter.setThreadsafeRigorous(arguments
 				.isThreadsafeRigorous());
+		coberturaInstrumenter.setThreadsafeStriped(arguments
+				.isThreadsafeStriped());
+		coberturaInstrumenter.setDoubleBuffered(arguments.isDoubleBuffered());
+		coberturaInstrumenter.setMappedCounters(arguments.isMappedCounters());
+		coberturaInstrumenter.setLazyCounters(arguments.isLazyCounters());
+		coberturaInstrumenter.setHitsOnly(arguments.isHitsOnly());
+		coberturaInstrumenter.setMinimizeProbes(arguments.isMinimizeProbes());
 		coberturaInstrumenter.setFailOnError(arguments.isFailOnError());
 		coberturaInstrumenter.setProjectData(projectData);
+		return coberturaInstrumenter;
+	}
 
-		// Instrument classes
-		logger.info(String.format("Instrumenting %s %s %s", filePaths.size(),
-				(filePaths.size() == 1 ? "file" : "files"),
-				(destinationDirectory != null ? " to "
-						+ destinationDirectory.getAbsoluteFile() : "")));
+	/**
+	 * Creates {@link ClassVerifier} in the verification mode given by arguments.
+	 *
+	 * @return the verifier or null if no verification was requested
+	 */
+	static ClassVerifier createClassVerifier(Arguments arguments) {
+		if (arguments.getVerifyMode() == ClassVerifier.Mode.NONE) {
+			return null;
+		}
+		return new ClassVerifier(arguments.getVerifyMode(), arguments
+				.getVerifySampleRate());
+	}
 
-		Iterator<CoberturaFile> iter = filePaths.iterator();
-		while (iter.hasNext()) {
-			CoberturaFile coberturaFile = iter.next();
+	/**
+	 * Creates {@link ClassHierarchyResolver} that searches the instrumented directories and archives for
+	 * class files too, so the instrumented classes don't have to be on the auxClasspath.
+	 */
+	static ClassHierarchyResolver createClassHierarchyResolver(
+			Arguments arguments) {
+		ClassHierarchyResolver classHierarchyResolver = new ClassHierarchyResolver();
+		Set<File> classpathEntries = new LinkedHashSet<File>();
+		for (CoberturaFile coberturaFile : arguments.getFilesToInstrument()) {
 			if (coberturaFile.isArchive()) {
-				addInstrumentationToArchive(coberturaFile);
-			} else {
-				addInstrumentation(coberturaFile);
+				classpathEntries.add(coberturaFile.getAbsoluteFile());
+			} else if (coberturaFile.getBaseDir() != null) {
+				classpathEntries.add(new File(coberturaFile.getBaseDir())
+						.getAbsoluteFile());
 			}
 		}
+		for (File classpathEntry : classpathEntries) {
+			classHierarchyResolver.addClasspathEntry(classpathEntry);
+		}
+		return classHierarchyResolver;
+	}
 
-		// Save coverage data (ser file with list of touch points, but not hits registered).
-		CoverageDataFileHandler.saveCoverageData(projectData, dataFile);
-		return this;
+	/**
+	 * Creates {@link InstrumentationCache} in the cache directory given by arguments.
+	 *
+	 * @return the cache or null if no cache directory was given
+	 */
+	static InstrumentationCache createInstrumentationCache(Arguments arguments) {
+		if (arguments.getCacheDirectory() == null) {
+			return null;
+		}
+		return new InstrumentationCache(arguments.getCacheDirectory(),
+				arguments.getCacheMaxSize());
+	}
+
+	/**
+	 * @return the instrumenter used by the current thread
+	 */
+	private CoberturaInstrumenter getCoberturaInstrumenter() {
+		return executor != null
+				? workerInstrumenter.get()
+				: coberturaInstrumenter;
+	}
+
+	/**
+	 * Submits the task to the {@link #executor}, or runs it immediately if there is no executor.
+	 */
+	private <T> Future<T> submit(Callable<T> task) {
+		if (executor != null) {
+			return executor.submit(task);
+		}
+		FutureTask<T> future = new FutureTask<T>(task);
+		future.run();
+		return future;
+	}
+
+	/**
+	 * Waits for the task and rethrows the exception thrown by the task, if any.
+	 */
+	private static <T> T getResult(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
 	}
 
 	/**
@@ -127,12 +312,16 @@ public class CodeInstrumentationTask {
 		 * "modified" is returned and indicates that something was instrumented.
 		 * If nothing is instrumented, the original entry will be used by the
 		 * caller of this method.
+		 *
+		 * Classes are instrumented in the background, while the following entries
+		 * are read. The entries are written in their original order.
 		 */
 		boolean modified = false;
+		LinkedList<PendingEntry> pendingEntries = new LinkedList<PendingEntry>();
 		ZipEntry entry;
 		while ((entry = archive.getNextEntry()) != null) {
 			try {
-				String entryName = entry.getName();
+				final String entryName = entry.getName();
 
 				/*
 				 * If this is a signature file then don't copy it,
@@ -143,15 +332,12 @@ public class CodeInstrumentationTask {
 				if (ArchiveUtil.isSignatureFile(entry.getName())) {
 					continue;
 				}
-				ZipEntry outputEntry = new ZipEntry(entry.getName());
-				outputEntry.setComment(entry.getComment());
-				outputEntry.setExtra(entry.getExtra());
-				outputEntry.setTime(entry.getTime());
-				output.putNextEntry(outputEntry);
+				PendingEntry pendingEntry = new PendingEntry(entry);
 
 				// Read current entry
-				byte[] entryBytes = IOUtil
+				final byte[] entryBytes = IOUtil
 						.createByteArrayFromInputStream(archive);
+				pendingEntry.bytes = entryBytes;
 
 				// Instrument embedded archives if a classPattern has been specified
 				if ((classPattern.isSpecified())
@@ -159,40 +345,18 @@ public class CodeInstrumentationTask {
 					Archive archiveObj = new Archive(file, entryBytes);
 					addInstrumentationToArchive(archiveObj);
 					if (archiveObj.isModified()) {
-						modified = true;
-						entryBytes = archiveObj.getBytes();
-						outputEntry.setTime(System.currentTimeMillis());
+						pendingEntry.bytes = archiveObj.getBytes();
+						pendingEntry.modified = true;
 					}
 				} else if (isClass(entry) && classPattern.matches(entryName)) {
-					try {
-						CoberturaInstrumenter.InstrumentationResult res = coberturaInstrumenter
-								.instrumentClass(new ByteArrayInputStream(
-										entryBytes));
-						if (res != null) {
-							logger.debug("Putting instrumented entry: "
-									+ entry.getName());
-							entryBytes = res.getContent();
-							modified = true;
-							outputEntry.setTime(System.currentTimeMillis());
-						}
-					} catch (Throwable t) {
-						if (entry.getName().endsWith("_Stub.class")) {
-							//no big deal - it is probably an RMI stub, and they don't need to be instrumented
-							logger.debug(
-									"Problems instrumenting archive entry: "
-											+ entry.getName(), t);
-						} else {
-							logger.warn(
-									"Problems instrumenting archive entry: "
-											+ entry.getName(), t);
+					pendingEntry.instrumentation = submit(new Callable<byte[]>() {
+						public byte[] call() {
+							return instrumentArchiveEntry(entryName, entryBytes);
 						}
-					}
+					});
 				}
-
-				// Add entry to the output
-				output.write(entryBytes);
-				output.closeEntry();
 				archive.closeEntry();
+				pendingEntries.add(pendingEntry);
 			} catch (Exception e) {
 				logger.warn("Problems with archive entry: " + entry.getName(),
 						e);
@@ -200,7 +364,76 @@ public class CodeInstrumentationTask {
 				logger.warn("Problems with archive entry: " + entry.getName(),
 						t);
 			}
+
+			while (pendingEntries.size() > maxPendingEntries) {
+				modified |= writeEntry(pendingEntries.removeFirst(), output);
+			}
+		}
+		while (!pendingEntries.isEmpty()) {
+			modified |= writeEntry(pendingEntries.removeFirst(), output);
+		}
+		return modified;
+	}
+
+	/**
+	 * @return the instrumented class or null if the class should not (or could not) be instrumented
+	 */
+	private byte[] instrumentArchiveEntry(String entryName, byte[] entryBytes) {
+		try {
+			CoberturaInstrumenter.InstrumentationResult res = getCoberturaInstrumenter()
+					.instrumentClass(new ByteArrayInputStream(entryBytes));
+			if (res != null) {
+				logger.debug("Putting instrumented entry: " + entryName);
+				return res.getContent();
+			}
+		} catch (Throwable t) {
+			if (entryName.endsWith("_Stub.class")) {
+				//no big deal - it is probably an RMI stub, and they don't need to be instrumented
+				logger.debug("Problems instrumenting archive entry: "
+						+ entryName, t);
+			} else {
+				logger.warn("Problems instrumenting archive entry: "
+						+ entryName, t);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Waits until the class of the entry is instrumented and adds the entry to the output.
+	 *
+	 * @return true if the entry was modified
+	 */
+	private boolean writeEntry(PendingEntry pendingEntry,
+			ZipOutputStream output) {
+		ZipEntry entry = pendingEntry.entry;
+		boolean modified = pendingEntry.modified;
+		try {
+			byte[] entryBytes = pendingEntry.bytes;
+			if (pendingEntry.instrumentation != null) {
+				byte[] instrumented = getResult(pendingEntry.instrumentation);
+				if (instrumented != null) {
+					entryBytes = instrumented;
+					modified = true;
+				}
+			}
+
+			ZipEntry outputEntry = new ZipEntry(entry.getName());
+			outputEntry.setComment(entry.getComment());
+			outputEntry.setExtra(entry.getExtra());
+			outputEntry.setTime(modified
+					? System.currentTimeMillis()
+					: entry.getTime());
+			output.putNextEntry(outputEntry);
+
+			// Add entry to the output
+			output.write(entryBytes);
+			output.closeEntry();
 			output.flush();
+		} catch (Exception e) {
+			logger.warn("Problems with archive entry: " + entry.getName(), e);
+		} catch (Throwable t) {
+			logger.warn("Problems with archive entry: " + entry.getName(), t);
 		}
 		return modified;
 	}
@@ -293,16 +526,28 @@ public class CodeInstrumentationTask {
 		}
 	}
 
-	private void addInstrumentationToSingleClass(File file) {
+	private void addInstrumentationToSingleClass(final File file)
+			throws Exception {
 		logger.info("Instrumenting: " + file.getAbsolutePath() + " to "
 				+ destinationDirectory);
-		coberturaInstrumenter.addInstrumentationToSingleClass(file);
+		Future<?> future = submit(new Callable<Object>() {
+			public Object call() {
+				getCoberturaInstrumenter().addInstrumentationToSingleClass(file);
+				return null;
+			}
+		});
+		if (executor != null) {
+			pendingClasses.add(future);
+		} else {
+			getResult(future);
+		}
 	}
 
 	// TODO: Don't attempt to instrument a file if the outputFile already
 	//       exists and is newer than the input file, and the output and
 	//       input file are in different locations?
-	private void addInstrumentation(CoberturaFile coberturaFile) {
+	private void addInstrumentation(CoberturaFile coberturaFile)
+			throws Exception {
 		if (coberturaFile.isClass()
 				&& classPattern.matches(coberturaFile.getPathname())) {
 			addInstrumentationToSingleClass(coberturaFile);
@@ -319,6 +564,24 @@ public class CodeInstrumentationTask {
 		}
 	}
 
+	/**
+	 * Archive entry that is waiting to be written to the output archive.
+	 */
+	private static class PendingEntry {
+		final ZipEntry entry;
+		byte[] bytes;
+		boolean modified;
+
+		/**
+		 * Instrumentation of the class in the entry, or null if the entry is not a class to instrument.
+		 */
+		Future<byte[]> instrumentation;
+
+		PendingEntry(ZipEntry entry) {
+			this.entry = entry;
+		}
+	}
+
 	// TODO: Preserved current behaviour, but this code is failing on WARN, not error
 	private static class LoggerWrapper {
 		private final Logger logger = LoggerFactory
@@ -102,7 +102,7 @@ public class InstrumentMain {
 		}
 	}
 
-	private static ArgumentsBuilder createArgumentsFromCMDParams(String[] args) {
+	static ArgumentsBuilder createArgumentsFromCMDParams(String[] args) {
 		ArgumentsBuilder builder = new ArgumentsBuilder();
 
 		// Parse parameters
@@ -131,6 +131,28 @@ public class InstrumentMain {
 				logger.setFailOnError(true);
 			} else if (args[i].equals("--threadsafeRigorous")) {
 				builder.threadsafeRigorous(true);
+			} else if (args[i].equals("--threadsafeStriped")) {
+				builder.threadsafeStriped(true);
+			} else if (args[i].equals("--doubleBuffered")) {
+				builder.doubleBuffered(true);
+			} else if (args[i].equals("--mappedCounters")) {
+				builder.mappedCounters(true);
+			} else if (args[i].equals("--lazyCounters")) {
+				builder.lazyCounters(true);
+			} else if (args[i].equals("--hitsOnly")) {
+				builder.hitsOnly(true);
+			} else if (args[i].equals("--minimizeProbes")) {
+				builder.minimizeProbes(true);
+			} else if (args[i].equals("--cacheDirectory")) {
+				builder.setCacheDirectory(args[++i]);
+			} else if (args[i].equals("--cacheMaxSize")) {
+				builder.cacheMaxSize(Long.parseLong(args[++i]));
+			} else if (args[i].equals("--threads")) {
+				builder.threads(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("--verify")) {
+				builder.setVerifyMode(args[++i]);
+			} else if (args[i].equals("--verifySampleRate")) {
+				builder.setVerifySampleRate(Double.parseDouble(args[++i]));
 			} else if (args[i].equals("--auxClasspath")) {
 				addElementsToJVM(args[++i]);
                         } else if (args[i].equals("--listOfFilesToInstrument")) {
@@ -0,0 +1,272 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.util.IOUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Persistent cache of instrumented classes, so classes that did not change are not instrumented again.</p>
+ * <p/>
+ * <p>Every entry is a file in the cache {@link #directory}, named by a SHA-1 hash of the original class bytes and
+ * of the instrumentation options (see {@link #getKey(String, byte[])}). The entry contains the instrumented class
+ * (if the class should be instrumented at all) and the {@link ClassData} created from the class's touch-points, so
+ * the project data can be filled without analyzing the class again.</p>
+ * <p/>
+ * <p>Entries are written into temporary files and renamed, so the cache can be shared by concurrent builds. When
+ * the entries take more than {@link #maxSize} bytes, the least recently used entries (by last modification time, that
+ * is updated on every hit) are removed.</p>
+ */
+public class InstrumentationCache {
+	private static final Logger logger = LoggerFactory
+			.getLogger(InstrumentationCache.class);
+
+	/**
+	 * Version of the entries format. Change it whenever the format or the instrumentation changes incompatibly.
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	private static final String ENTRY_SUFFIX = ".instrumented";
+
+	private final File directory;
+
+	private final long maxSize;
+
+	/**
+	 * Size of all entries in the {@link #directory}. Entries added by other processes are counted
+	 * when the size is recomputed in {@link #evict()}.
+	 */
+	private final AtomicLong size = new AtomicLong();
+
+	public InstrumentationCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		directory.mkdirs();
+		long entriesSize = 0;
+		for (File entry : listEntries()) {
+			entriesSize += entry.length();
+		}
+		size.set(entriesSize);
+	}
+
+	/**
+	 * @param optionsFingerprint - description of all options that change the result of the instrumentation
+	 * @param classBytes         - the class before instrumentation
+	 *
+	 * @return key of the cache entry
+	 */
+	public String getKey(String optionsFingerprint, byte[] classBytes) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update((FORMAT_VERSION + ":" + optionsFingerprint + ":")
+					.getBytes("UTF-8"));
+			digest.update(classBytes);
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest()) {
+				key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+						Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return the cached entry, or null if there is no (readable) entry for the key
+	 */
+	public Entry get(String key) {
+		File file = getFile(key);
+		if (!file.isFile()) {
+			return null;
+		}
+		InputStream is = null;
+		try {
+			is = new BufferedInputStream(new FileInputStream(file));
+			DataInputStream in = new DataInputStream(is);
+			if (in.readInt() != FORMAT_VERSION) {
+				return null;
+			}
+			String className = in.readUTF();
+			byte[] content = null;
+			if (in.readBoolean()) {
+				content = new byte[in.readInt()];
+				in.readFully(content);
+			}
+			ClassData classData = (ClassData) new ObjectInputStream(in)
+					.readObject();
+			// The entry was used recently, so don't evict it soon.
+			file.setLastModified(System.currentTimeMillis());
+			return new Entry(className, content, classData);
+		} catch (Exception e) {
+			// The entry could have been evicted by another process or written by another version.
+			logger.debug("Unable to read cache entry " + file, e);
+			return null;
+		} finally {
+			IOUtil.closeInputStream(is);
+		}
+	}
+
+	/**
+	 * Stores the result of instrumentation of a class.
+	 *
+	 * @param key       - key created by {@link #getKey(String, byte[])}
+	 * @param className - name of the class
+	 * @param content   - the instrumented class, or null if the class should not be instrumented
+	 * @param classData - information about touch-points of the class
+	 */
+	public void put(String key, String className, byte[] content,
+			ClassData classData) {
+		File file = getFile(key);
+		File tmpFile = null;
+		OutputStream os = null;
+		try {
+			tmpFile = File.createTempFile(key, ".tmp", directory);
+			os = new BufferedOutputStream(new FileOutputStream(tmpFile));
+			DataOutputStream out = new DataOutputStream(os);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(className);
+			out.writeBoolean(content != null);
+			if (content != null) {
+				out.writeInt(content.length);
+				out.write(content);
+			}
+			ObjectOutputStream oos = new ObjectOutputStream(out);
+			oos.writeObject(classData);
+			oos.flush();
+			os.close();
+			os = null;
+			if (store(tmpFile, file)) {
+				evict();
+			}
+		} catch (IOException e) {
+			logger.debug("Unable to write cache entry " + file, e);
+		} finally {
+			IOUtil.closeOutputStream(os);
+			if (tmpFile != null) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Renames the temporary file to the entry and counts its size. An entry stored for the same key by another
+	 * thread is replaced, so its size is subtracted. If the rename fails because another process has just stored
+	 * the same entry, we keep its file.
+	 *
+	 * @return true if the cache takes more than {@link #maxSize} bytes
+	 */
+	private synchronized boolean store(File tmpFile, File file) {
+		long replacedLength = file.length();
+		if (!tmpFile.renameTo(file)) {
+			return false;
+		}
+		return size.addAndGet(file.length() - replacedLength) > maxSize;
+	}
+
+	/**
+	 * Removes least recently used entries, until the cache takes less than 3/4 of {@link #maxSize}.
+	 */
+	private synchronized void evict() {
+		File[] entries = listEntries();
+		final long[] lastModified = new long[entries.length];
+		Integer[] order = new Integer[entries.length];
+		long entriesSize = 0;
+		for (int i = 0; i < entries.length; i++) {
+			lastModified[i] = entries[i].lastModified();
+			order[i] = i;
+			entriesSize += entries[i].length();
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				long l1 = lastModified[o1];
+				long l2 = lastModified[o2];
+				return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+			}
+		});
+		long targetSize = maxSize / 4 * 3;
+		for (int i = 0; i < order.length && entriesSize > targetSize; i++) {
+			File entry = entries[order[i]];
+			long length = entry.length();
+			if (entry.delete()) {
+				entriesSize -= length;
+			}
+		}
+		size.set(entriesSize);
+	}
+
+	private File[] listEntries() {
+		File[] entries = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(ENTRY_SUFFIX);
+			}
+		});
+		return entries != null ? entries : new File[0];
+	}
+
+	private File getFile(String key) {
+		return new File(directory, key + ENTRY_SUFFIX);
+	}
+
+	/**
+	 * Cached result of instrumentation of a single class.
+	 */
+	public static class Entry {
+		private final String className;
+		private final byte[] content;
+		private final ClassData classData;
+
+		Entry(String className, byte[] content, ClassData classData) {
+			this.className = className;
+			this.content = content;
+			this.classData = classData;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		/**
+		 * @return the instrumented class, or null if the class should not be instrumented
+		 */
+		public byte[] getContent() {
+			return content;
+		}
+
+		public ClassData getClassData() {
+			return classData;
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument.pass2;
+
+import net.sourceforge.cobertura.instrument.tp.ClassMap;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Collects code of a single method, splits it into basic blocks using control-flow analysis ({@link Analyzer})
+ * and registers lines of every block in {@link ClassMap#registerBasicBlock(List)}. When the method is
+ * complete, the code is passed to the next {@link MethodVisitor}.</p>
+ * <p/>
+ * <p>A new basic block starts at every destination of a jump, switch or exception handler and after every
+ * instruction that does not continue to the next one. Exceptions thrown inside a block don't split it,
+ * so when a line throws an exception, the previous lines of the block are reported as not executed.</p>
+ */
+public class BasicBlocksMethodNode extends MethodNode {
+	private static final Logger logger = LoggerFactory
+			.getLogger(BasicBlocksMethodNode.class);
+
+	private final ClassMap classMap;
+
+	private final MethodVisitor next;
+
+	/**
+	 * We keep our own label nodes, so {@link LabelNode#getLabel()} returns the labels seen by {@link ClassMap}.
+	 */
+	private final Map<Label, LabelNode> labelNodes = new HashMap<Label, LabelNode>();
+
+	public BasicBlocksMethodNode(MethodVisitor next, ClassMap classMap,
+			int access, String name, String desc, String signature,
+			String[] exceptions) {
+		super(Opcodes.ASM4, access, name, desc, signature, exceptions);
+		this.next = next;
+		this.classMap = classMap;
+	}
+
+	@Override
+	protected LabelNode getLabelNode(Label label) {
+		LabelNode labelNode = labelNodes.get(label);
+		if (labelNode == null) {
+			labelNode = new LabelNode(label);
+			labelNodes.put(label, labelNode);
+		}
+		return labelNode;
+	}
+
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		if (instructions.size() > 0) {
+			try {
+				registerBasicBlocks();
+			} catch (AnalyzerException e) {
+				logger.debug("Unable to find basic blocks of "
+						+ classMap.getClassName() + "." + name + desc
+						+ ". All lines will be measured.", e);
+			}
+		}
+		if (next != null) {
+			accept(next);
+		}
+	}
+
+	private void registerBasicBlocks() throws AnalyzerException {
+		final boolean[] blockStarts = new boolean[instructions.size() + 1];
+		Analyzer analyzer = new Analyzer(
+				new BasicInterpreter()) {
+			@Override
+			protected void newControlFlowEdge(int insn, int successor) {
+				if (successor != insn + 1) {
+					blockStarts[insn + 1] = true;
+					blockStarts[successor] = true;
+				}
+			}
+
+			@Override
+			protected boolean newControlFlowExceptionEdge(int insn,
+					int successor) {
+				blockStarts[successor] = true;
+				return true;
+			}
+		};
+		Frame[] frames = analyzer.analyze(classMap
+				.getClassName(), this);
+
+		List<Label> lineLabels = new LinkedList<Label>();
+		int i = 0;
+		for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn
+				.getNext(), i++) {
+			// unreachable code (without frame) is never part of a block
+			if (blockStarts[i] || frames[i] == null) {
+				classMap.registerBasicBlock(lineLabels);
+				lineLabels = new LinkedList<Label>();
+			}
+			if (frames[i] != null && insn instanceof LineNumberNode) {
+				lineLabels.add(((LineNumberNode) insn).start.getLabel());
+			}
+		}
+		classMap.registerBasicBlock(lineLabels);
+	}
+}
@@ -70,6 +70,12 @@ public class BuildClassMapClassVisitor
 	private final Set<String> ignoredMethods;
 	private final Set<String> ignoredClassAnnotations;
 
+	/**
+	 * If true, every method is split into basic blocks ({@link BasicBlocksMethodNode}), so lines that are always
+	 * executed together with the next line of the block don't need their own probes.
+	 */
+	private final boolean minimizeProbes;
+
 	/**
 	 * @param cv                 - a listener for code-instrumentation events
 	 * @param ignoreRegexes       - list of patters of method calls that should be ignored from line-coverage-measurement
@@ -81,9 +87,27 @@ public class BuildClassMapClassVisitor
 			Set<String> ignoreClassAnnotations,
 			Map<Integer, Map<Integer, Integer>> duplicatedLinesMap,
 			Set<String> ignoredMethods) {
+		this(cv, ignoreRegexes, ignoreClassAnnotations, duplicatedLinesMap,
+				ignoredMethods, false);
+	}
+
+	/**
+	 * @param cv                 - a listener for code-instrumentation events
+	 * @param ignoreRegexes       - list of patters of method calls that should be ignored from line-coverage-measurement
+	 * @param ignoreClassAnnotations - list of class annotations to exclude them from instrumentation at all
+	 * @param duplicatedLinesMap - map of found duplicates in the class. You should use {@link DetectDuplicatedCodeClassVisitor} to find the duplicated lines.
+	 * @param ignoredMethods     - methods (name and description) that should be ignored from coverage-measurement
+	 * @param minimizeProbes     - if true, lines are inferred from the other lines of the same basic block where possible
+	 */
+	public BuildClassMapClassVisitor(ClassVisitor cv,
+			Collection<Pattern> ignoreRegexes,
+			Set<String> ignoreClassAnnotations,
+			Map<Integer, Map<Integer, Integer>> duplicatedLinesMap,
+			Set<String> ignoredMethods, boolean minimizeProbes) {
 		super(cv, ignoreRegexes, duplicatedLinesMap);
 		this.ignoredMethods = ignoredMethods;
 		this.ignoredClassAnnotations = ignoreClassAnnotations;
+		this.minimizeProbes = minimizeProbes;
 	}
 
 	@Override
@@ -142,6 +166,10 @@ public class BuildClassMapClassVisitor
 		if (ignoredMethods.contains(name + desc)) {
 			return mv;
 		}
+		if (minimizeProbes) {
+			mv = new BasicBlocksMethodNode(mv, classMap, access, name, desc,
+					signature, exceptions);
+		}
 		FindTouchPointsMethodAdapter instrumenter = new FindTouchPointsMethodAdapter(
 				new HistoryMethodAdapter(mv, 4), classMap.getClassName(), name,
 				desc, eventIdGenerator, duplicatedLinesMap, lineIdGenerator);
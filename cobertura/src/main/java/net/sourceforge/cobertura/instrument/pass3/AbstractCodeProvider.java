@@ -48,10 +48,52 @@ public abstract class AbstractCodeProvider implements CodeProvider {
 	 */
 	public static final int FAKE_COUNTER_ID = 0;
 
+	/**
+	 * Version of the instrumented class file.
+	 */
+	private int classVersion = Opcodes.V1_5;
+
 	public AbstractCodeProvider() {
 		super();
 	}
 
+	public void setClassVersion(int classVersion) {
+		this.classVersion = classVersion;
+	}
+
+	/**
+	 * @return type descriptor of the {@link #COBERTURA_COUNTERS_FIELD_NAME} field
+	 */
+	protected abstract String getCountersFieldType();
+
+	public Type getCountersVariableType() {
+		return Type.getType(getCountersFieldType());
+	}
+
+	public void generateCodeThatLoadsCountersIntoVariable(
+			MethodVisitor nextMethodVisitor, int countersVariableIndex,
+			String className) {
+		nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, getCountersFieldType());
+		nextMethodVisitor.visitVarInsn(Opcodes.ASTORE, countersVariableIndex);
+	}
+
+	/**
+	 * Injects code that puts counters on the stack. They are taken from the variable given by countersVariableIndex,
+	 * or from the {@link #COBERTURA_COUNTERS_FIELD_NAME} field if the index is {@link #NO_COUNTERS_VARIABLE}.
+	 */
+	protected void generateCodeThatLoadsCounters(
+			MethodVisitor nextMethodVisitor, int countersVariableIndex,
+			String className) {
+		if (countersVariableIndex == NO_COUNTERS_VARIABLE) {
+			nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
+					COBERTURA_COUNTERS_FIELD_NAME, getCountersFieldType());
+		} else {
+			nextMethodVisitor.visitVarInsn(Opcodes.ALOAD,
+					countersVariableIndex);
+		}
+	}
+
 	public void generateCodeThatSetsJumpCounterIdVariable(
 			MethodVisitor nextMethodVisitor, int new_value,
 			int lastJumpIdVariableIndex) {
@@ -69,14 +111,14 @@ public abstract class AbstractCodeProvider implements CodeProvider {
 			MethodVisitor nextMethodVisitor,
 			Integer neededJumpCounterIdVariableValue,
 			Integer counterIdToIncrement, int lastJumpIdVariableIndex,
-			String className) {
+			int countersVariableIndex, String className) {
 
 		nextMethodVisitor.visitLdcInsn((int) neededJumpCounterIdVariableValue);
 		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
 		Label afterJump = new Label();
 		nextMethodVisitor.visitJumpInsn(Opcodes.IF_ICMPNE, afterJump);
 		generateCodeThatIncrementsCoberturaCounter(nextMethodVisitor,
-				counterIdToIncrement, className);
+				counterIdToIncrement, countersVariableIndex, className);
 		generateCodeThatZeroJumpCounterIdVariable(nextMethodVisitor,
 				lastJumpIdVariableIndex);
 		nextMethodVisitor.visitLabel(afterJump);
@@ -85,14 +127,33 @@ public abstract class AbstractCodeProvider implements CodeProvider {
 	/**
 	 * {@inheritDoc}
 	 * <p/>
-	 * The code injected by this implementation just registers the class using {@link TouchCollector#registerClass(Class)}. This way, during the
-	 * execution, touch collector knows that is responsible to ask the class after execution about a current status of the counters.
+	 * The code injected by this implementation just registers the class and its {@link #COBERTURA_COUNTERS_FIELD_NAME}
+	 * using {@link TouchCollector#registerClass(Class, Object)}. This way, during the execution, touch collector knows
+	 * that is responsible to read the current status of the counters, without calling the class by reflection.
+	 * <p/>
+	 * The class is loaded by a class constant. Class files older than 49 (Java 5) don't support class constants, so
+	 * they look the class up by <code>Class.forName</code>, that uses the class loader of the instrumented class.
 	 */
 	protected void generateRegisterClass(MethodVisitor mv, String className) {
-		mv.visitLdcInsn(className);
+		generateLoadClass(mv, className);
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, getCountersFieldType());
 		mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type
 				.getInternalName(TouchCollector.class), "registerClass",
-				"(Ljava/lang/String;)V");
+				"(Ljava/lang/Class;Ljava/lang/Object;)V");
+	}
+
+	/**
+	 * Generates code that pushes the instrumented class on the stack.
+	 */
+	protected void generateLoadClass(MethodVisitor mv, String className) {
+		if ((classVersion & 0xFFFF) >= Opcodes.V1_5) {
+			mv.visitLdcInsn(Type.getObjectType(className));
+		} else {
+			mv.visitLdcInsn(className.replace('/', '.'));
+			mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Class",
+					"forName", "(Ljava/lang/String;)Ljava/lang/Class;");
+		}
 	}
 
 	final String CLASSMAP_LISTENER_INTERNALNAME = Type
@@ -45,6 +45,10 @@ public class AtomicArrayCodeProvider extends AbstractCodeProvider
 	static final String COBERTURA_COUNTERS_FIELD_TYPE = Type.getType(
 			AtomicIntegerArray.class).toString();
 
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
+	}
+
 	public void generateCountersField(ClassVisitor cv) {
 		FieldVisitor fv = cv.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_PUBLIC
 				| Opcodes.ACC_FINAL | Opcodes.ACC_TRANSIENT,
@@ -73,11 +77,12 @@ public class AtomicArrayCodeProvider extends AbstractCodeProvider
 	}
 
 	public void generateCodeThatIncrementsCoberturaCounter(
-			MethodVisitor nextMethodVisitor, Integer counterId, String className) {
+			MethodVisitor nextMethodVisitor, Integer counterId,
+			int countersVariableIndex, String className) {
 		/*cobertura_counters.incrementAndGet(i);*/
 		/*cobertura_counters.*/
-		nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateCodeThatLoadsCounters(nextMethodVisitor,
+				countersVariableIndex, className);
 		/*index:*/
 		nextMethodVisitor.visitLdcInsn((int) counterId);
 		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type
@@ -88,11 +93,11 @@ public class AtomicArrayCodeProvider extends AbstractCodeProvider
 
 	public void generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
 			MethodVisitor nextMethodVisitor, int lastJumpIdVariableIndex,
-			String className) {
+			int countersVariableIndex, String className) {
 		/*cobertura_counters.incrementAndGet(value('lastJumpIdVariableIndex'));*/
 		/*cobertura_counters.*/
-		nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateCodeThatLoadsCounters(nextMethodVisitor,
+				countersVariableIndex, className);
 		/*index:*/
 		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
 		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type
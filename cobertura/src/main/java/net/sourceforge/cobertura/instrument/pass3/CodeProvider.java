@@ -28,6 +28,7 @@ package net.sourceforge.cobertura.instrument.pass3;
 import net.sourceforge.cobertura.instrument.tp.ClassMap;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
 
 /**
  * Universal API for all methods that are responsible for generating any JASM code that have
@@ -63,6 +64,12 @@ public interface CodeProvider {
 	 */
 	public static final String COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME = "__cobertura_get_and_reset_counters";
 
+	/**
+	 * Value of countersVariableIndex meaning that the method does not cache counters in a local variable, so the
+	 * injected code have to read them from the {@link #COBERTURA_COUNTERS_FIELD_NAME} field.
+	 */
+	public static final int NO_COUNTERS_VARIABLE = -1;
+
 	/**
 	 * Generates fields injected into  instrumented class  by cobertura.
 	 *
@@ -70,15 +77,46 @@ public interface CodeProvider {
 	 */
 	public abstract void generateCountersField(ClassVisitor cv);
 
+	/**
+	 * Informs the provider about the version of the instrumented class file, so only instructions
+	 * supported by that version are generated.
+	 *
+	 * @param classVersion - version of the class file, as passed to {@link ClassVisitor#visit}
+	 */
+	public void setClassVersion(int classVersion);
+
+	/**
+	 * Type of the local variable used to cache counters inside an instrumented method (see
+	 * {@link #generateCodeThatLoadsCountersIntoVariable(MethodVisitor, int, String)}).
+	 *
+	 * @return type of the variable or null if the injected code does not use such a variable
+	 */
+	public abstract Type getCountersVariableType();
+
+	/**
+	 * Injects code (at the start of a method) that reads the {@link #COBERTURA_COUNTERS_FIELD_NAME} field once and
+	 * stores it into a local variable, so the code injected into the rest of the method does not need to read the static
+	 * field again. This keeps the injected code short, so the instrumented methods are more likely to be inlined by JIT.
+	 *
+	 * @param nextMethodVisitor     - {@link MethodVisitor} that is listener of code-generation events
+	 * @param countersVariableIndex - index of the variable of {@link #getCountersVariableType()} type
+	 * @param className             - internal name (asm) of class being instrumented
+	 */
+	public abstract void generateCodeThatLoadsCountersIntoVariable(
+			MethodVisitor nextMethodVisitor, int countersVariableIndex,
+			String className);
+
 	/**
 	 * Injects code that increments counter given by parameter.
 	 *
-	 * @param nextMethodVisitor - {@link MethodVisitor} that is listener of code-generation events
-	 * @param counterId         -  counterId of counter that have to be incremented
-	 * @param className         - internal name (asm) of class being instrumented
+	 * @param nextMethodVisitor     - {@link MethodVisitor} that is listener of code-generation events
+	 * @param counterId             -  counterId of counter that have to be incremented
+	 * @param countersVariableIndex - index of the variable that caches counters or {@link #NO_COUNTERS_VARIABLE}
+	 * @param className             - internal name (asm) of class being instrumented
 	 */
 	public abstract void generateCodeThatIncrementsCoberturaCounter(
-			MethodVisitor nextMethodVisitor, Integer counterId, String className);
+			MethodVisitor nextMethodVisitor, Integer counterId,
+			int countersVariableIndex, String className);
 
 	/**
 	 * Injects code that increments counter given by internal variable.
@@ -88,11 +126,12 @@ public interface CodeProvider {
 	 *
 	 * @param nextMethodVisitor       - {@link MethodVisitor} that is listener of code-generation events
 	 * @param lastJumpIdVariableIndex - id of the variable used to store counterId that have to be incremented
+	 * @param countersVariableIndex   - index of the variable that caches counters or {@link #NO_COUNTERS_VARIABLE}
 	 * @param className               - internal name (asm) of class being instrumented
 	 */
 	public abstract void generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
 			MethodVisitor nextMethodVisitor, int lastJumpIdVariableIndex,
-			String className);
+			int countersVariableIndex, String className);
 
 	/**
 	 * Injects code that sets internal variable (identified by lastJumpIdVariableIndex) to given value.
@@ -129,7 +168,7 @@ public interface CodeProvider {
 			MethodVisitor nextMethodVisitor,
 			Integer neededJumpCounterIdVariableValue,
 			Integer counterIdToIncrement, int lastJumpIdVariableIndex,
-			String className);
+			int countersVariableIndex, String className);
 
 	/**
 	 * The version of cobertura prior to 1.10 used *.ser file to store information of lines, jumps, switches and other
@@ -64,11 +64,11 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 
 	public void generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
 			MethodVisitor nextMethodVisitor, int lastJumpIdVariableIndex,
-			String className) {
+			int countersVariableIndex, String className) {
 		/*cobertura_counters[value('lastJumpIdVariableIndex')]++;*/
 		/*cobertura_counters.*/
-		nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateCodeThatLoadsCounters(nextMethodVisitor,
+				countersVariableIndex, className);
 		/*index:*/
 		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
 		nextMethodVisitor.visitInsn(Opcodes.DUP2);
@@ -79,11 +79,12 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 	}
 
 	public void generateCodeThatIncrementsCoberturaCounter(
-			MethodVisitor nextMethodVisitor, Integer counterId, String className) {
+			MethodVisitor nextMethodVisitor, Integer counterId,
+			int countersVariableIndex, String className) {
 		/*cobertura_counters[value('lastJumpIdVariableIndex')]++;*/
 		/*cobertura_counters.*/
-		nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateCodeThatLoadsCounters(nextMethodVisitor,
+				countersVariableIndex, className);
 		/*index:*/
 		nextMethodVisitor.visitLdcInsn((int) counterId);
 		nextMethodVisitor.visitInsn(Opcodes.DUP2);
@@ -93,6 +94,10 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 		nextMethodVisitor.visitInsn(Opcodes.IASTORE);
 	}
 
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
+	}
+
 	public void generateCountersField(ClassVisitor cv) {
 		/*final tooks 270ms, no-modifier 310ms, volatile 500ms*/
 		FieldVisitor fv = cv.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_PUBLIC
@@ -124,6 +129,24 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 		mv.visitLabel(l1);
 	}
 
+	/**
+	 * <pre>
+	 * int[] __cobertura_get_and_reset_counters() {
+	 * int[] counters = __cobertura_counters;
+	 * int[] res = new int[counters.length];
+	 * for(int i=0; i<counters.length; i++){
+	 * int value = counters[i];
+	 * if (value != 0) {
+	 * res[i] = value;
+	 * counters[i] = 0;
+	 * }
+	 * }
+	 * return res;
+	 * }
+	 * </pre>
+	 * The counters are reset in place (and not replaced by a new array), because instrumented methods cache
+	 * the array in a local variable (see {@link #generateCodeThatLoadsCountersIntoVariable(MethodVisitor, int, String)}).
+	 */
 	public void generateCoberturaGetAndResetCountersMethod(ClassVisitor cv,
 			String className) {
 		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
@@ -135,15 +158,39 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
 				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
 		mv.visitVarInsn(Opcodes.ASTORE, 0);
-		/*cobertura_counters.*/
-		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
 		mv.visitInsn(Opcodes.ARRAYLENGTH);
-
 		mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_INT);
-		mv.visitFieldInsn(Opcodes.PUTSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitVarInsn(Opcodes.ASTORE, 1);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, 2);
+		Label condition = new Label();
+		mv.visitJumpInsn(Opcodes.GOTO, condition);
+		Label loop = new Label();
+		mv.visitLabel(loop);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitInsn(Opcodes.IALOAD);
+		mv.visitVarInsn(Opcodes.ISTORE, 3);
+		mv.visitVarInsn(Opcodes.ILOAD, 3);
+		Label next = new Label();
+		mv.visitJumpInsn(Opcodes.IFEQ, next);
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitVarInsn(Opcodes.ILOAD, 3);
+		mv.visitInsn(Opcodes.IASTORE);
 		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitInsn(Opcodes.IASTORE);
+		mv.visitLabel(next);
+		mv.visitIincInsn(2, 1);
+		mv.visitLabel(condition);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitInsn(Opcodes.ARRAYLENGTH);
+		mv.visitJumpInsn(Opcodes.IF_ICMPLT, loop);
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
 		mv.visitInsn(Opcodes.ARETURN);
 		mv.visitMaxs(0, 0);//will be recalculated by writer
 		mv.visitEnd();
@@ -0,0 +1,212 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument.pass3;
+
+import org.objectweb.asm.*;
+
+/**
+ * <p>The {@link CodeProvider} uses boolean[] to store only the fact that a counter was hit.</p>
+ * <p/>
+ * <p>Every probe is a call to a small generated method ({@link #COBERTURA_HIT_METHOD_NAME}) that reads
+ * the slot first and stores into it only if it is still unset:
+ * <pre>
+ * static void __cobertura_hit(int counterId) {
+ * if (!__cobertura_counters[counterId]) {
+ * __cobertura_counters[counterId] = true;
+ * }
+ * }
+ * </pre>
+ * Once the code is warmed up hot loops only read the array, so they never dirty a cache line that is
+ * shared with other threads. The call site costs a few bytes of bytecode, so instrumented methods grow
+ * less than with the inlined probes of {@link FastArrayCodeProvider}.</p>
+ * <p/>
+ * <p>{@link #COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME} reports every set slot as a single hit.</p>
+ */
+public class HitsOnlyCodeProvider extends AbstractCodeProvider
+		implements
+			CodeProvider {
+
+	/**
+	 * Type of the generated field, that is used to store counters
+	 */
+	static final String COBERTURA_COUNTERS_FIELD_TYPE = "[Z";
+
+	/**
+	 * Name of the generated method that marks a counter as hit.
+	 */
+	public static final String COBERTURA_HIT_METHOD_NAME = "__cobertura_hit";
+
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
+	}
+
+	/**
+	 * The probes only call {@link #COBERTURA_HIT_METHOD_NAME}, so there is no need to cache counters in a variable.
+	 */
+	@Override
+	public Type getCountersVariableType() {
+		return null;
+	}
+
+	@Override
+	public void generateCodeThatLoadsCountersIntoVariable(
+			MethodVisitor nextMethodVisitor, int countersVariableIndex,
+			String className) {
+	}
+
+	public void generateCountersField(ClassVisitor cv) {
+		FieldVisitor fv = cv.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_FINAL | Opcodes.ACC_TRANSIENT,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE,
+				null, null);
+		fv.visitEnd();
+	}
+
+	public void generateCINITmethod(MethodVisitor mv, String className,
+			int counters_cnt) {
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		Label l1 = new Label();
+		mv.visitJumpInsn(Opcodes.IFNONNULL, l1);
+		mv.visitLdcInsn(counters_cnt);
+		mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_BOOLEAN);
+		mv.visitFieldInsn(Opcodes.PUTSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateRegisterClass(mv, className);
+		mv.visitLabel(l1);
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounter(
+			MethodVisitor nextMethodVisitor, Integer counterId,
+			int countersVariableIndex, String className) {
+		/*__cobertura_hit(i);*/
+		nextMethodVisitor.visitLdcInsn((int) counterId);
+		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKESTATIC, className,
+				COBERTURA_HIT_METHOD_NAME, "(I)V");
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
+			MethodVisitor nextMethodVisitor, int lastJumpIdVariableIndex,
+			int countersVariableIndex, String className) {
+		/*__cobertura_hit(value('lastJumpIdVariableIndex'));*/
+		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
+		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKESTATIC, className,
+				COBERTURA_HIT_METHOD_NAME, "(I)V");
+	}
+
+	/**
+	 * Generates the init method and the {@link #COBERTURA_HIT_METHOD_NAME} method used by the probes.
+	 */
+	@Override
+	public void generateCoberturaInitMethod(ClassVisitor cv, String className,
+			int countersCnt) {
+		super.generateCoberturaInitMethod(cv, className, countersCnt);
+		generateCoberturaHitMethod(cv, className);
+	}
+
+	private void generateCoberturaHitMethod(ClassVisitor cv, String className) {
+		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, COBERTURA_HIT_METHOD_NAME, "(I)V", null,
+				null);
+		mv.visitCode();
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.BALOAD);
+		Label alreadyHit = new Label();
+		mv.visitJumpInsn(Opcodes.IFNE, alreadyHit);
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.ICONST_1);
+		mv.visitInsn(Opcodes.BASTORE);
+		mv.visitLabel(alreadyHit);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);//will be recalculated by writer
+		mv.visitEnd();
+	}
+
+	/**
+	 * <pre>
+	 * int[] __cobertura_get_and_reset_counters() {
+	 * int[] res = new int[counters.length];
+	 * for(int i=0; i<counters.length; i++){
+	 * if (counters[i]) {
+	 * res[i] = 1;
+	 * counters[i] = false;
+	 * }
+	 * }
+	 * return res;
+	 * }
+	 * </pre>
+	 * Only the slots that were set are written, so a harvest does not touch the cache lines of code that was not executed.
+	 */
+	public void generateCoberturaGetAndResetCountersMethod(ClassVisitor cv,
+			String className) {
+		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC,
+				COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME, "()[I", null,
+				null);
+
+		mv.visitCode();
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitVarInsn(Opcodes.ASTORE, 0);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitInsn(Opcodes.ARRAYLENGTH);
+		mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_INT);
+		mv.visitVarInsn(Opcodes.ASTORE, 1);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, 2);
+		Label condition = new Label();
+		mv.visitJumpInsn(Opcodes.GOTO, condition);
+		Label loop = new Label();
+		mv.visitLabel(loop);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitInsn(Opcodes.BALOAD);
+		Label next = new Label();
+		mv.visitJumpInsn(Opcodes.IFEQ, next);
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitInsn(Opcodes.ICONST_1);
+		mv.visitInsn(Opcodes.IASTORE);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitInsn(Opcodes.BASTORE);
+		mv.visitLabel(next);
+		mv.visitIincInsn(2, 1);
+		mv.visitLabel(condition);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitInsn(Opcodes.ARRAYLENGTH);
+		mv.visitJumpInsn(Opcodes.IF_ICMPLT, loop);
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);//will be recalculated by writer
+		mv.visitEnd();
+	}
+
+}
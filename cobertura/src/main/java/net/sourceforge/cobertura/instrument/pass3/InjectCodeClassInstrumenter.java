@@ -66,7 +66,8 @@ public class InjectCodeClassInstrumenter
 	 * {@link CodeProvider} used to generate pieces of asm code that is injected into instrumented class.
 	 * <p/>
 	 * We are strictly recommending here using {@link FastArrayCodeProvider} instead of {@link AtomicArrayCodeProvider} because
-	 * of performance.
+	 * of performance. If precise counts are needed in heavily multithreaded code, {@link StripedArrayCodeProvider} scales
+	 * much better than {@link AtomicArrayCodeProvider}.
 	 */
 	private final CodeProvider codeProvider;
 
@@ -91,12 +92,29 @@ public class InjectCodeClassInstrumenter
 			ClassMap classMap,
 			Map<Integer, Map<Integer, Integer>> duplicatedLinesMap,
 			Set<String> ignoredMethods) {
+		this(cv, ignoreRegexes, threadsafeRigorous
+				? new AtomicArrayCodeProvider()
+				: new FastArrayCodeProvider(), classMap, duplicatedLinesMap,
+				ignoredMethods);
+	}
+
+	/**
+	 * @param cv                 - a listener for code-instrumentation events
+	 * @param ignoreRegexes       - list of patters of method calls that should be ignored from line-coverage-measurement
+	 * @param codeProvider       - provider of the code that stores the counters (see {@link #codeProvider})
+	 * @param classMap           - map of all interesting places in the class. You should acquire it by {@link BuildClassMapClassVisitor} and remember to
+	 *                           prepare it using {@link ClassMap#assignCounterIds()} before using it with {@link InjectCodeClassInstrumenter}
+	 * @param duplicatedLinesMap - map of found duplicates in the class. You should use {@link DetectDuplicatedCodeClassVisitor} to find the duplicated lines.
+	 */
+	public InjectCodeClassInstrumenter(ClassVisitor cv,
+			Collection<Pattern> ignoreRegexes, CodeProvider codeProvider,
+			ClassMap classMap,
+			Map<Integer, Map<Integer, Integer>> duplicatedLinesMap,
+			Set<String> ignoredMethods) {
 		super(cv, ignoreRegexes, duplicatedLinesMap);
 		this.classMap = classMap;
 		this.ignoredMethods = ignoredMethods;
-		codeProvider = threadsafeRigorous
-				? new AtomicArrayCodeProvider()
-				: new FastArrayCodeProvider();
+		this.codeProvider = codeProvider;
 		touchPointListener = new InjectCodeTouchPointListener(classMap,
 				codeProvider);
 	}
@@ -109,6 +127,7 @@ public class InjectCodeClassInstrumenter
 			String supertype, String[] interfaces) {
 
 		super.visit(version, access, name, signature, supertype, interfaces);
+		codeProvider.setClassVersion(version);
 		codeProvider.generateCountersField(cv);
 	}
 
@@ -118,6 +137,8 @@ public class InjectCodeClassInstrumenter
 	 * <p>This method also uses {@link ShiftVariableMethodAdapter} that is used firstly to calculate the index of internal
 	 * variable injected to store information about last 'processed' jump or switch in runtime ( {@link ShiftVariableMethodAdapter#calculateFirstStackVariable(int, String)} ),
 	 * and then is used to inject code responsible for keeping the variable and shifting (+1) all previously seen variables.
+	 * Another variable is reserved the same way to cache counters for the whole method
+	 * ({@link CodeProvider#generateCodeThatLoadsCountersIntoVariable(MethodVisitor, int, String)}).
 	 */
 	@Override
 	public MethodVisitor visitMethod(int access, String name, String desc,
@@ -143,6 +164,10 @@ public class InjectCodeClassInstrumenter
 				instrumenter);
 		int variable = sorter.newLocal(Type.INT_TYPE);
 		touchPointListener.setLastJumpIdVariableIndex(variable);
+		Type countersVariableType = codeProvider.getCountersVariableType();
+		touchPointListener.setCountersVariableIndex(countersVariableType != null
+				? sorter.newLocal(countersVariableType)
+				: CodeProvider.NO_COUNTERS_VARIABLE);
 		return sorter;
 		//return new ShiftVariableMethodAdapter(instrumenter, access, desc, 1);
 	}
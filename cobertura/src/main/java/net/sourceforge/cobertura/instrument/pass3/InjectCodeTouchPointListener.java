@@ -56,6 +56,8 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 
 	private int lastJumpIdVariableIndex;
 
+	private int countersVariableIndex = CodeProvider.NO_COUNTERS_VARIABLE;
+
 	public InjectCodeTouchPointListener(ClassMap classMap,
 			CodeProvider codeProvider) {
 		this.classMap = classMap;
@@ -86,8 +88,8 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 		Integer jumpFalseCounterId = classMap.getCounterIdForJumpFalse(eventId);
 		if (jumpFalseCounterId != null) {
 			codeProvider.generateCodeThatIncrementsCoberturaCounter(
-					nextMethodVisitor, jumpFalseCounterId, classMap
-							.getClassName());
+					nextMethodVisitor, jumpFalseCounterId,
+					countersVariableIndex, classMap.getClassName());
 			codeProvider.generateCodeThatZeroJumpCounterIdVariable(
 					nextMethodVisitor, lastJumpIdVariableIndex);
 		}
@@ -120,8 +122,8 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 		if (classMap.isJumpDestinationLabel(eventId)) {
 			codeProvider
 					.generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
-							mv, lastJumpIdVariableIndex, classMap
-									.getClassName());
+							mv, lastJumpIdVariableIndex,
+							countersVariableIndex, classMap.getClassName());
 		}
 
 		Map<Integer, Integer> branchTouchPoints = classMap
@@ -133,8 +135,8 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 				codeProvider
 						.generateCodeThatIncrementsCoberturaCounterIfVariableEqualsAndCleanVariable(
 								mv, entry.getKey(), entry.getValue(),
-								lastJumpIdVariableIndex, classMap
-										.getClassName());
+								lastJumpIdVariableIndex, countersVariableIndex,
+								classMap.getClassName());
 			}
 		}
 
@@ -151,18 +153,26 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 			MethodVisitor nextMethodVisitor, String methodName,
 			String methodSignature) {
 		Integer lineCounterId = classMap.getCounterIdForLineEventId(eventId);
-		if (lineCounterId != null) {
+		// hits of inferred lines are counted by the probe of the line they are inferred from
+		if (lineCounterId != null && !classMap.isInferredLineEventId(eventId)) {
 			codeProvider.generateCodeThatIncrementsCoberturaCounter(
-					nextMethodVisitor, lineCounterId, classMap.getClassName());
+					nextMethodVisitor, lineCounterId, countersVariableIndex,
+					classMap.getClassName());
 		}
 	}
 
 	/**
-	 * At the start of every method we initiates the 'internal variable' with zero.
+	 * At the start of every method we initiates the 'internal variable' with zero and
+	 * we cache the counters in their variable (if there is one).
 	 */
 	public void afterMethodStart(MethodVisitor nextMethodVisitor) {
 		codeProvider.generateCodeThatZeroJumpCounterIdVariable(
 				nextMethodVisitor, lastJumpIdVariableIndex);
+		if (countersVariableIndex != CodeProvider.NO_COUNTERS_VARIABLE) {
+			codeProvider.generateCodeThatLoadsCountersIntoVariable(
+					nextMethodVisitor, countersVariableIndex, classMap
+							.getClassName());
+		}
 	}
 
 	// ------------------- ignored events -------------------------------	
@@ -183,4 +193,11 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 		this.lastJumpIdVariableIndex = lastJumpIdVariableIndex;
 	}
 
+	/**
+	 * Index of the variable that caches counters in the current method, or {@link CodeProvider#NO_COUNTERS_VARIABLE}.
+	 */
+	public void setCountersVariableIndex(int countersVariableIndex) {
+		this.countersVariableIndex = countersVariableIndex;
+	}
+
 }
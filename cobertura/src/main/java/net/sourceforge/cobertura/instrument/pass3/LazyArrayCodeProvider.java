@@ -0,0 +1,151 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument.pass3;
+
+import net.sourceforge.cobertura.coveragedata.TouchCollector;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * <p>The {@link CodeProvider} uses int[] to store counters, like {@link FastArrayCodeProvider}, but allocates
+ * them only when the class executes instrumented code for the first time.</p>
+ * <p/>
+ * <p>The static initializer doesn't call {@link #COBERTURA_INIT_METHOD_NAME}. Instead every instrumented method
+ * checks the counters when it caches them in its local variable:
+ * <pre>
+ * int[] counters = __cobertura_counters;
+ * if (counters == null) {
+ * __cobertura_init();
+ * counters = __cobertura_counters;
+ * }
+ * </pre>
+ * {@link #COBERTURA_INIT_METHOD_NAME} allocates the counters with {@link TouchCollector#allocateCounters(Class, int)},
+ * that registers the class and returns the same counters to all the threads that race to allocate them. The method is
+ * not synchronized, because the application may use the class as a monitor, and locking it on the first execution
+ * could deadlock with the application. Classes that are loaded (or even initialized without running any instrumented line) but never
+ * executed don't take any heap for counters, and they are not registered, so harvesting the coverage data
+ * doesn't visit them. Their lines are reported from the data file written by the instrumentation.</p>
+ * <p/>
+ * <p>The counters field is not final, so it can be set after the static initializer. The counters are never
+ * replaced once allocated, so a method that has read them once keeps using the same array.</p>
+ */
+public class LazyArrayCodeProvider extends FastArrayCodeProvider
+		implements
+			CodeProvider {
+
+	public void generateCountersField(ClassVisitor cv) {
+		FieldVisitor fv = cv.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_TRANSIENT, COBERTURA_COUNTERS_FIELD_NAME,
+				COBERTURA_COUNTERS_FIELD_TYPE, null, null);
+		fv.visitEnd();
+	}
+
+	@Override
+	public void generateCodeThatLoadsCountersIntoVariable(
+			MethodVisitor nextMethodVisitor, int countersVariableIndex,
+			String className) {
+		generateCodeThatLoadsOrAllocatesCounters(nextMethodVisitor, className);
+		nextMethodVisitor.visitVarInsn(Opcodes.ASTORE, countersVariableIndex);
+	}
+
+	@Override
+	protected void generateCodeThatLoadsCounters(
+			MethodVisitor nextMethodVisitor, int countersVariableIndex,
+			String className) {
+		if (countersVariableIndex == NO_COUNTERS_VARIABLE) {
+			generateCodeThatLoadsOrAllocatesCounters(nextMethodVisitor,
+					className);
+		} else {
+			super.generateCodeThatLoadsCounters(nextMethodVisitor,
+					countersVariableIndex, className);
+		}
+	}
+
+	/**
+	 * Puts the counters on the stack, calling {@link #COBERTURA_INIT_METHOD_NAME} first if they are not allocated yet.
+	 */
+	private void generateCodeThatLoadsOrAllocatesCounters(MethodVisitor mv,
+			String className) {
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitInsn(Opcodes.DUP);
+		Label allocated = new Label();
+		mv.visitJumpInsn(Opcodes.IFNONNULL, allocated);
+		mv.visitInsn(Opcodes.POP);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, className,
+				COBERTURA_INIT_METHOD_NAME, "()V");
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitLabel(allocated);
+	}
+
+	/**
+	 * Generates the {@link #COBERTURA_INIT_METHOD_NAME} method, that allocates the counters and registers the class
+	 * if it hasn't been done yet:
+	 * <pre>
+	 * static void __cobertura_init() {
+	 * if (__cobertura_counters == null) {
+	 * __cobertura_counters = TouchCollector.allocateCounters(Foo.class, counters_cnt);
+	 * }
+	 * }
+	 * </pre>
+	 */
+	@Override
+	public void generateCoberturaInitMethod(ClassVisitor cv, String className,
+			int countersCnt) {
+		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, COBERTURA_INIT_METHOD_NAME, "()V", null,
+				null);
+		mv.visitCode();
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		Label allocated = new Label();
+		mv.visitJumpInsn(Opcodes.IFNONNULL, allocated);
+		generateLoadClass(mv, className);
+		mv.visitLdcInsn(countersCnt);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type
+				.getInternalName(TouchCollector.class), "allocateCounters",
+				"(Ljava/lang/Class;I)" + COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitFieldInsn(Opcodes.PUTSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitLabel(allocated);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0); //will be recalculated by writer
+		mv.visitEnd();
+	}
+
+	/**
+	 * The counters are allocated by the instrumented methods, so static methods and the static initializer don't
+	 * call {@link #COBERTURA_INIT_METHOD_NAME}.
+	 */
+	@Override
+	public void generateCallCoberturaInitMethod(MethodVisitor mv,
+			String className) {
+		mv.visitCode(); // Since we are using the ASM Check Adapter, we need to visit the code before visiting any instructions.
+	}
+}
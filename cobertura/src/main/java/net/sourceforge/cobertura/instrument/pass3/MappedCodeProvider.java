@@ -0,0 +1,132 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument.pass3;
+
+import net.sourceforge.cobertura.coveragedata.MappedCounters;
+import org.objectweb.asm.*;
+
+/**
+ * <p>The {@link CodeProvider} uses {@link MappedCounters} to store counters.</p>
+ * <p/>
+ * <p>The counters of every class are allocated in the memory mapped counters file of the JVM, see
+ * {@link net.sourceforge.cobertura.coveragedata.CountersFile}. The hits are written into the file by the probes
+ * themselves, so they are not lost when the JVM is killed, and there is nothing to save when the JVM exits.</p>
+ * <p/>
+ * <p>The JVM itself doesn't report the hits of these classes. The counters files named after the data file are
+ * folded into it by the report, check and merge commands; other counters files have to be merged into the data
+ * file with <code>cobertura-merge</code>.</p>
+ */
+public class MappedCodeProvider extends AbstractCodeProvider
+		implements
+			CodeProvider {
+	/**
+	 * Type of the generated field, that is used to store counters
+	 */
+	static final String COBERTURA_COUNTERS_FIELD_TYPE = Type.getType(
+			MappedCounters.class).toString();
+
+	static final String MAPPED_COUNTERS_INTERNALNAME = Type
+			.getInternalName(MappedCounters.class);
+
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
+	}
+
+	public void generateCountersField(ClassVisitor cv) {
+		FieldVisitor fv = cv.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_FINAL | Opcodes.ACC_TRANSIENT,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE,
+				null, null);
+		fv.visitEnd();
+	}
+
+	public void generateCINITmethod(MethodVisitor mv, String className,
+			int counters_cnt) {
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		Label l1 = new Label();
+		mv.visitJumpInsn(Opcodes.IFNONNULL, l1);
+
+		/*MappedCounters.create(Class, counters_cnt)*/
+		generateLoadClass(mv, className);
+		mv.visitLdcInsn(counters_cnt);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, MAPPED_COUNTERS_INTERNALNAME,
+				"create", "(Ljava/lang/Class;I)" + COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitFieldInsn(Opcodes.PUTSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateRegisterClass(mv, className);
+		mv.visitLabel(l1);
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounter(
+			MethodVisitor nextMethodVisitor, Integer counterId,
+			int countersVariableIndex, String className) {
+		/*cobertura_counters.increment(i);*/
+		/*cobertura_counters.*/
+		generateCodeThatLoadsCounters(nextMethodVisitor,
+				countersVariableIndex, className);
+		/*index:*/
+		nextMethodVisitor.visitLdcInsn((int) counterId);
+		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL,
+				MAPPED_COUNTERS_INTERNALNAME, "increment", "(I)V");
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
+			MethodVisitor nextMethodVisitor, int lastJumpIdVariableIndex,
+			int countersVariableIndex, String className) {
+		/*cobertura_counters.increment(value('lastJumpIdVariableIndex'));*/
+		/*cobertura_counters.*/
+		generateCodeThatLoadsCounters(nextMethodVisitor,
+				countersVariableIndex, className);
+		/*index:*/
+		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
+		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL,
+				MAPPED_COUNTERS_INTERNALNAME, "increment", "(I)V");
+	}
+
+	/**
+	 * <pre>
+	 * int[] __cobertura_get_and_reset_counters() {
+	 * return counters.getAndReset();
+	 * }
+	 * </pre>
+	 */
+	public void generateCoberturaGetAndResetCountersMethod(ClassVisitor cv,
+			String className) {
+		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC,
+				COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME, "()[I", null,
+				null);
+
+		mv.visitCode();
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL,
+				MAPPED_COUNTERS_INTERNALNAME, "getAndReset", "()[I");
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);//will be recalculated by writer
+		mv.visitEnd();
+	}
+
+}
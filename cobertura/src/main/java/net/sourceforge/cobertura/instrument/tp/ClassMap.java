@@ -87,6 +87,17 @@ public class ClassMap {
 	private final Map<Label, Label> labelDuplicates2orginMap = new HashMap<Label, Label>();
 	private final Map<Label, Set<Label>> labelDuplicates2duplicateMap = new HashMap<Label, Set<Label>>();
 
+	/**
+	 * Maps label of every LINENUMBER directive into the eventId of the line touch-point (also for duplicated lines).
+	 */
+	private final Map<Label, Integer> lineLabel2eventId = new HashMap<Label, Integer>();
+
+	/**
+	 * For every basic block found by {@link BuildClassMapClassVisitor} (when minimizing probes) it's a list of eventIds
+	 * of lines that starts in the block, in order of occurrence.
+	 */
+	private final List<List<Integer>> basicBlocksLineEventIds = new LinkedList<List<Integer>>();
+
 	private String className;
 
 	private int maxCounterId = 0;
@@ -156,6 +167,7 @@ public class ClassMap {
 			String methodName, String methodSignature) {
 		logger.debug(className + ":" + currentLine + ": Registering line ("
 				+ eventId + ") " + label);
+		lineLabel2eventId.put(label, eventId);
 		if (alreadyRegisteredEvents.add(eventId)) {
 			if (!blockedLines.contains(currentLine)) {
 				LineTouchPointDescriptor line = new LineTouchPointDescriptor(
@@ -200,6 +212,27 @@ public class ClassMap {
 		}
 	}
 
+	/**
+	 * Registers a basic block of a method (code without any jump into or out of it, except for exceptions).
+	 * <p/>
+	 * <p>If the last line in the block was executed, all previous lines of the block had to be executed the same number of times,
+	 * so they don't need their own counters. See {@link #assignCounterIds()}.</p>
+	 *
+	 * @param lineLabels - labels of LINENUMBER directives found in the block, in order of occurrence.
+	 */
+	public void registerBasicBlock(List<Label> lineLabels) {
+		List<Integer> eventIds = new ArrayList<Integer>(lineLabels.size());
+		for (Label label : lineLabels) {
+			Integer eventId = lineLabel2eventId.get(label);
+			if (eventId != null) {
+				eventIds.add(eventId);
+			}
+		}
+		if (!eventIds.isEmpty()) {
+			basicBlocksLineEventIds.add(eventIds);
+		}
+	}
+
 	//======================= data retrieval =====================================================	
 
 	public Integer getCounterIdForJumpTrue(int eventId) {
@@ -270,6 +303,17 @@ public class ClassMap {
 		return null;
 	}
 
+	/**
+	 * @return true if the hits of the line are not measured by its own probe, but inferred from other line of the same basic block.
+	 */
+	public boolean isInferredLineEventId(int eventId) {
+		if (eventId2touchPointDescriptor.get(eventId) instanceof LineTouchPointDescriptor) {
+			return ((LineTouchPointDescriptor) eventId2touchPointDescriptor
+					.get(eventId)).isInferred();
+		}
+		return false;
+	}
+
 	/**
 	 * Returns map:   switchCounterId --> counterId
 	 *
@@ -310,8 +354,12 @@ public class ClassMap {
 	 * <p/>
 	 * <p>This class assign hit-counter ids to each touch-point and upgrades maxCounterId to
 	 * reflect the greatest assigned Id.
+	 * <p/>
+	 * <p>Lines that can be inferred from other lines (see {@link #registerBasicBlock(List)}) share the hit-counter
+	 * of the line they are inferred from.</p>
 	 */
 	public void assignCounterIds() {
+		inferLinesFromBasicBlocks();
 		AtomicInteger idGenerator = new AtomicInteger(0);
 		for (List<TouchPointDescriptor> tpd : line2touchPoints.values()) {
 			for (TouchPointDescriptor t : tpd) {
@@ -321,6 +369,52 @@ public class ClassMap {
 		maxCounterId = idGenerator.get();
 	}
 
+	/**
+	 * Every line of a basic block, except the last one, is inferred from the last line of the block.
+	 * <p/>
+	 * <p>The same line (eventId) can occur in more blocks (duplicated code of finally blocks). Such a line
+	 * is inferred only if all its occurrences are inferred from the same line, that is itself measured in all
+	 * its occurrences.</p>
+	 */
+	private void inferLinesFromBasicBlocks() {
+		Map<Integer, Set<Integer>> sources = new HashMap<Integer, Set<Integer>>();
+		for (List<Integer> block : basicBlocksLineEventIds) {
+			List<Integer> lines = new ArrayList<Integer>(block.size());
+			for (Integer eventId : block) {
+				// lines could have been ignored after registration of the block
+				if (eventId2touchPointDescriptor.get(eventId) instanceof LineTouchPointDescriptor) {
+					lines.add(eventId);
+				}
+			}
+			if (lines.isEmpty()) {
+				continue;
+			}
+			Integer last = lines.get(lines.size() - 1);
+			for (Integer eventId : lines) {
+				Set<Integer> s = sources.get(eventId);
+				if (s == null) {
+					s = new HashSet<Integer>();
+					sources.put(eventId, s);
+				}
+				s.add(last);
+			}
+		}
+		for (Map.Entry<Integer, Set<Integer>> entry : sources.entrySet()) {
+			if (entry.getValue().size() != 1) {
+				continue;
+			}
+			Integer source = entry.getValue().iterator().next();
+			if (!source.equals(entry.getKey())
+					&& Collections.singleton(source)
+							.equals(sources.get(source))) {
+				((LineTouchPointDescriptor) eventId2touchPointDescriptor
+						.get(entry.getKey()))
+						.setInferredFrom((LineTouchPointDescriptor) eventId2touchPointDescriptor
+								.get(source));
+			}
+		}
+	}
+
 	public int getMaxCounterId() {
 		return maxCounterId;
 	}
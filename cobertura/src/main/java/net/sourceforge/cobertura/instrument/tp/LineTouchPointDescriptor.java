@@ -36,6 +36,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <p/>
  * <p>We also storing a {@link #methodName} and a {@link #methodSignature} (consider to move this fields into {@link TouchPointDescriptor}).
  * Those fields are needed to properly create instance of {@link LineData}. </p>
+ * <p/>
+ * <p>A line can be also inferred from other line ({@link #inferredFrom}). Such a line is not measured
+ * by its own counter, but shares the counter of the other line.</p>
  *
  * @author piotr.tabor@gmail.com
  */
@@ -52,6 +55,11 @@ public class LineTouchPointDescriptor extends TouchPointDescriptor {
 	 */
 	private String methodSignature;
 
+	/**
+	 * Line that is always executed the same number of times as this line, or null if the line is measured.
+	 */
+	private LineTouchPointDescriptor inferredFrom;
+
 	public LineTouchPointDescriptor(int eventId, int lineNumber,
 			String methodName, String methodSignature) {
 		super(eventId, lineNumber);
@@ -61,12 +69,27 @@ public class LineTouchPointDescriptor extends TouchPointDescriptor {
 
 	@Override
 	public int assignCounters(AtomicInteger idGenerator) {
+		if (inferredFrom != null) {
+			return 0;
+		}
 		counterId = idGenerator.incrementAndGet();
 		return 1;
 	}
 
 	public Integer getCounterId() {
-		return counterId;
+		return inferredFrom != null ? inferredFrom.getCounterId() : counterId;
+	}
+
+	public boolean isInferred() {
+		return inferredFrom != null;
+	}
+
+	public LineTouchPointDescriptor getInferredFrom() {
+		return inferredFrom;
+	}
+
+	public void setInferredFrom(LineTouchPointDescriptor inferredFrom) {
+		this.inferredFrom = inferredFrom;
 	}
 
 	public String getMethodName() {
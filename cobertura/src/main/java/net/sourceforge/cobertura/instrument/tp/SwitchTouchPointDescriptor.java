@@ -85,7 +85,7 @@ public class SwitchTouchPointDescriptor extends TouchPointDescriptor {
 	@Override
 	public int assignCounters(AtomicInteger idGenerator) {
 		counterId = idGenerator.incrementAndGet();
-		label2counterId = new HashMap<Label, Integer>();
+		label2counterId = new LinkedHashMap<Label, Integer>();
 		int idp = idGenerator.incrementAndGet();
 		label2counterId.put(defaultDestinationLabel, idp);
 		int i = 0;
@@ -0,0 +1,100 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.merge;
+
+import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.util.CommandLineBuilder;
+import net.sourceforge.cobertura.util.Header;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Rewrites data files in the binary format. Data files written by Java serialization (by older versions) are
+ * still read, but loading them is much slower.
+ * <p/>
+ * Usage: <code>ConvertMain [--basedir dir] file...</code>, every file is converted in place: the converted data is
+ * written into a temporary file next to it, that replaces the file only once it is complete.
+ */
+public class ConvertMain {
+
+	public static int convert(String[] args) {
+		Header.print(System.out);
+
+		try {
+			args = CommandLineBuilder.preprocessCommandLineArguments(args);
+		} catch (Exception ex) {
+			System.err.println("Error: Cannot process arguments: "
+					+ ex.getMessage());
+			return 1;
+		}
+
+		String baseDir = null;
+		int returnValue = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--basedir")) {
+				baseDir = args[++i];
+				continue;
+			}
+			File dataFile = baseDir != null
+					? new File(baseDir, args[i])
+					: new File(args[i]);
+			ProjectData projectData = CoverageDataFileHandler
+					.loadCoverageData(dataFile);
+			if (projectData == null) {
+				System.err.println("Error: Cannot read data file "
+						+ dataFile.getAbsolutePath());
+				returnValue = 1;
+				continue;
+			}
+			if (!save(projectData, dataFile)) {
+				returnValue = 1;
+			}
+		}
+		return returnValue;
+	}
+
+	/**
+	 * @return false if the data file has not been replaced, then it is left as it was
+	 */
+	private static boolean save(ProjectData projectData, File dataFile) {
+		try {
+			CoverageDataFileHandler.replaceCoverageData(projectData, dataFile);
+			return true;
+		} catch (IOException e) {
+			System.err.println("Error: Cannot write data file "
+					+ dataFile.getAbsolutePath() + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	public static void main(String[] args) {
+		int returnValue = convert(args);
+		if (returnValue != 0) {
+			System.exit(returnValue);
+		}
+	}
+
+}
@@ -43,6 +43,8 @@ public class MergeMain {
 		for (int i = 0; i < args.length; i++) {
 			if (args[i].equals("--datafile")) {
 				builder.setDataFile(args[++i]);
+			} else if (args[i].equals("--threads")) {
+				builder.threads(Integer.parseInt(args[++i]));
 			} else if (args[i].equals("--basedir")) {
 				baseDir = args[++i];
 				builder.setBaseDirectory(baseDir);
@@ -1,18 +1,42 @@
 package net.sourceforge.cobertura.merge;
 
+import net.sourceforge.cobertura.coveragedata.CountersFile;
 import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.coveragedata.CoverageDataJournal;
+import net.sourceforge.cobertura.coveragedata.CoverageDataShards;
 import net.sourceforge.cobertura.coveragedata.ProjectData;
 import net.sourceforge.cobertura.dsl.Arguments;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class MergeProjectDataFilesTask {
 	private static final Logger logger = LoggerFactory
 			.getLogger(MergeProjectDataFilesTask.class);
 
+	/**
+	 * Folds of the merged counters files, that have not been committed yet.
+	 */
+	private final Queue<CountersFile.Fold> folds = new ConcurrentLinkedQueue<CountersFile.Fold>();
+
+	/**
+	 * Merges the files into the project data. When more than one thread was requested, the files are read by
+	 * {@link Arguments#getThreads()} workers. Every worker merges the files it has read into its own
+	 * {@link ProjectData}, so at most one file per worker is held in memory besides the merged data. The data
+	 * of the workers is merged pairwise, in parallel, until one is left.
+	 */
 	public void mergeProjectDataFiles(Arguments arguments,
 			ProjectData projectData) {
 		Set<File> filesToMerge = arguments.getFilesToMerge();
@@ -21,13 +45,126 @@ public class MergeProjectDataFilesTask {
 			logger.error("No files were specified for merging.");
 		}
 
-		// Merge everything
-		for (File newDataFile : filesToMerge) {
-			ProjectData projectDataNew = CoverageDataFileHandler
+		int threads = Math.min(arguments.getThreads(), filesToMerge.size());
+		if (threads <= 1) {
+			// Merge everything
+			for (File newDataFile : filesToMerge) {
+				mergeProjectDataFile(newDataFile, projectData);
+			}
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			projectData.merge(mergeInParallel(filesToMerge, threads, executor));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Marks the hits of the counters files merged so far as folded, see {@link CountersFile.Fold#commit()}. Call it
+	 * once the merged data has been saved, so merging the files again doesn't add the same hits again.
+	 */
+	public void commitFoldedCounters() {
+		CountersFile.Fold fold;
+		while ((fold = folds.poll()) != null) {
+			fold.commitQuietly();
+		}
+	}
+
+	private ProjectData mergeInParallel(Set<File> filesToMerge,
+			int workers, ExecutorService executor) {
+		final Queue<File> pendingFiles = new ConcurrentLinkedQueue<File>(
+				filesToMerge);
+		List<Future<ProjectData>> results = new ArrayList<Future<ProjectData>>();
+		for (int i = 0; i < workers; i++) {
+			results.add(executor.submit(new Callable<ProjectData>() {
+				public ProjectData call() {
+					ProjectData workerProjectData = new ProjectData();
+					File newDataFile;
+					while ((newDataFile = pendingFiles.poll()) != null) {
+						mergeProjectDataFile(newDataFile, workerProjectData);
+					}
+					return workerProjectData;
+				}
+			}));
+		}
+
+		while (results.size() > 1) {
+			List<Future<ProjectData>> merged = new ArrayList<Future<ProjectData>>();
+			for (int i = 0; i + 1 < results.size(); i += 2) {
+				final ProjectData first = getResult(results.get(i));
+				final ProjectData second = getResult(results.get(i + 1));
+				merged.add(executor.submit(new Callable<ProjectData>() {
+					public ProjectData call() {
+						first.merge(second);
+						return first;
+					}
+				}));
+			}
+			if (results.size() % 2 != 0) {
+				merged.add(results.get(results.size() - 1));
+			}
+			results = merged;
+		}
+		return getResult(results.get(0));
+	}
+
+	/**
+	 * Waits for the task and rethrows the exception thrown by the task, if any.
+	 */
+	private static <T> T getResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while merging", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	private void mergeProjectDataFile(File newDataFile,
+			ProjectData projectData) {
+		if (CountersFile.isCountersFile(newDataFile)) {
+			try {
+				folds.add(CountersFile.fold(newDataFile, projectData));
+			} catch (IOException e) {
+				logger.error("Cobertura: Error reading file "
+						+ newDataFile.getAbsolutePath() + ": "
+						+ e.getLocalizedMessage(), e);
+			}
+			return;
+		}
+		ProjectData projectDataNew;
+		if (!newDataFile.exists()
+				&& (CoverageDataJournal.getJournalFile(newDataFile).isFile() || !CoverageDataShards
+						.getShardFiles(newDataFile).isEmpty())) {
+			// Only JVMs running in journal or shard mode have saved into the data file
+			projectDataNew = new ProjectData();
+		} else {
+			projectDataNew = CoverageDataFileHandler
 					.loadCoverageData(newDataFile);
+		}
 
-			if (projectDataNew != null)
-				projectData.merge(projectDataNew);
+		if (projectDataNew != null) {
+			try {
+				CoverageDataJournal.fold(newDataFile, projectDataNew);
+			} catch (IOException e) {
+				logger.error("Cobertura: Error reading the journal of "
+						+ newDataFile.getAbsolutePath() + ": "
+						+ e.getLocalizedMessage(), e);
+			}
+			CoverageDataShards.fold(newDataFile, projectDataNew);
+			projectData.merge(projectDataNew);
 		}
 	}
 }
@@ -91,6 +91,59 @@ public class ConfigurationUtil {
 				"cobertura.ser");
 	}
 
+	/**
+	 * @return file, whose memory mapped region stores the counters of classes instrumented with mapped counters.
+	 *         Every JVM creates a new file next to it, see {@link net.sourceforge.cobertura.coveragedata.CountersFile}.
+	 */
+	public String getCountersFile() {
+		return getProperty("net.sourceforge.cobertura.countersFile",
+				getDatafile() + ".counters");
+	}
+
+	/**
+	 * @return interval in seconds, in which the coverage data of the running JVM is saved in the background,
+	 *         or 0 if it is saved only when the JVM exits
+	 */
+	public long getFlushInterval() {
+		return getLongProperty("net.sourceforge.cobertura.flushInterval", 0);
+	}
+
+	/**
+	 * @return true if the running JVM appends its coverage data to the journal of the data file, instead of
+	 *         merging it into the data file, see {@link net.sourceforge.cobertura.coveragedata.CoverageDataJournal}
+	 */
+	public boolean getJournal() {
+		return Boolean.valueOf(getProperty("net.sourceforge.cobertura.journal",
+				"false").trim());
+	}
+
+	/**
+	 * @return true if every save of the running JVM writes a new shard of the data file, without locking the data
+	 *         file, see {@link net.sourceforge.cobertura.coveragedata.CoverageDataShards}
+	 */
+	public boolean getShards() {
+		return Boolean.valueOf(getProperty("net.sourceforge.cobertura.shards",
+				"false").trim());
+	}
+
+	/**
+	 * @return size in bytes, above which the journal is folded into the data file
+	 */
+	public long getJournalMaxSize() {
+		return getLongProperty("net.sourceforge.cobertura.journalMaxSize",
+				16 * 1024 * 1024);
+	}
+
+	private long getLongProperty(String key, long defvalue) {
+		String value = getProperty(key, String.valueOf(defvalue));
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("ERROR: Invalid value of " + key + ": " + value);
+			return defvalue;
+		}
+	}
+
 	/**
 	 * Poor mans debugging.
 	 * Intentionally didn't use log4j, as we dont want to introduce that dependency on instrumented files.
@@ -0,0 +1,234 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.merge.MergeMain;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CountersFileTest {
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("cobertura", ".counters");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testFold() throws Exception {
+		CountersFile countersFile = new CountersFile(file, 4096);
+		assertTrue(CountersFile.isCountersFile(file));
+
+		MappedCounters counters = countersFile.allocate(Mapped.class, 6);
+		assertNotNull(counters);
+		assertTrue(counters.isMapped());
+		counters.increment(0);
+		counters.increment(0);
+		counters.increment(2);
+		counters.increment(4);
+		counters.describe(Mapped.class);
+		assertTrue(counters.isDescribed());
+
+		// The hits are reported only by folding the file.
+		int[] scratch = new int[6];
+		assertFalse(counters.drainTo(scratch));
+		assertArrayEquals(new int[6], scratch);
+		assertEquals(2, counters.get(0));
+
+		// The file is folded while its counters are still in use.
+		ProjectData projectData = new ProjectData();
+		CountersFile.fold(file, projectData);
+		ClassData classData = projectData.getClassData(Mapped.class.getName());
+		assertEquals("net/sourceforge/cobertura/coveragedata/Mapped.java",
+				classData.getSourceFileName());
+		assertEquals(2, classData.getNumberOfValidLines());
+		assertEquals(2, classData.getLineData(1).getHits());
+		assertEquals("m", classData.getLineData(1).getMethodName());
+		assertEquals(3, classData.getNumberOfValidBranches());
+		assertEquals(2, classData.getNumberOfCoveredBranches());
+	}
+
+	@Test
+	public void testFoldSeveralClasses() throws Exception {
+		CountersFile countersFile = new CountersFile(file, 4096);
+		for (int i = 0; i < 2; i++) {
+			MappedCounters counters = countersFile.allocate(Mapped.class, 6);
+			counters.increment(0);
+			counters.describe(Mapped.class);
+			// described only once
+			counters.describe(Mapped.class);
+		}
+
+		ProjectData projectData = new ProjectData();
+		CountersFile.fold(file, projectData);
+		assertEquals(2, projectData.getClassData(Mapped.class.getName())
+				.getLineData(1).getHits());
+	}
+
+	@Test
+	public void testCountersAreHarvestedUntilDescribed() throws Exception {
+		CountersFile countersFile = new CountersFile(file, 4096);
+		MappedCounters counters = countersFile.allocate(Mapped.class, 6);
+		counters.increment(0);
+		counters.increment(0);
+
+		// The class is not described, so the file has nothing to fold yet.
+		ProjectData projectData = new ProjectData();
+		CountersFile.fold(file, projectData);
+		assertNull(projectData.getClassData(Mapped.class.getName()));
+
+		int[] scratch = new int[6];
+		assertTrue(counters.drainTo(scratch));
+		assertEquals(2, scratch[0]);
+
+		// Only the hits after the harvest are folded.
+		counters.describe(Mapped.class);
+		counters.increment(0);
+		CountersFile.fold(file, projectData);
+		assertEquals(1, projectData.getClassData(Mapped.class.getName())
+				.getLineData(1).getHits());
+	}
+
+	@Test
+	public void testFoldIsIdempotent() throws Exception {
+		CountersFile countersFile = new CountersFile(file, 4096);
+		MappedCounters counters = countersFile.allocate(Mapped.class, 6);
+		counters.increment(0);
+		counters.increment(0);
+		counters.describe(Mapped.class);
+
+		assertEquals(2, foldLineHits(false));
+		// Not committed, so the same hits are folded again.
+		assertEquals(2, foldLineHits(true));
+		assertEquals(0, foldLineHits(true));
+
+		counters.increment(0);
+		assertEquals(1, foldLineHits(true));
+		assertTrue(file.isFile());
+	}
+
+	@Test
+	public void testFileOfExitedJvmIsDeletedAfterFold() throws Exception {
+		CountersFile countersFile = new CountersFile(file, 4096);
+		MappedCounters counters = countersFile.allocate(Mapped.class, 6);
+		counters.increment(0);
+		counters.describe(Mapped.class);
+		assertTrue(CountersFile.isLive(file));
+
+		countersFile.close();
+		assertFalse(CountersFile.isLive(file));
+		assertEquals(1, foldLineHits(true));
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testCompact() throws Exception {
+		File dir = File.createTempFile("cobertura", ".compact");
+		dir.delete();
+		dir.mkdirs();
+		try {
+			File dataFile = new File(dir, "cobertura.ser");
+			CountersFile countersFile = new CountersFile(new File(dir,
+					"cobertura.ser.counters.1"), 4096);
+			MappedCounters counters = countersFile.allocate(Mapped.class, 6);
+			counters.increment(0);
+			counters.describe(Mapped.class);
+			assertEquals(1, CountersFile.getCountersFiles(dataFile).size());
+
+			CountersFile.compact(dataFile);
+			CountersFile.compact(dataFile);
+			assertEquals(1, CoverageDataFileHandler.loadCoverageData(dataFile)
+					.getClassData(Mapped.class.getName()).getLineData(1)
+					.getHits());
+
+			// Merging the counters file again doesn't count the hits twice
+			counters.increment(0);
+			assertEquals(0, MergeMain.merge(new String[]{"--datafile",
+					dataFile.getAbsolutePath(),
+					countersFile.getFile().getAbsolutePath()}));
+			assertEquals(0, MergeMain.merge(new String[]{"--datafile",
+					dataFile.getAbsolutePath(),
+					countersFile.getFile().getAbsolutePath()}));
+			assertEquals(2, CoverageDataFileHandler.loadCoverageData(dataFile)
+					.getClassData(Mapped.class.getName()).getLineData(1)
+					.getHits());
+			countersFile.close();
+		} finally {
+			FileUtils.deleteDirectory(dir);
+		}
+	}
+
+	/**
+	 * Folds the counters file into new coverage data.
+	 *
+	 * @return hits of the first line of {@link Mapped}
+	 */
+	private long foldLineHits(boolean commit) throws Exception {
+		ProjectData projectData = new ProjectData();
+		CountersFile.Fold fold = CountersFile.fold(file, projectData);
+		if (commit) {
+			fold.commit();
+		}
+		return projectData.getClassData(Mapped.class.getName()).getLineData(
+				1).getHits();
+	}
+
+	@Test
+	public void testFullFile() throws Exception {
+		CountersFile countersFile = new CountersFile(file, 256);
+		assertNotNull(countersFile.allocate(Mapped.class, 6));
+		assertNull(countersFile.allocate(Mapped.class, 100));
+	}
+
+	@Test
+	public void testIsCountersFile() throws Exception {
+		CoverageDataFileHandler.saveCoverageData(new ProjectData(), file);
+		assertFalse(CountersFile.isCountersFile(file));
+	}
+
+	/**
+	 * Mimics the class map method generated into instrumented classes.
+	 */
+	static class Mapped {
+		public static void __cobertura_classmap(LightClassmapListener listener) {
+			listener.setClazz(Mapped.class.getName());
+			listener.setSource("Mapped.java");
+			listener.putLineTouchPoint(1, 0, "m", "(I)V");
+			listener.putJumpTouchPoint(1, 1, 2);
+			listener.putLineTouchPoint(2, 3, "m", "(I)V");
+			listener.putSwitchTouchPoint(2, 1, 4, 5);
+		}
+	}
+}
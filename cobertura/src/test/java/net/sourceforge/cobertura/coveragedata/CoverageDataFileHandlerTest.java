@@ -25,9 +25,15 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class CoverageDataFileHandlerTest {
 
@@ -84,4 +90,86 @@ public class CoverageDataFileHandlerTest {
 		assertEquals(a, b);
 	}
 
+	@Test
+	public void testSaveAndRestoreHitsAndBranches() throws Exception {
+		ClassData classData = a.getClassData("HelloWorld");
+		classData.setContainsInstrumentationInfo();
+		classData.touch(3, 5);
+		classData.touch(7, Integer.MAX_VALUE);
+		classData.touch(7, Integer.MAX_VALUE);
+		classData.addLineJump(4, 0);
+		classData.addLineJump(4, 1);
+		classData.touchJump(4, 0, true, 2);
+		classData.touchJump(4, 1, false, 3);
+		classData.addLineSwitch(8, 0, -2, 1, Integer.MAX_VALUE);
+		classData.touchSwitch(8, 0, 1, 4);
+		classData.touchSwitch(8, 0, -1, 6);
+
+		ClassData packaged = new ClassData("com.example.Packaged$Inner");
+		packaged.setSourceFileName("Packaged.java");
+		packaged.addLine(1, "run", "()V");
+		a.addClassData(packaged);
+
+		File dataFile = new File(tmpDir, "cobertura.ser");
+		CoverageDataFileHandler.saveCoverageData(a, dataFile);
+		DataInputStream in = new DataInputStream(new FileInputStream(dataFile));
+		try {
+			assertEquals(CoverageDataOutput.MAGIC, in.readInt());
+		} finally {
+			in.close();
+		}
+
+		ProjectData b = CoverageDataFileHandler.loadCoverageData(dataFile);
+		assertEquals(a, b);
+		ClassData restored = b.getClassData("HelloWorld");
+		assertEquals(classData, restored);
+		assertEquals(2L * Integer.MAX_VALUE, restored.getLineCoverage(7)
+				.getHits());
+		assertEquals(classData.getNumberOfValidBranches(), restored
+				.getNumberOfValidBranches());
+		assertEquals(classData.getNumberOfCoveredBranches(), restored
+				.getNumberOfCoveredBranches());
+		assertEquals(new ArrayList<Integer>(classData.getBranches()),
+				new ArrayList<Integer>(restored.getBranches()));
+		assertEquals(classData.getMethodNamesAndDescriptors(), restored
+				.getMethodNamesAndDescriptors());
+		assertEquals(classData.containsInstrumentationInfo(), restored
+				.containsInstrumentationInfo());
+		assertEquals(a.getNumberOfChildren(), b.getNumberOfChildren());
+		assertEquals("com/example/Packaged.java", b.getClassData(
+				"com.example.Packaged$Inner").getSourceFileName());
+		assertEquals(a.getSourceFiles(), b.getSourceFiles());
+	}
+
+	@Test
+	public void testRestoreSerializedFormat() throws Exception {
+		File dataFile = new File(tmpDir, "cobertura.ser");
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(
+				dataFile));
+		try {
+			out.writeObject(a);
+		} finally {
+			out.close();
+		}
+
+		ProjectData b = CoverageDataFileHandler.loadCoverageData(dataFile);
+		assertEquals(a, b);
+
+		CoverageDataFileHandler.saveCoverageData(b, dataFile);
+		assertEquals(a, CoverageDataFileHandler.loadCoverageData(dataFile));
+	}
+
+	@Test
+	public void testRestoreUnknownFormat() throws Exception {
+		File dataFile = new File(tmpDir, "cobertura.ser");
+		FileOutputStream out = new FileOutputStream(dataFile);
+		try {
+			out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+		} finally {
+			out.close();
+		}
+
+		assertNull(CoverageDataFileHandler.loadCoverageData(dataFile));
+	}
+
 }
@@ -0,0 +1,134 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+package net.sourceforge.cobertura.coveragedata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoverageDataJournalTest {
+	private File dataFile;
+
+	private File journalFile;
+
+	@Before
+	public void setUp() throws Exception {
+		dataFile = File.createTempFile("cobertura", ".ser");
+		dataFile.delete();
+		journalFile = CoverageDataJournal.getJournalFile(dataFile);
+	}
+
+	@After
+	public void tearDown() {
+		dataFile.delete();
+		journalFile.delete();
+	}
+
+	@Test
+	public void testAppendAndFold() throws Exception {
+		CoverageDataJournal.append(createProjectData(2), dataFile,
+				Long.MAX_VALUE);
+		CoverageDataJournal.append(createProjectData(3), dataFile,
+				Long.MAX_VALUE);
+		assertFalse(dataFile.exists());
+		assertTrue(journalFile.isFile());
+
+		ProjectData projectData = createProjectData(1);
+		CoverageDataJournal.fold(dataFile, projectData);
+		assertEquals(6, getHits(projectData));
+		assertTrue(journalFile.isFile());
+	}
+
+	@Test
+	public void testCompact() throws Exception {
+		CoverageDataFileHandler.saveCoverageData(createProjectData(1),
+				dataFile);
+		CoverageDataJournal.append(createProjectData(2), dataFile,
+				Long.MAX_VALUE);
+		CoverageDataJournal.append(createProjectData(3), dataFile,
+				Long.MAX_VALUE);
+
+		CoverageDataJournal.compact(dataFile);
+		assertFalse(journalFile.exists());
+		assertEquals(6, getHits(CoverageDataFileHandler
+				.loadCoverageData(dataFile)));
+
+		// Nothing to compact
+		CoverageDataJournal.compact(dataFile);
+		assertEquals(6, getHits(CoverageDataFileHandler
+				.loadCoverageData(dataFile)));
+	}
+
+	@Test
+	public void testAppendCompactsLargeJournal() throws Exception {
+		CoverageDataJournal.append(createProjectData(2), dataFile,
+				Long.MAX_VALUE);
+		CoverageDataJournal.append(createProjectData(3), dataFile, 0);
+		assertFalse(journalFile.exists());
+		assertEquals(5, getHits(CoverageDataFileHandler
+				.loadCoverageData(dataFile)));
+	}
+
+	@Test
+	public void testIncompleteSegmentIsOverwritten() throws Exception {
+		CoverageDataJournal.append(createProjectData(2), dataFile,
+				Long.MAX_VALUE);
+		long length = journalFile.length();
+
+		// A JVM was killed while writing a segment
+		FileOutputStream out = new FileOutputStream(journalFile, true);
+		try {
+			out.write(new byte[]{0x43, 0x4F, 0x42, 0x4A, 0, 0, 1, 0, 1, 2, 3});
+		} finally {
+			out.close();
+		}
+		ProjectData projectData = new ProjectData();
+		CoverageDataJournal.fold(dataFile, projectData);
+		assertEquals(2, getHits(projectData));
+
+		CoverageDataJournal.append(createProjectData(3), dataFile,
+				Long.MAX_VALUE);
+		assertEquals(2 * length, journalFile.length());
+		projectData = new ProjectData();
+		CoverageDataJournal.fold(dataFile, projectData);
+		assertEquals(5, getHits(projectData));
+	}
+
+	private static ProjectData createProjectData(int hits) {
+		ProjectData projectData = new ProjectData();
+		ClassData classData = projectData
+				.getOrCreateClassData("com.example.Journaled");
+		classData.setSourceFileName("Journaled.java");
+		classData.addLine(7, "run", "()V");
+		classData.touch(7, hits);
+		return projectData;
+	}
+
+	private static long getHits(ProjectData projectData) {
+		return projectData.getClassData("com.example.Journaled")
+				.getLineCoverage(7).getHits();
+	}
+}
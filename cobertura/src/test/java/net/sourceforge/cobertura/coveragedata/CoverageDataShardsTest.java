@@ -0,0 +1,114 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+package net.sourceforge.cobertura.coveragedata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CoverageDataShardsTest {
+	private File dir;
+
+	private File dataFile;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("cobertura", ".shards");
+		dir.delete();
+		dir.mkdir();
+		dataFile = new File(dir, "cobertura.ser");
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testSaveAndFold() throws Exception {
+		CoverageDataShards.save(createProjectData(2), dataFile);
+		CoverageDataShards.save(createProjectData(3), dataFile);
+		// A shard of another data file
+		CoverageDataShards.save(createProjectData(4), new File(dir,
+				"cobertura.ser.other"));
+
+		List<File> shards = CoverageDataShards.getShardFiles(dataFile);
+		assertEquals(2, shards.size());
+		assertEquals(3, dir.listFiles().length);
+		assertFalse(dataFile.exists());
+
+		ProjectData projectData = createProjectData(1);
+		assertEquals(shards, CoverageDataShards.fold(dataFile, projectData));
+		assertEquals(6, getHits(projectData));
+		assertEquals(2, CoverageDataShards.getShardFiles(dataFile).size());
+	}
+
+	@Test
+	public void testCompact() throws Exception {
+		CoverageDataFileHandler.saveCoverageData(createProjectData(1),
+				dataFile);
+		CoverageDataShards.save(createProjectData(2), dataFile);
+		CoverageDataShards.save(createProjectData(3), dataFile);
+
+		CoverageDataShards.compact(dataFile);
+		assertTrue(CoverageDataShards.getShardFiles(dataFile).isEmpty());
+		assertEquals(6, getHits(CoverageDataFileHandler
+				.loadCoverageData(dataFile)));
+
+		// Nothing to compact
+		CoverageDataShards.compact(dataFile);
+		assertEquals(6, getHits(CoverageDataFileHandler
+				.loadCoverageData(dataFile)));
+	}
+
+	@Test
+	public void testCompactWithoutDataFile() throws Exception {
+		CoverageDataShards.save(createProjectData(2), dataFile);
+
+		CoverageDataShards.compact(dataFile);
+		assertTrue(CoverageDataShards.getShardFiles(dataFile).isEmpty());
+		assertEquals(2, getHits(CoverageDataFileHandler
+				.loadCoverageData(dataFile)));
+	}
+
+	private static ProjectData createProjectData(int hits) {
+		ProjectData projectData = new ProjectData();
+		ClassData classData = projectData
+				.getOrCreateClassData("com.example.Sharded");
+		classData.setSourceFileName("Sharded.java");
+		classData.addLine(7, "run", "()V");
+		classData.touch(7, hits);
+		return projectData;
+	}
+
+	private static long getHits(ProjectData projectData) {
+		return projectData.getClassData("com.example.Sharded")
+				.getLineCoverage(7).getHits();
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DoubleBufferedCountersTest {
+
+	@Test
+	public void testDrainTo() {
+		DoubleBufferedCounters counters = new DoubleBufferedCounters(3);
+		assertEquals(3, counters.length());
+		int[] scratch = {9, 9, 9, 9};
+		counters.increment(1);
+		counters.increment(1);
+		counters.increment(2);
+		counters.drainTo(scratch);
+		assertArrayEquals(new int[]{0, 2, 1, 9}, scratch);
+
+		counters.increment(0);
+		counters.drainTo(scratch);
+		assertArrayEquals(new int[]{1, 0, 0, 9}, scratch);
+
+		assertFalse(counters.drainTo(scratch));
+		assertArrayEquals(new int[]{0, 0, 0, 9}, scratch);
+	}
+
+	@Test
+	public void testGetAndReset() {
+		DoubleBufferedCounters counters = new DoubleBufferedCounters(2);
+		counters.increment(0);
+		assertArrayEquals(new int[]{1, 0}, counters.getAndReset());
+		counters.increment(1);
+		assertArrayEquals(new int[]{0, 1}, counters.getAndReset());
+		assertArrayEquals(new int[]{0, 0}, counters.getAndReset());
+	}
+
+	@Test
+	public void testNoHitIsCountedTwice() throws Exception {
+		final DoubleBufferedCounters counters = new DoubleBufferedCounters(2);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; i < 1000000; i++) {
+					counters.increment(1);
+				}
+			}
+		};
+		thread.start();
+
+		int[] scratch = new int[2];
+		long harvested = 0;
+		while (thread.isAlive()) {
+			counters.drainTo(scratch);
+			harvested += scratch[1];
+			thread.join(1);
+		}
+		counters.drainTo(scratch);
+		harvested += scratch[1];
+
+		assertEquals(0, scratch[0]);
+		assertEquals(1000000L, harvested);
+	}
+}
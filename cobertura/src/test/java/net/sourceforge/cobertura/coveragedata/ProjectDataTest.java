@@ -22,14 +22,20 @@
 
 package net.sourceforge.cobertura.coveragedata;
 
+import net.sourceforge.cobertura.test.util.TestUtils;
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.Iterator;
 import java.util.SortedSet;
+import java.util.Timer;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 public class ProjectDataTest {
@@ -170,4 +176,120 @@ public class ProjectDataTest {
 		assertEquals("com.example.test", ((PackageData) subPackages.next())
 				.getName());
 	}
+
+	@Test
+	public void testPeriodicFlush() throws Exception {
+		File dataFile = new File(TestUtils.getTempDir(), "flush.ser");
+		dataFile.delete();
+		CoverageDataFileHandler.setDefaultDataFile(dataFile);
+		Timer timer = ProjectData.scheduleFlush(50);
+		ProjectData saved = null;
+		try {
+			for (int i = 0; i < 100 && saved == null; i++) {
+				Thread.sleep(100);
+				if (dataFile.isFile()) {
+					// The file is replaced only once it is complete
+					saved = CoverageDataFileHandler.loadCoverageData(dataFile);
+					assertNotNull(saved);
+				}
+			}
+		} finally {
+			timer.cancel();
+			CoverageDataFileHandler.setDefaultDataFile(null);
+		}
+		assertNotNull(saved);
+	}
+
+	@Test
+	public void testSaveWaitsForAcquiredProjectData() throws Exception {
+		File dataFile = new File(TestUtils.getTempDir(), "acquired.ser");
+		dataFile.delete();
+		CoverageDataFileHandler.setDefaultDataFile(dataFile);
+		try {
+			ProjectData acquired = ProjectData.acquireGlobalProjectData();
+			Thread saver = new Thread() {
+				public void run() {
+					ProjectData.saveGlobalProjectData();
+				}
+			};
+			saver.start();
+			saver.join(200);
+			assertTrue(saver.isAlive());
+
+			acquired.addClassData(new ClassData("com.example.Acquired"));
+			ProjectData.releaseGlobalProjectData(acquired);
+			saver.join(5000);
+			assertFalse(saver.isAlive());
+			assertTrue(ProjectData.getGlobalProjectData() != acquired);
+
+			ProjectData saved = CoverageDataFileHandler
+					.loadCoverageData(dataFile);
+			assertNotNull(saved.getClassData("com.example.Acquired"));
+		} finally {
+			CoverageDataFileHandler.setDefaultDataFile(null);
+		}
+	}
+
+	@Test
+	public void testSaveDoesNotWaitForeverForAcquiredProjectData()
+			throws Exception {
+		File dataFile = new File(TestUtils.getTempDir(), "stuck.ser");
+		dataFile.delete();
+		CoverageDataFileHandler.setDefaultDataFile(dataFile);
+		long timeout = ProjectData.writersTimeoutNanos;
+		ProjectData.writersTimeoutNanos = 200000000L;
+		ProjectData acquired = ProjectData.acquireGlobalProjectData();
+		try {
+			acquired.addClassData(new ClassData("com.example.Stuck"));
+			long start = System.currentTimeMillis();
+			ProjectData.saveGlobalProjectData();
+			assertTrue(System.currentTimeMillis() - start < 5000);
+
+			ProjectData saved = CoverageDataFileHandler
+					.loadCoverageData(dataFile);
+			assertNotNull(saved.getClassData("com.example.Stuck"));
+		} finally {
+			ProjectData.releaseGlobalProjectData(acquired);
+			ProjectData.writersTimeoutNanos = timeout;
+			CoverageDataFileHandler.setDefaultDataFile(null);
+		}
+	}
+
+	@Test
+	public void testUnreadableDataFileIsNotReplaced() throws Exception {
+		File dataFile = new File(TestUtils.getTempDir(), "unreadable.ser");
+		dataFile.getParentFile().mkdirs();
+		byte[] content = {1, 2, 3, 4, 5, 6, 7, 8};
+		FileUtils.writeByteArrayToFile(dataFile, content);
+		CoverageDataFileHandler.setDefaultDataFile(dataFile);
+		try {
+			ProjectData.getGlobalProjectData().addClassData(
+					new ClassData("com.example.Unsaved"));
+			ProjectData.saveGlobalProjectData();
+			assertArrayEquals(content, FileUtils.readFileToByteArray(dataFile));
+
+			// The data is saved once the file can be read again.
+			dataFile.delete();
+			ProjectData.saveGlobalProjectData();
+			ProjectData saved = CoverageDataFileHandler
+					.loadCoverageData(dataFile);
+			assertNotNull(saved.getClassData("com.example.Unsaved"));
+		} finally {
+			CoverageDataFileHandler.setDefaultDataFile(null);
+		}
+	}
+
+	@Test
+	public void testSaveDoesNotWaitWithoutWriters() {
+		File dataFile = new File(TestUtils.getTempDir(), "unused.ser");
+		CoverageDataFileHandler.setDefaultDataFile(dataFile);
+		try {
+			ProjectData.getGlobalProjectData();
+			long start = System.currentTimeMillis();
+			ProjectData.saveGlobalProjectData();
+			assertTrue(System.currentTimeMillis() - start < 1000);
+		} finally {
+			CoverageDataFileHandler.setDefaultDataFile(null);
+		}
+	}
 }
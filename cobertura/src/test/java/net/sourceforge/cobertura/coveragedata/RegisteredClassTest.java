@@ -0,0 +1,183 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RegisteredClassTest {
+
+	@Test
+	public void testGetAndResetCounters() {
+		int[] intCounters = {0, 3, 1};
+		RegisteredClass rc = new RegisteredClass(Instrumented.class,
+				intCounters);
+		assertArrayEquals(new int[]{0, 3, 1}, rc.getAndResetCounters());
+		assertArrayEquals(new int[]{0, 0, 0}, intCounters);
+
+		rc = new RegisteredClass(Instrumented.class, new boolean[]{true,
+				false});
+		assertArrayEquals(new int[]{1, 0}, rc.getAndResetCounters());
+		assertArrayEquals(new int[]{0, 0}, rc.getAndResetCounters());
+
+		AtomicIntegerArray atomicCounters = new AtomicIntegerArray(2);
+		atomicCounters.set(1, 5);
+		rc = new RegisteredClass(Instrumented.class, atomicCounters);
+		assertArrayEquals(new int[]{0, 5}, rc.getAndResetCounters());
+		assertArrayEquals(new int[]{0, 0}, rc.getAndResetCounters());
+
+		StripedCounters stripedCounters = new StripedCounters(2);
+		stripedCounters.increment(0);
+		rc = new RegisteredClass(Instrumented.class, stripedCounters);
+		assertArrayEquals(new int[]{1, 0}, rc.getAndResetCounters());
+
+		DoubleBufferedCounters doubleBufferedCounters = new DoubleBufferedCounters(
+				2);
+		doubleBufferedCounters.increment(1);
+		rc = new RegisteredClass(Instrumented.class, doubleBufferedCounters);
+		assertArrayEquals(new int[]{0, 1}, rc.getAndResetCounters());
+	}
+
+	@Test
+	public void testDrainCounters() {
+		int[] scratch = {7, 7, 7, 7};
+		RegisteredClass rc = new RegisteredClass(Instrumented.class,
+				new boolean[]{false, true, false});
+		assertEquals(3, rc.getCountersLength());
+		assertTrue(rc.drainCounters(scratch));
+		assertArrayEquals(new int[]{0, 1, 0, 7}, scratch);
+		assertFalse(rc.drainCounters(scratch));
+
+		rc = new RegisteredClass(Instrumented.class, new int[]{2, 0, 4});
+		assertTrue(rc.drainCounters(scratch));
+		assertArrayEquals(new int[]{2, 0, 4, 7}, scratch);
+		assertFalse(rc.drainCounters(scratch));
+		assertArrayEquals(new int[]{0, 0, 0, 7}, scratch);
+	}
+
+	@Test
+	public void testClassmapIsRecordedOnce() throws Exception {
+		Instrumented.classmapCalls = 0;
+		RegisteredClass rc = new RegisteredClass(Instrumented.class,
+				new int[3]);
+		assertFalse(rc.isClassmapRecorded());
+
+		// All the touch points are applied the first time.
+		ClassData classData = new ClassData(Instrumented.class.getName());
+		rc.applyHits(classData, new int[]{0, 0, 0});
+		assertTrue(rc.isClassmapRecorded());
+		assertEquals("net/sourceforge/cobertura/coveragedata/Instrumented.java",
+				classData.getSourceFileName());
+		assertEquals(2, classData.getNumberOfValidLines());
+		assertEquals(2, classData.getNumberOfValidBranches());
+		assertEquals("m", classData.getLineData(1).getMethodName());
+
+		// Then only the touch points that were hit.
+		classData = new ClassData(Instrumented.class.getName());
+		rc.applyHits(classData, new int[]{3, 0, 0});
+		assertEquals(1, classData.getNumberOfValidLines());
+		assertEquals(3, classData.getLineData(1).getHits());
+		assertEquals(0, classData.getNumberOfValidBranches());
+
+		classData = new ClassData(Instrumented.class.getName());
+		rc.applyHits(classData, new int[]{0, 0, 2});
+		assertEquals(1, classData.getNumberOfValidLines());
+		assertEquals(0, classData.getLineData(2).getHits());
+		assertEquals(2, classData.getNumberOfValidBranches());
+		assertEquals(1, classData.getNumberOfCoveredBranches());
+
+		assertEquals(1, Instrumented.classmapCalls);
+	}
+
+	@Test
+	public void testAllTouchPointsAreAppliedAfterRecording() throws Exception {
+		Instrumented.classmapCalls = 0;
+		RegisteredClass rc = new RegisteredClass(Instrumented.class,
+				new int[3]);
+		rc.recordClassmap();
+		assertTrue(rc.isClassmapRecorded());
+		assertFalse(rc.isApplied());
+
+		ClassData classData = new ClassData(Instrumented.class.getName());
+		rc.applyHits(classData, new int[]{0, 0, 0});
+		assertTrue(rc.isApplied());
+		assertEquals(2, classData.getNumberOfValidLines());
+		assertEquals(2, classData.getNumberOfValidBranches());
+
+		rc.recordClassmap();
+		assertEquals(1, Instrumented.classmapCalls);
+	}
+
+	@Test
+	public void testFailedClassIsReleasedAndNotRecordedAgain()
+			throws Exception {
+		RegisteredClass rc = new RegisteredClass(FailingInitializer.class,
+				new int[1]);
+		try {
+			rc.recordClassmap();
+			fail("The static initializer should fail");
+		} catch (ExceptionInInitializerError expected) {
+		}
+		assertTrue(rc.isFailed());
+		assertFalse(rc.isClassmapRecorded());
+
+		// Neither recording nor applying fails again.
+		rc.recordClassmap();
+		ClassData classData = new ClassData(FailingInitializer.class
+				.getName());
+		rc.applyHits(classData, new int[]{1});
+		assertEquals(0, classData.getNumberOfValidLines());
+	}
+
+	static class FailingInitializer {
+		static final int VALUE = fail();
+
+		static int fail() {
+			throw new IllegalStateException("Initializer failed");
+		}
+
+		public static void __cobertura_classmap(LightClassmapListener listener) {
+			listener.putLineTouchPoint(1, 0, "m", "()V");
+		}
+	}
+
+	/**
+	 * Mimics the class map method generated into instrumented classes.
+	 */
+	static class Instrumented {
+		static int classmapCalls;
+
+		public static void __cobertura_classmap(LightClassmapListener listener) {
+			classmapCalls++;
+			listener.setClazz(Instrumented.class.getName());
+			listener.setSource("Instrumented.java");
+			listener.putLineTouchPoint(1, 0, "m", "()V");
+			listener.putLineTouchPoint(2, 1, "m", "()V");
+			listener.putJumpTouchPoint(2, 1, 2);
+		}
+	}
+}
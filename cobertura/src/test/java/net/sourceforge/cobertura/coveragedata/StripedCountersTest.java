@@ -0,0 +1,86 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StripedCountersTest {
+
+	@Test
+	public void testGetAndReset() {
+		StripedCounters counters = new StripedCounters(3);
+		assertEquals(3, counters.length());
+		counters.increment(1);
+		counters.increment(1);
+		counters.increment(2);
+		assertArrayEquals(new int[]{0, 2, 1}, counters.getAndReset());
+		assertArrayEquals(new int[]{0, 0, 0}, counters.getAndReset());
+	}
+
+	@Test
+	public void testNoIncrementIsLostUnderContention() throws Exception {
+		final int threadsCount = 8;
+		final int increments = 100000;
+		final StripedCounters counters = new StripedCounters(2);
+		Thread[] threads = new Thread[threadsCount];
+		for (int i = 0; i < threadsCount; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < increments; j++) {
+						counters.increment(1);
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		long harvested = 0;
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				harvested += counters.getAndReset()[1];
+				thread.join(1);
+			}
+		}
+		harvested += counters.getAndReset()[1];
+
+		assertEquals((long) threadsCount * increments, harvested);
+	}
+
+	@Test
+	public void testCollidingThreadsMoveToOtherStripes() {
+		int mask = 63;
+		int probe = 1;
+		boolean[] visited = new boolean[mask + 1];
+		for (int i = 0; i < 10000; i++) {
+			int next = StripedCounters.advanceProbe(probe);
+			assertTrue(next != 0);
+			visited[next & mask] = true;
+			probe = next;
+		}
+		for (boolean stripe : visited) {
+			assertTrue(stripe);
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.instrument.CoberturaInstrumenter;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.*;
+
+public class TouchCollectorTest {
+	private static final String CLASS_NAME = "test.retired.Retired";
+
+	@Test
+	public void testCountersOfUnloadedClassesAreHarvested() throws Exception {
+		long retired = TouchCollector.getRetiredClassesCount();
+
+		WeakReference<ClassLoader> loader = loadAndRun();
+		assertTrue(TouchCollector.getLiveClassesCount() > 0);
+
+		for (int i = 0; i < 100 && loader.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("The class loader has not been collected", loader.get());
+		// Classes of other tests may be retired too.
+		assertTrue(TouchCollector.getRetiredClassesCount() > retired);
+
+		ProjectData projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		ClassData classData = projectData.getClassData(CLASS_NAME);
+		assertNotNull(classData);
+		assertEquals(2, classData.getLineData(1).getHits());
+
+		// The retired class is harvested only once.
+		projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		assertNull(projectData.getClassData(CLASS_NAME));
+	}
+
+	@Test
+	public void testClassLoaderIsCollectedWithoutHarvest() throws Exception {
+		String className = "test.unharvested.Unharvested";
+		WeakReference<ClassLoader> loader = loadAndRunWithoutHarvest(className);
+
+		// The class map is recorded in the background, then nothing keeps the class loader.
+		for (int i = 0; i < 500 && loader.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("The class loader has not been collected", loader.get());
+
+		ProjectData projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		ClassData classData = projectData.getClassData(className);
+		assertNotNull(classData);
+		assertEquals(1, classData.getLineData(1).getHits());
+	}
+
+	@Test
+	public void testClassesWithoutHitsAreSkipped() throws Exception {
+		String className = "test.idle.Idle";
+		Class<?> clazz = loadClass(className);
+
+		// The touch points are applied once, even if the class has not been executed.
+		ProjectData projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		assertEquals(0, projectData.getClassData(className).getLineData(1)
+				.getHits());
+
+		projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		assertNull(projectData.getClassData(className));
+
+		clazz.getMethod("m", int.class).invoke(null, 1);
+		projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		assertEquals(1, projectData.getClassData(className).getLineData(1)
+				.getHits());
+	}
+
+	/**
+	 * Loads an instrumented class in a new class loader and runs it: once before the first harvest (that
+	 * records the class map of the class and so releases it) and twice after.
+	 */
+	private WeakReference<ClassLoader> loadAndRun() throws Exception {
+		Class<?> clazz = loadClass(CLASS_NAME);
+		clazz.getMethod("m", int.class).invoke(null, 1);
+		TouchCollector.applyTouchesOnProjectData(new ProjectData());
+		clazz.getMethod("m", int.class).invoke(null, 2);
+		clazz.getMethod("m", int.class).invoke(null, 3);
+		return new WeakReference<ClassLoader>(clazz.getClassLoader());
+	}
+
+	private WeakReference<ClassLoader> loadAndRunWithoutHarvest(
+			String className) throws Exception {
+		Class<?> clazz = loadClass(className);
+		clazz.getMethod("m", int.class).invoke(null, 1);
+		return new WeakReference<ClassLoader>(clazz.getClassLoader());
+	}
+
+	/**
+	 * Loads and initializes an instrumented class in a new class loader.
+	 */
+	private Class<?> loadClass(final String className) throws Exception {
+		CoberturaInstrumenter coberturaInstrumenter = new CoberturaInstrumenter();
+		coberturaInstrumenter.setProjectData(new ProjectData());
+		final byte[] bytes = coberturaInstrumenter.instrumentClass(
+				new ByteArrayInputStream(generateClass(className)))
+				.getContent();
+		ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String name)
+					throws ClassNotFoundException {
+				if (!className.equals(name)) {
+					throw new ClassNotFoundException(name);
+				}
+				return defineClass(name, bytes, 0, bytes.length);
+			}
+		};
+		return Class.forName(className, true, loader);
+	}
+
+	private static byte[] generateClass(String className) {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, className.replace('.', '/'),
+				null, "java/lang/Object", null);
+		cw.visitSource("Retired.java", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+		mv.visitCode();
+		Label line = new Label();
+		mv.visitLabel(line);
+		mv.visitLineNumber(1, line);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(1, 1);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
@@ -2,6 +2,7 @@ package net.sourceforge.cobertura.dsl;
 
 import net.sourceforge.cobertura.check.CoverageThreshold;
 import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.instrument.ClassVerifier;
 import net.sourceforge.cobertura.instrument.CoberturaFile;
 import org.junit.Test;
 
@@ -121,6 +122,94 @@ public class ArgumentsBuilderTest {
 				.isThreadsafeRigorous());
 	}
 
+	@Test
+	public void testThreadsafeStriped() throws Exception {
+		boolean threadSafeStriped = true;
+		assertEquals(threadSafeStriped, new ArgumentsBuilder()
+				.threadsafeStriped(threadSafeStriped).build()
+				.isThreadsafeStriped());
+	}
+
+	@Test
+	public void testDoubleBuffered() throws Exception {
+		boolean doubleBuffered = true;
+		assertEquals(doubleBuffered, new ArgumentsBuilder().doubleBuffered(
+				doubleBuffered).build().isDoubleBuffered());
+	}
+
+	@Test
+	public void testMappedCounters() throws Exception {
+		boolean mappedCounters = true;
+		assertEquals(mappedCounters, new ArgumentsBuilder().mappedCounters(
+				mappedCounters).build().isMappedCounters());
+	}
+
+	@Test
+	public void testLazyCounters() throws Exception {
+		boolean lazyCounters = true;
+		assertEquals(lazyCounters, new ArgumentsBuilder().lazyCounters(
+				lazyCounters).build().isLazyCounters());
+	}
+
+	@Test
+	public void testHitsOnly() throws Exception {
+		boolean hitsOnly = true;
+		assertEquals(hitsOnly, new ArgumentsBuilder().hitsOnly(hitsOnly)
+				.build().isHitsOnly());
+	}
+
+	@Test
+	public void testMinimizeProbes() throws Exception {
+		boolean minimizeProbes = true;
+		assertEquals(minimizeProbes, new ArgumentsBuilder().minimizeProbes(minimizeProbes)
+				.build().isMinimizeProbes());
+	}
+
+	@Test
+	public void testSetCacheDirectory() throws Exception {
+		String cacheDirectory = "cacheDirectory";
+		assertEquals(new File(cacheDirectory), new ArgumentsBuilder()
+				.setCacheDirectory(cacheDirectory).build().getCacheDirectory());
+	}
+
+	@Test
+	public void testCacheMaxSize() throws Exception {
+		long cacheMaxSize = 1024;
+		assertEquals(cacheMaxSize, new ArgumentsBuilder().cacheMaxSize(
+				cacheMaxSize).build().getCacheMaxSize());
+	}
+
+	@Test
+	public void testThreads() throws Exception {
+		int threads = 4;
+		assertEquals(threads, new ArgumentsBuilder().threads(threads).build()
+				.getThreads());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNoThreads() throws Exception {
+		new ArgumentsBuilder().threads(0);
+	}
+
+	@Test
+	public void testSetVerifyMode() throws Exception {
+		assertEquals(ClassVerifier.Mode.FAILURES, new ArgumentsBuilder()
+				.setVerifyMode("failures").build().getVerifyMode());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetInvalidVerifyMode() throws Exception {
+		new ArgumentsBuilder().setVerifyMode("sometimes");
+	}
+
+	@Test
+	public void testSetVerifySampleRate() throws Exception {
+		double verifySampleRate = 0.5;
+		assertEquals(verifySampleRate, new ArgumentsBuilder()
+				.setVerifySampleRate(verifySampleRate).build()
+				.getVerifySampleRate(), DELTA);
+	}
+
 	@Test
 	public void testSetFormat() throws Exception {
 		boolean failOnError = true;
@@ -346,6 +435,27 @@ public class ArgumentsBuilderTest {
 				.isIgnoreTrivial());
 		assertEquals(ArgumentsBuilder.DEFAULT_THREADSAFE_RIGOROUS, defaultArgs
 				.isThreadsafeRigorous());
+		assertEquals(ArgumentsBuilder.DEFAULT_THREADSAFE_STRIPED, defaultArgs
+				.isThreadsafeStriped());
+		assertEquals(ArgumentsBuilder.DEFAULT_DOUBLE_BUFFERED, defaultArgs
+				.isDoubleBuffered());
+		assertEquals(ArgumentsBuilder.DEFAULT_MAPPED_COUNTERS, defaultArgs
+				.isMappedCounters());
+		assertEquals(ArgumentsBuilder.DEFAULT_LAZY_COUNTERS, defaultArgs
+				.isLazyCounters());
+		assertEquals(ArgumentsBuilder.DEFAULT_HITS_ONLY, defaultArgs
+				.isHitsOnly());
+		assertEquals(ArgumentsBuilder.DEFAULT_MINIMIZE_PROBES, defaultArgs
+				.isMinimizeProbes());
+		assertNull(defaultArgs.getCacheDirectory());
+		assertEquals(ArgumentsBuilder.DEFAULT_CACHE_MAX_SIZE, defaultArgs
+				.getCacheMaxSize());
+		assertEquals(ArgumentsBuilder.DEFAULT_THREADS, defaultArgs
+				.getThreads());
+		assertEquals(ArgumentsBuilder.DEFAULT_VERIFY_MODE, defaultArgs
+				.getVerifyMode());
+		assertEquals(ArgumentsBuilder.DEFAULT_VERIFY_SAMPLE_RATE, defaultArgs
+				.getVerifySampleRate(), DELTA);
 		assertEquals(ArgumentsBuilder.DEFAULT_ENCODING, defaultArgs
 				.getEncoding());
 	}
@@ -1,6 +1,7 @@
 package net.sourceforge.cobertura.dsl;
 
 import net.sourceforge.cobertura.check.CoverageThreshold;
+import net.sourceforge.cobertura.instrument.ClassVerifier;
 import net.sourceforge.cobertura.instrument.CoberturaFile;
 import net.sourceforge.cobertura.util.FileFinder;
 import net.sourceforge.cobertura.util.RegexUtil;
@@ -33,6 +34,17 @@ public class ArgumentsTest {
 	private static final boolean FAIL_ON_ERROR = false;
 	private static final boolean IGNORE_TRIVIAL = true;
 	private static final boolean THREADSAFE_RIGOROUS = true;
+	private static final boolean THREADSAFE_STRIPED = true;
+	private static final boolean DOUBLE_BUFFERED = true;
+	private static final boolean MAPPED_COUNTERS = true;
+	private static final boolean LAZY_COUNTERS = true;
+	private static final boolean HITS_ONLY = true;
+	private static final boolean MINIMIZE_PROBES = true;
+	private static final File CACHE_DIRECTORY = new File("cacheDirectory");
+	private static final long CACHE_MAX_SIZE = 1024;
+	private static final int THREADS = 4;
+	private static final ClassVerifier.Mode VERIFY_MODE = ClassVerifier.Mode.SAMPLE;
+	private static final double VERIFY_SAMPLE_RATE = 0.25;
 	private static final String ENCODING = "UTF-8";
 	private static final String IGNORE_REGEX_PATTERN = "ignoreRegexPattern";
 	private static final String IGNORE_BRANCHES_REGEXES = "ignoreBranchesRegexes";
@@ -81,7 +93,11 @@ public class ArgumentsTest {
 				ignoreBranchesRegexes, classPatternIncludeClassesRegexes,
 				classPatternExcludeClassesRegexes,
 				CALCULATE_METHOD_COMPLEXITY, FAIL_ON_ERROR,
-				IGNORE_TRIVIAL, THREADSAFE_RIGOROUS, ENCODING,
+				IGNORE_TRIVIAL, THREADSAFE_RIGOROUS, THREADSAFE_STRIPED,
+				DOUBLE_BUFFERED, MAPPED_COUNTERS, LAZY_COUNTERS, HITS_ONLY,
+				MINIMIZE_PROBES,
+				CACHE_DIRECTORY, CACHE_MAX_SIZE,
+				THREADS, VERIFY_MODE, VERIFY_SAMPLE_RATE, ENCODING,
 				minimumCoverageThresholds, CLASS_LINE_THRESHOLD,
 				CLASS_BRANCH_THRESHOLD, PACKAGE_LINE_THRESHOLD,
 				PACKAGE_BRANCH_THRESHOLD, TOTAL_LINE_THRESHOLD,
@@ -154,6 +170,62 @@ public class ArgumentsTest {
 		assertEquals(THREADSAFE_RIGOROUS, arguments.isThreadsafeRigorous());
 	}
 
+	@Test
+	public void testIsThreadsafeStriped() throws Exception {
+		assertEquals(THREADSAFE_STRIPED, arguments.isThreadsafeStriped());
+	}
+
+	@Test
+	public void testIsDoubleBuffered() throws Exception {
+		assertEquals(DOUBLE_BUFFERED, arguments.isDoubleBuffered());
+	}
+
+	@Test
+	public void testIsMappedCounters() throws Exception {
+		assertEquals(MAPPED_COUNTERS, arguments.isMappedCounters());
+	}
+
+	@Test
+	public void testIsLazyCounters() throws Exception {
+		assertEquals(LAZY_COUNTERS, arguments.isLazyCounters());
+	}
+
+	@Test
+	public void testIsHitsOnly() throws Exception {
+		assertEquals(HITS_ONLY, arguments.isHitsOnly());
+	}
+
+	@Test
+	public void testIsMinimizeProbes() throws Exception {
+		assertEquals(MINIMIZE_PROBES, arguments.isMinimizeProbes());
+	}
+
+	@Test
+	public void testGetCacheDirectory() throws Exception {
+		assertEquals(CACHE_DIRECTORY, arguments.getCacheDirectory());
+	}
+
+	@Test
+	public void testGetCacheMaxSize() throws Exception {
+		assertEquals(CACHE_MAX_SIZE, arguments.getCacheMaxSize());
+	}
+
+	@Test
+	public void testGetThreads() throws Exception {
+		assertEquals(THREADS, arguments.getThreads());
+	}
+
+	@Test
+	public void testGetVerifyMode() throws Exception {
+		assertEquals(VERIFY_MODE, arguments.getVerifyMode());
+	}
+
+	@Test
+	public void testGetVerifySampleRate() throws Exception {
+		assertEquals(VERIFY_SAMPLE_RATE, arguments.getVerifySampleRate(),
+				DELTA);
+	}
+
 	@Test
 	public void testGetEncoding() throws Exception {
 		assertEquals(ENCODING, arguments.getEncoding());
@@ -0,0 +1,128 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.test.util.TestUtils;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ClassHierarchyResolverTest {
+
+	@Test
+	public void commonSuperClassOfJdkClasses() {
+		ClassHierarchyResolver resolver = new ClassHierarchyResolver();
+		assertEquals("java/util/AbstractList", resolver.getCommonSuperClass(
+				"java/util/ArrayList", "java/util/Vector", null));
+		assertEquals("java/util/AbstractList", resolver.getCommonSuperClass(
+				"java/util/AbstractList", "java/util/ArrayList", null));
+		assertEquals("java/util/List", resolver.getCommonSuperClass(
+				"java/util/List", "java/util/ArrayList", null));
+		assertEquals("java/lang/Object", resolver.getCommonSuperClass(
+				"java/util/List", "java/util/Set", null));
+		assertEquals("java/lang/Object", resolver.getCommonSuperClass(
+				"java/lang/String", "java/lang/Integer", null));
+	}
+
+	@Test
+	public void registeredClassesAreUsed() {
+		ClassHierarchyResolver resolver = new ClassHierarchyResolver();
+		resolver.addClass("test/A", "java/lang/Exception", null, false);
+		resolver.addClass("test/B", "test/A", null, false);
+		resolver.addClass("test/C", "java/lang/RuntimeException", null, false);
+		assertEquals("test/A", resolver.getCommonSuperClass("test/B",
+				"test/A", null));
+		assertEquals("java/lang/Exception", resolver.getCommonSuperClass(
+				"test/B", "test/C", null));
+	}
+
+	@Test
+	public void classFilesAreReadFromClasspathEntries() throws Exception {
+		File dir = new File(TestUtils.getTempDir(), "hierarchy");
+		File classFile = new File(dir, "test/hierarchy/Sub.class");
+		classFile.getParentFile().mkdirs();
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, "test/hierarchy/Sub", null,
+				"java/io/FileNotFoundException", null);
+		cw.visitEnd();
+		FileOutputStream os = new FileOutputStream(classFile);
+		try {
+			os.write(cw.toByteArray());
+		} finally {
+			os.close();
+		}
+
+		ClassHierarchyResolver resolver = new ClassHierarchyResolver();
+		resolver.addClasspathEntry(dir);
+		assertEquals("java/io/IOException", resolver.getCommonSuperClass(
+				"test/hierarchy/Sub", "java/net/SocketException", null));
+	}
+
+	/**
+	 * The archive must not stay open after the lookup, otherwise the instrumented archive
+	 * cannot replace it on Windows.
+	 */
+	@Test
+	public void archivesAreClosedAfterReading() throws Exception {
+		File archive = new File(TestUtils.getTempDir(), "hierarchy.jar");
+		archive.getParentFile().mkdirs();
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, "test/hierarchy/Zipped",
+				null, "java/io/FileNotFoundException", null);
+		cw.visitEnd();
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			zos.putNextEntry(new ZipEntry("test/hierarchy/Zipped.class"));
+			zos.write(cw.toByteArray());
+		} finally {
+			zos.close();
+		}
+
+		ClassHierarchyResolver resolver = new ClassHierarchyResolver();
+		resolver.addClasspathEntry(archive);
+		assertEquals("java/io/IOException", resolver.getCommonSuperClass(
+				"test/hierarchy/Zipped", "java/net/SocketException", null));
+
+		File[] descriptors = new File("/proc/self/fd").listFiles();
+		if (descriptors != null) {
+			for (File descriptor : descriptors) {
+				assertFalse(archive.getCanonicalFile().equals(
+						descriptor.getCanonicalFile()));
+			}
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void unknownClassIsReported() {
+		new ClassHierarchyResolver().getCommonSuperClass("test/Unknown",
+				"java/lang/String", null);
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.coveragedata.TouchCollector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures how fast instrumented classes are initialized (and so registered in {@link TouchCollector}) when
+ * many threads load classes at once. Every thread uses its own class loader, so the threads only contend
+ * in the registration itself. Some of the classes are Java 1.4 class files, that register by class name.
+ */
+public class ClassRegistrationThroughputTest {
+	private static final int THREADS = 8;
+
+	private static final int CLASSES_PER_THREAD = 500;
+
+	private final Logger logger = (Logger) LoggerFactory
+			.getLogger("net.sourceforge.cobertura");
+
+	private Level level;
+
+	@Before
+	public void setUp() {
+		level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+	}
+
+	@After
+	public void tearDown() {
+		logger.setLevel(level);
+	}
+
+	@Test
+	public void concurrentRegistration() throws Exception {
+		CoberturaInstrumenter coberturaInstrumenter = new CoberturaInstrumenter();
+		coberturaInstrumenter.setProjectData(new ProjectData());
+		final BytesClassLoader[] loaders = new BytesClassLoader[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			loaders[t] = new BytesClassLoader();
+			for (int i = 0; i < CLASSES_PER_THREAD; i++) {
+				String name = "test/registration/Class" + t + "_" + i;
+				byte[] bytes = generateClass(name, i % 10 == 0
+						? Opcodes.V1_4
+						: Opcodes.V1_5);
+				loaders[t].classes.put(name.replace('/', '.'),
+						coberturaInstrumenter.instrumentClass(
+								new ByteArrayInputStream(bytes)).getContent());
+			}
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final BytesClassLoader loader = loaders[t];
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (String name : loader.classes.keySet()) {
+							Class.forName(name, true, loader);
+						}
+					} catch (Throwable t) {
+						failure.set(t);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long time = System.nanoTime() - begin;
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+
+		int loaded = THREADS * CLASSES_PER_THREAD;
+		System.out.println(String.format(
+				"Registered %d classes loaded by %d threads in %d ms: %.0f classes/s",
+				loaded, THREADS, time / 1000000, loaded * 1e9 / time));
+
+		ProjectData projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		for (int t = 0; t < THREADS; t++) {
+			assertNotNull(projectData.getClassData("test.registration.Class"
+					+ t + "_0"));
+			assertNotNull(projectData.getClassData("test.registration.Class"
+					+ t + "_1"));
+		}
+	}
+
+	private static byte[] generateClass(String name, int version) {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(version, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object",
+				null);
+		cw.visitSource("Registration.java", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+		mv.visitCode();
+		Label line = new Label();
+		mv.visitLabel(line);
+		mv.visitLineNumber(1, line);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(1, 1);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static class BytesClassLoader extends ClassLoader {
+		final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+
+		BytesClassLoader() {
+			super(ClassRegistrationThroughputTest.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+			if (bytes == null) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class ClassVerifierTest {
+
+	@Test
+	public void instrumentedClassIsVerified() throws Exception {
+		ClassVerifier classVerifier = new ClassVerifier(ClassVerifier.Mode.ALL,
+				0);
+		CoberturaInstrumenter coberturaInstrumenter = new CoberturaInstrumenter();
+		coberturaInstrumenter.setProjectData(new ProjectData());
+		coberturaInstrumenter.setClassVerifier(classVerifier);
+		InputStream is = getClass().getResourceAsStream(
+				"/test/performance/Test1.class");
+		try {
+			assertNotNull(coberturaInstrumenter.instrumentClass(is));
+		} finally {
+			is.close();
+		}
+		assertEquals(1, classVerifier.getVerifiedClasses());
+		assertEquals(0, classVerifier.getInvalidClasses());
+	}
+
+	@Test
+	public void invalidClassIsReported() {
+		ClassWriter cw = new ClassWriter(0);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, "test/Invalid", null,
+				"java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "invalid", "()I", null, null);
+		mv.visitCode();
+		// returns an object from a method returning int
+		mv.visitLdcInsn("invalid");
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(1, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+
+		ClassVerifier classVerifier = new ClassVerifier(ClassVerifier.Mode.ALL,
+				0);
+		assertFalse(classVerifier.verify("test.Invalid", cw.toByteArray(),
+				null));
+		assertEquals(1, classVerifier.getVerifiedClasses());
+		assertEquals(1, classVerifier.getInvalidClasses());
+	}
+
+	@Test
+	public void sampledClassesAreChosenByName() {
+		ClassVerifier none = new ClassVerifier(ClassVerifier.Mode.SAMPLE, 0);
+		ClassVerifier all = new ClassVerifier(ClassVerifier.Mode.SAMPLE, 1);
+		ClassVerifier half = new ClassVerifier(ClassVerifier.Mode.SAMPLE, 0.5);
+		int sampled = 0;
+		for (int i = 0; i < 1000; i++) {
+			String className = "test.Class" + i;
+			assertFalse(none.shouldVerify(className));
+			assertTrue(all.shouldVerify(className));
+			assertEquals(half.shouldVerify(className), half
+					.shouldVerify(className));
+			if (half.shouldVerify(className)) {
+				sampled++;
+			}
+		}
+		assertTrue(String.valueOf(sampled), sampled > 300 && sampled < 700);
+	}
+
+	@Test
+	public void failuresModeDoesNotVerify() {
+		ClassVerifier classVerifier = new ClassVerifier(
+				ClassVerifier.Mode.FAILURES, 1);
+		assertFalse(classVerifier.shouldVerify("test.Class"));
+		assertTrue(classVerifier.shouldCheckFailures());
+	}
+}
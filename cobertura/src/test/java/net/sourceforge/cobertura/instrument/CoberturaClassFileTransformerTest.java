@@ -0,0 +1,67 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.dsl.ArgumentsBuilder;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CoberturaClassFileTransformerTest {
+	private final CoberturaClassFileTransformer transformer = new CoberturaClassFileTransformer(
+			new ArgumentsBuilder().build());
+
+	/**
+	 * Class loaders may define different classes with the same name, so they don't share the cached class headers.
+	 */
+	@Test
+	public void classHierarchyResolverPerClassLoader() {
+		ClassLoader first = new ClassLoader() {
+		};
+		ClassLoader second = new ClassLoader() {
+		};
+		assertSame(transformer.getClassHierarchyResolver(first), transformer
+				.getClassHierarchyResolver(first));
+		assertNotSame(transformer.getClassHierarchyResolver(first),
+				transformer.getClassHierarchyResolver(second));
+	}
+
+	@Test
+	public void classLoaderIsNotPinned() throws Exception {
+		WeakReference<ClassLoader> loader = new WeakReference<ClassLoader>(
+				createResolvedClassLoader());
+		for (int i = 0; i < 100 && loader.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull("The class loader has not been collected", loader.get());
+	}
+
+	private ClassLoader createResolvedClassLoader() {
+		ClassLoader loader = new ClassLoader() {
+		};
+		transformer.getClassHierarchyResolver(loader).getCommonSuperClass(
+				"java/lang/Integer", "java/lang/Long", loader);
+		return loader;
+	}
+}
@@ -25,9 +25,32 @@
 
 package net.sourceforge.cobertura.instrument;
 
+import net.sourceforge.cobertura.coveragedata.CountersFile;
+import net.sourceforge.cobertura.coveragedata.DoubleBufferedCounters;
+import net.sourceforge.cobertura.coveragedata.MappedCounters;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.coveragedata.TouchCollector;
+import net.sourceforge.cobertura.instrument.pass3.CodeProvider;
 import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 
 import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class CoberturaInstrumenterTest {
 	private final CoberturaInstrumenter coberturaInstrumenter = new CoberturaInstrumenter();
@@ -39,4 +62,231 @@ public class CoberturaInstrumenterTest {
 		coberturaInstrumenter.addInstrumentationToSingleClass(new File(
 				"test/net/sourceforge/cobertura/instrument/notExisting.class"));
 	}
+
+	/**
+	 * The cache key has to change with the generated code even if the version of Cobertura does not.
+	 */
+	@Test
+	public void optionsFingerprintIdentifiesGeneratedCode() {
+		String fingerprint = coberturaInstrumenter.getOptionsFingerprint();
+		assertTrue(fingerprint.contains(";code="
+				+ CoberturaInstrumenter.CODE_VERSION));
+		assertTrue(fingerprint.contains("FastArrayCodeProvider"));
+
+		coberturaInstrumenter.setLazyCounters(true);
+		assertTrue(coberturaInstrumenter.getOptionsFingerprint().contains(
+				"LazyArrayCodeProvider"));
+	}
+
+	/**
+	 * Instrumented methods should read the counters field once and then use the cached local variable.
+	 */
+	@Test
+	public void countersFieldIsReadOncePerMethod() throws Exception {
+		coberturaInstrumenter.setProjectData(new ProjectData());
+		InputStream is = getClass().getResourceAsStream(
+				"/test/performance/Test1.class");
+		byte[] instrumented;
+		try {
+			instrumented = coberturaInstrumenter.instrumentClass(is)
+					.getContent();
+		} finally {
+			is.close();
+		}
+
+		final Map<String, Integer> reads = new HashMap<String, Integer>();
+		new ClassReader(instrumented).accept(new ClassVisitor(Opcodes.ASM4) {
+			@Override
+			public MethodVisitor visitMethod(int access, final String name,
+					String desc, String signature, String[] exceptions) {
+				if (name.startsWith("__cobertura") || "<clinit>".equals(name)) {
+					// generated by cobertura
+					return null;
+				}
+				reads.put(name, 0);
+				return new MethodVisitor(Opcodes.ASM4) {
+					@Override
+					public void visitFieldInsn(int opcode, String owner,
+							String fieldName, String desc) {
+						if (CodeProvider.COBERTURA_COUNTERS_FIELD_NAME
+								.equals(fieldName)) {
+							reads.put(name, reads.get(name) + 1);
+						}
+					}
+				};
+			}
+		}, 0);
+
+		assertTrue(reads.containsKey("do_switch"));
+		for (Map.Entry<String, Integer> entry : reads.entrySet()) {
+			assertEquals(entry.getKey(), 1, (int) entry.getValue());
+		}
+	}
+
+	/**
+	 * Classes instrumented with double buffered counters store them in {@link DoubleBufferedCounters}.
+	 */
+	@Test
+	public void doubleBufferedCounters() throws Exception {
+		coberturaInstrumenter.setProjectData(new ProjectData());
+		coberturaInstrumenter.setDoubleBuffered(true);
+		InputStream is = getClass().getResourceAsStream(
+				"/test/performance/Test1.class");
+		final byte[] instrumented;
+		try {
+			instrumented = coberturaInstrumenter.instrumentClass(is)
+					.getContent();
+		} finally {
+			is.close();
+		}
+
+		Class<?> clazz = new ClassLoader(getClass().getClassLoader()) {
+			Class<?> define() {
+				return defineClass("test.performance.Test1", instrumented, 0,
+						instrumented.length);
+			}
+		}.define();
+		Object counters = clazz.getField(
+				CodeProvider.COBERTURA_COUNTERS_FIELD_NAME).get(null);
+		assertTrue(counters instanceof DoubleBufferedCounters);
+	}
+
+	/**
+	 * Classes instrumented with mapped counters allocate them in the counters file. The class is described in the
+	 * file in the background, after its static initializer has finished.
+	 */
+	@Test
+	public void mappedCounters() throws Exception {
+		File countersFile = File.createTempFile("cobertura", ".counters");
+		countersFile.delete();
+		System.setProperty("net.sourceforge.cobertura.countersFile",
+				countersFile.getAbsolutePath());
+		try {
+			coberturaInstrumenter.setProjectData(new ProjectData());
+			coberturaInstrumenter.setMappedCounters(true);
+			InputStream is = getClass().getResourceAsStream(
+					"/test/performance/Test1.class");
+			final byte[] instrumented;
+			try {
+				instrumented = coberturaInstrumenter.instrumentClass(is)
+						.getContent();
+			} finally {
+				is.close();
+			}
+
+			Class<?> clazz = new ClassLoader(getClass().getClassLoader()) {
+				Class<?> define() {
+					return defineClass("test.performance.Test1", instrumented,
+							0, instrumented.length);
+				}
+			}.define();
+			Object counters = clazz.getField(
+					CodeProvider.COBERTURA_COUNTERS_FIELD_NAME).get(null);
+			assertTrue(counters instanceof MappedCounters);
+			assertTrue(((MappedCounters) counters).isMapped());
+
+			for (int i = 0; i < 500
+					&& !((MappedCounters) counters).isDescribed(); i++) {
+				Thread.sleep(10);
+			}
+			ProjectData projectData = new ProjectData();
+			CountersFile.fold(countersFile, projectData);
+			assertNotNull(projectData.getClassData("test.performance.Test1"));
+		} finally {
+			System.clearProperty("net.sourceforge.cobertura.countersFile");
+			countersFile.delete();
+		}
+	}
+
+	/**
+	 * Classes instrumented with lazy counters allocate them when their instrumented code runs for the first time.
+	 */
+	@Test
+	public void lazyCounters() throws Exception {
+		coberturaInstrumenter.setProjectData(new ProjectData());
+		coberturaInstrumenter.setLazyCounters(true);
+		InputStream is = getClass().getResourceAsStream(
+				"/test/performance/Test1.class");
+		final byte[] instrumented;
+		try {
+			instrumented = coberturaInstrumenter.instrumentClass(is)
+					.getContent();
+		} finally {
+			is.close();
+		}
+
+		Class<?> clazz = new ClassLoader(getClass().getClassLoader()) {
+			Class<?> define() {
+				return defineClass("test.performance.Test1", instrumented, 0,
+						instrumented.length);
+			}
+		}.define();
+		Class.forName(clazz.getName(), true, clazz.getClassLoader());
+		Field countersField = clazz
+				.getField(CodeProvider.COBERTURA_COUNTERS_FIELD_NAME);
+		assertNull(countersField.get(null));
+
+		// The allocation doesn't lock the class, the application may use it as a monitor.
+		Method init = clazz
+				.getMethod(CodeProvider.COBERTURA_INIT_METHOD_NAME);
+		assertFalse(Modifier.isSynchronized(init.getModifiers()));
+
+		clazz.getMethod("someMethod").invoke(null);
+		Object counters = countersField.get(null);
+		assertTrue(counters instanceof int[]);
+
+		// The counters are allocated only once.
+		init.invoke(null);
+		assertSame(counters, countersField.get(null));
+		assertSame(counters, TouchCollector.allocateCounters(clazz,
+				((int[]) counters).length));
+	}
+
+	/**
+	 * With minimized probes the lines inferred from the other lines of their basic block don't get any probe.
+	 */
+	@Test
+	public void minimizedProbesAreFewer() throws Exception {
+		int probes = countProbes(false);
+		int minimizedProbes = countProbes(true);
+		assertTrue(minimizedProbes + " < " + probes, minimizedProbes < probes);
+	}
+
+	/**
+	 * Counts the increments of counters (IASTORE instructions) in the methods of the instrumented class.
+	 */
+	private int countProbes(boolean minimizeProbes) throws Exception {
+		coberturaInstrumenter.setProjectData(new ProjectData());
+		coberturaInstrumenter.setMinimizeProbes(minimizeProbes);
+		InputStream is = getClass().getResourceAsStream(
+				"/test/performance/Test1.class");
+		byte[] instrumented;
+		try {
+			instrumented = coberturaInstrumenter.instrumentClass(is)
+					.getContent();
+		} finally {
+			is.close();
+		}
+
+		final int[] probes = new int[1];
+		new ClassReader(instrumented).accept(new ClassVisitor(Opcodes.ASM4) {
+			@Override
+			public MethodVisitor visitMethod(int access, final String name,
+					String desc, String signature, String[] exceptions) {
+				if (name.startsWith("__cobertura") || "<clinit>".equals(name)) {
+					// generated by cobertura
+					return null;
+				}
+				return new MethodVisitor(Opcodes.ASM4) {
+					@Override
+					public void visitInsn(int opcode) {
+						if (opcode == Opcodes.IASTORE) {
+							probes[0]++;
+						}
+					}
+				};
+			}
+		}, 0);
+		return probes[0];
+	}
 }
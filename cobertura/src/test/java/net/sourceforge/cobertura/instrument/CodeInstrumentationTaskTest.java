@@ -0,0 +1,156 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.dsl.ArgumentsBuilder;
+import net.sourceforge.cobertura.util.IOUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class CodeInstrumentationTaskTest {
+	private final static String basedir = (System.getProperty("basedir") != null)
+			? System.getProperty("basedir")
+			: "./";
+	private final static File tmpDir = new File(basedir,
+			"/target/build/test/codeInstrumentationTask");
+
+	private static final String[] ENTRIES = {"readme.txt",
+			"test/performance/Test1.class",
+			"test/condition/ConditionCalls.class", "other.txt",
+			"net/sourceforge/cobertura/util/IOUtil.class",
+			"net/sourceforge/cobertura/util/StringUtil.class",
+			"net/sourceforge/cobertura/util/FileFinder.class",
+			"net/sourceforge/cobertura/util/Header.class", "last.txt"};
+
+	@Before
+	public void setUp() {
+		removeDir(tmpDir);
+		tmpDir.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		removeDir(tmpDir);
+	}
+
+	/**
+	 * Classes of an archive instrumented by many threads keep their order and are all registered in the project data.
+	 */
+	@Test
+	public void archiveIsInstrumentedByManyThreads() throws Throwable {
+		File archive = new File(tmpDir, "classes.jar");
+		createArchive(archive);
+		File destination = new File(tmpDir, "instrumented");
+		destination.mkdirs();
+
+		ProjectData projectData = new ProjectData();
+		new CodeInstrumentationTask().instrument(new ArgumentsBuilder()
+				.setBaseDirectory(tmpDir.getAbsolutePath()).addFileToInstrument(
+						"classes.jar").setDestinationDirectory(
+						destination.getAbsolutePath()).setDataFile(
+						new File(tmpDir, "cobertura.ser").getAbsolutePath())
+				.threads(4).build(), projectData);
+
+		List<String> names = new ArrayList<String>();
+		ZipInputStream zis = new ZipInputStream(new FileInputStream(new File(
+				destination, "classes.jar")));
+		try {
+			ZipEntry entry;
+			while ((entry = zis.getNextEntry()) != null) {
+				names.add(entry.getName());
+				byte[] bytes = IOUtil.createByteArrayFromInputStream(zis);
+				if (entry.getName().endsWith(".class")) {
+					assertFalse(entry.getName(), Arrays.equals(
+							readResource(entry.getName()), bytes));
+				} else {
+					assertArrayEquals(entry.getName().getBytes(), bytes);
+				}
+			}
+		} finally {
+			zis.close();
+		}
+		assertEquals(Arrays.asList(ENTRIES), names);
+
+		for (String name : ENTRIES) {
+			if (name.endsWith(".class")) {
+				String className = name.substring(0, name.length() - 6)
+						.replace('/', '.');
+				assertNotNull(className, projectData.getClassData(className));
+			}
+		}
+	}
+
+	private void createArchive(File archive) throws Exception {
+		ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive));
+		try {
+			for (String name : ENTRIES) {
+				zos.putNextEntry(new ZipEntry(name));
+				zos.write(name.endsWith(".class")
+						? readResource(name)
+						: name.getBytes());
+				zos.closeEntry();
+			}
+		} finally {
+			zos.close();
+		}
+	}
+
+	private byte[] readResource(String name) throws Exception {
+		InputStream is = getClass().getResourceAsStream("/" + name);
+		try {
+			return IOUtil.createByteArrayFromInputStream(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	private static void removeDir(File dir) {
+		File files[] = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					removeDir(file);
+				} else {
+					file.delete();
+				}
+			}
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.util.IOUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class InstrumentationCacheTest {
+	private final static String basedir = (System.getProperty("basedir") != null)
+			? System.getProperty("basedir")
+			: "./";
+	private final static File cacheDir = new File(basedir,
+			"/target/build/test/instrumentationCache");
+
+	private byte[] classBytes;
+
+	@Before
+	public void setUp() throws Exception {
+		removeDir(cacheDir);
+		InputStream is = getClass().getResourceAsStream(
+				"/test/performance/Test1.class");
+		try {
+			classBytes = IOUtil.createByteArrayFromInputStream(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		removeDir(cacheDir);
+	}
+
+	@Test
+	public void entryIsStoredAndRead() {
+		InstrumentationCache cache = new InstrumentationCache(cacheDir,
+				1024 * 1024);
+		String key = cache.getKey("options", classBytes);
+		assertNull(cache.get(key));
+
+		ClassData classData = new ClassData("test.performance.Test1");
+		classData.setSourceFileName("test/performance/Test1.java");
+		classData.addLine(10, "method", "()V");
+		cache.put(key, "test.performance.Test1", new byte[]{1, 2, 3},
+				classData);
+
+		InstrumentationCache.Entry entry = new InstrumentationCache(cacheDir,
+				1024 * 1024).get(key);
+		assertNotNull(entry);
+		assertEquals("test.performance.Test1", entry.getClassName());
+		assertArrayEquals(new byte[]{1, 2, 3}, entry.getContent());
+		assertEquals(classData, entry.getClassData());
+		assertNotNull(entry.getClassData().getLineData(10));
+	}
+
+	@Test
+	public void keyDependsOnOptions() {
+		InstrumentationCache cache = new InstrumentationCache(cacheDir,
+				1024 * 1024);
+		assertEquals(cache.getKey("options", classBytes), cache.getKey(
+				"options", classBytes));
+		assertFalse(cache.getKey("options", classBytes).equals(
+				cache.getKey("otherOptions", classBytes)));
+	}
+
+	/**
+	 * Second instrumentation of the same class gets the same bytes and the same touch-points from the cache.
+	 */
+	@Test
+	public void cachedClassIsInstrumentedOnce() throws Exception {
+		InstrumentationCache cache = new InstrumentationCache(cacheDir,
+				1024 * 1024);
+		ProjectData projectData = new ProjectData();
+		byte[] instrumented = instrument(cache, projectData);
+		assertEquals(1, cacheDir.list().length);
+
+		ProjectData cachedProjectData = new ProjectData();
+		assertArrayEquals(instrumented, instrument(cache, cachedProjectData));
+		assertEquals(1, cacheDir.list().length);
+
+		ClassData classData = projectData
+				.getClassData("test.performance.Test1");
+		ClassData cachedClassData = cachedProjectData
+				.getClassData("test.performance.Test1");
+		assertNotNull(cachedClassData);
+		assertTrue(cachedClassData.containsInstrumentationInfo());
+		assertEquals(classData.getNumberOfValidLines(), cachedClassData
+				.getNumberOfValidLines());
+		assertEquals(classData.getNumberOfValidBranches(), cachedClassData
+				.getNumberOfValidBranches());
+		assertEquals(classData.getSourceFileName(), cachedClassData
+				.getSourceFileName());
+	}
+
+	@Test
+	public void leastRecentlyUsedEntriesAreEvicted() throws Exception {
+		InstrumentationCache cache = new InstrumentationCache(cacheDir,
+				1024 * 1024);
+		String oldKey = cache.getKey("old", classBytes);
+		String newKey = cache.getKey("new", classBytes);
+		cache.put(oldKey, "test.performance.Test1", classBytes, new ClassData(
+				"test.performance.Test1"));
+		cache.put(newKey, "test.performance.Test1", classBytes, new ClassData(
+				"test.performance.Test1"));
+		File[] entries = cacheDir.listFiles();
+		assertEquals(2, entries.length);
+		long entrySize = entries[0].length();
+		long now = System.currentTimeMillis();
+		for (File entry : entries) {
+			entry.setLastModified(entry.getName().startsWith(oldKey)
+					? now - 60000
+					: now);
+		}
+
+		// Space for less than three entries, so the third one evicts the least recently used one.
+		cache = new InstrumentationCache(cacheDir, entrySize * 11 / 4);
+		cache.put(cache.getKey("newest", classBytes), "test.performance.Test1",
+				classBytes, new ClassData("test.performance.Test1"));
+
+		assertNull(cache.get(oldKey));
+		assertNotNull(cache.get(newKey));
+		assertEquals(2, cacheDir.list().length);
+	}
+
+	/**
+	 * An entry stored again for the same key replaces the previous one, so it is not counted twice.
+	 */
+	@Test
+	public void replacedEntriesAreNotCountedTwice() throws Exception {
+		InstrumentationCache cache = new InstrumentationCache(cacheDir,
+				1024 * 1024);
+		String key = cache.getKey("replaced", classBytes);
+		cache.put(key, "test.performance.Test1", classBytes, new ClassData(
+				"test.performance.Test1"));
+		long entrySize = cacheDir.listFiles()[0].length();
+
+		// Space for less than three entries.
+		cache = new InstrumentationCache(cacheDir, entrySize * 10 / 4);
+		cache.put(key, "test.performance.Test1", classBytes, new ClassData(
+				"test.performance.Test1"));
+		cache.put(cache.getKey("other", classBytes), "test.performance.Test1",
+				classBytes, new ClassData("test.performance.Test1"));
+
+		assertNotNull(cache.get(key));
+		assertEquals(2, cacheDir.list().length);
+	}
+
+	private byte[] instrument(InstrumentationCache cache,
+			ProjectData projectData) throws Exception {
+		CoberturaInstrumenter coberturaInstrumenter = new CoberturaInstrumenter();
+		coberturaInstrumenter.setProjectData(projectData);
+		coberturaInstrumenter.setInstrumentationCache(cache);
+		InputStream is = getClass().getResourceAsStream(
+				"/test/performance/Test1.class");
+		try {
+			return coberturaInstrumenter.instrumentClass(is).getContent();
+		} finally {
+			is.close();
+		}
+	}
+
+	private static void removeDir(File dir) {
+		File files[] = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					removeDir(file);
+				} else {
+					file.delete();
+				}
+			}
+		}
+		dir.delete();
+	}
+}
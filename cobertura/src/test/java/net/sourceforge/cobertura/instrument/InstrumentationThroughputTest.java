@@ -0,0 +1,120 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.test.util.TestUtils;
+import net.sourceforge.cobertura.util.IOUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how many classes per second {@link CoberturaInstrumenter} instruments. The classes of Cobertura
+ * itself are instrumented in memory, a few times to warm up the JIT first. Debug logging is switched off,
+ * so it does not dominate the measurement.
+ */
+public class InstrumentationThroughputTest {
+	private static final int WARMUP_ROUNDS = 3;
+
+	private static final int MEASURED_ROUNDS = 5;
+
+	private final Logger logger = (Logger) LoggerFactory
+			.getLogger("net.sourceforge.cobertura");
+
+	private Level level;
+
+	@Before
+	public void setUp() {
+		level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+	}
+
+	@After
+	public void tearDown() {
+		logger.setLevel(level);
+	}
+
+	@Test
+	public void throughput() throws Exception {
+		List<byte[]> classes = new ArrayList<byte[]>();
+		readClasses(TestUtils.getCoberturaClassDir(), classes);
+		assertTrue(classes.size() > 0);
+
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			instrument(classes);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			instrument(classes);
+		}
+		long time = System.nanoTime() - start;
+
+		int instrumented = classes.size() * MEASURED_ROUNDS;
+		System.out.println(String.format(
+				"Instrumented %d classes in %d ms: %.0f classes/s",
+				instrumented, time / 1000000, instrumented * 1e9 / time));
+	}
+
+	private void instrument(List<byte[]> classes) throws Exception {
+		CoberturaInstrumenter coberturaInstrumenter = new CoberturaInstrumenter();
+		coberturaInstrumenter.setProjectData(new ProjectData());
+		for (byte[] bytes : classes) {
+			coberturaInstrumenter
+					.instrumentClass(new ByteArrayInputStream(bytes));
+		}
+	}
+
+	private static void readClasses(File dir, List<byte[]> classes)
+			throws Exception {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				readClasses(file, classes);
+			} else if (file.getName().endsWith(".class")) {
+				InputStream is = new FileInputStream(file);
+				try {
+					classes.add(IOUtil.createByteArrayFromInputStream(is));
+				} finally {
+					is.close();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+package net.sourceforge.cobertura.merge;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConvertMainTest {
+	private File tmpDir;
+
+	@Before
+	public void setUp() throws Exception {
+		tmpDir = File.createTempFile("cobertura", ".convert");
+		tmpDir.delete();
+		tmpDir.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(tmpDir);
+	}
+
+	@Test
+	public void testConvertSerializedFile() throws Exception {
+		ProjectData projectData = new ProjectData();
+		ClassData classData = projectData.getOrCreateClassData("test.Converted");
+		classData.setSourceFileName("Converted.java");
+		classData.addLine(1, "m", "()V");
+		classData.touch(1, 3);
+
+		File dataFile = new File(tmpDir, "cobertura.ser");
+		ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(
+				dataFile));
+		try {
+			out.writeObject(projectData);
+		} finally {
+			out.close();
+		}
+		long serializedLength = dataFile.length();
+
+		assertEquals(0, ConvertMain.convert(new String[]{"--basedir",
+				tmpDir.getAbsolutePath(), "cobertura.ser"}));
+		assertTrue(dataFile.length() < serializedLength);
+		ProjectData converted = CoverageDataFileHandler.loadCoverageData(dataFile);
+		assertNotNull(converted);
+		assertEquals(3, converted.getClassData("test.Converted").getLineData(1)
+				.getHits());
+		// The temporary file has replaced the data file.
+		assertArrayEquals(new String[]{"cobertura.ser"}, tmpDir.list());
+	}
+
+	@Test
+	public void testUnreadableFileIsLeftAsItWas() throws Exception {
+		File dataFile = new File(tmpDir, "cobertura.ser");
+		byte[] content = {1, 2, 3, 4, 5, 6, 7, 8};
+		FileUtils.writeByteArrayToFile(dataFile, content);
+
+		assertEquals(1, ConvertMain.convert(new String[]{dataFile
+				.getAbsolutePath()}));
+		assertArrayEquals(content, FileUtils.readFileToByteArray(dataFile));
+		assertEquals(Arrays.asList("cobertura.ser"), Arrays.asList(tmpDir
+				.list()));
+	}
+}
@@ -157,4 +157,34 @@ public class MergeMainTest extends TestCase {
 		assertNotNull(merged.getClassData("test.Second"));
 		assertNotNull(merged.getClassData("Seventh"));
 	}
+
+	public void testThreads() throws IOException {
+		// Every file has hits on a shared class and a class of its own
+		List args = new ArrayList();
+		File dataFile = createTempSerFile();
+		args.add("--threads");
+		args.add("3");
+		args.add("--datafile");
+		args.add(dataFile.getAbsolutePath());
+		for (int i = 1; i <= 7; i++) {
+			ProjectData projectData = new ProjectData();
+			ClassData shared = projectData.getOrCreateClassData("test.Shared");
+			shared.setSourceFileName("Shared.java");
+			shared.addLine(1, "run", "()V");
+			shared.touch(1, i);
+			ClassData own = projectData.getOrCreateClassData("test.Own" + i);
+			own.setSourceFileName("Own" + i + ".java");
+			File file = createTempSerFile();
+			CoverageDataFileHandler.saveCoverageData(projectData, file);
+			args.add(file.getAbsolutePath());
+		}
+
+		MergeMain.main((String[]) args.toArray(new String[args.size()]));
+
+		ProjectData merged = CoverageDataFileHandler.loadCoverageData(dataFile);
+		assertEquals(8, merged.getNumberOfClasses());
+		assertEquals(1 + 2 + 3 + 4 + 5 + 6 + 7, merged.getClassData(
+				"test.Shared").getLineCoverage(1).getHits());
+		assertEquals(1, merged.getPackages().size());
+	}
 }
@@ -0,0 +1,108 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+package net.sourceforge.cobertura.merge;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.coveragedata.LineData;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.test.util.TestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Merges synthetic data files with one thread and with several threads and prints the times.
+ */
+public class MergePerformanceTest {
+	private static final int FILES = 64;
+	private static final int CLASSES = 200;
+	private static final int LINES = 20;
+
+	@Test
+	public void mergePerformanceTest() throws Exception {
+		File tempDir = new File(TestUtils.getTempDir(), "mergePerformance");
+		FileUtils.deleteDirectory(tempDir);
+		tempDir.mkdirs();
+
+		List<String> files = new ArrayList<String>();
+		for (int i = 0; i < FILES; i++) {
+			ProjectData projectData = new ProjectData();
+			for (int j = 0; j < CLASSES; j++) {
+				// Every file shares half of its classes with the next file
+				ClassData classData = projectData.getOrCreateClassData("test.p"
+						+ (j % 10) + ".Class" + (i * CLASSES / 2 + j));
+				classData.setSourceFileName("Class" + j + ".java");
+				for (int line = 1; line <= LINES; line++) {
+					classData.addLine(line, "method" + (line % 4), "()V");
+					classData.touch(line, i + line);
+				}
+			}
+			File file = new File(tempDir, "cobertura" + i + ".ser");
+			CoverageDataFileHandler.saveCoverageData(projectData, file);
+			files.add(file.getAbsolutePath());
+		}
+
+		int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		ProjectData sequential = merge(new File(tempDir, "sequential.ser"),
+				files, 1);
+		ProjectData parallel = merge(new File(tempDir, "parallel.ser"),
+				files, threads);
+
+		assertEquals(sequential.getNumberOfClasses(), parallel
+				.getNumberOfClasses());
+		assertEquals(sequential.getNumberOfCoveredLines(), parallel
+				.getNumberOfCoveredLines());
+		assertEquals(hits(sequential), hits(parallel));
+	}
+
+	private static ProjectData merge(File dataFile, List<String> files,
+			int threads) {
+		List<String> args = new ArrayList<String>();
+		args.add("--datafile");
+		args.add(dataFile.getAbsolutePath());
+		args.add("--threads");
+		args.add(String.valueOf(threads));
+		args.addAll(files);
+
+		long start = System.nanoTime();
+		MergeMain.merge(args.toArray(new String[args.size()]));
+		long stop = System.nanoTime();
+		System.out.println("Merging " + files.size() + " files with "
+				+ threads + " thread(s) took: " + (stop - start) / 1000000
+				+ " milis");
+
+		return CoverageDataFileHandler.loadCoverageData(dataFile);
+	}
+
+	private static long hits(ProjectData projectData) {
+		long hits = 0;
+		for (Object classData : projectData.getClasses()) {
+			for (Object line : ((ClassData) classData).getLines()) {
+				hits += ((LineData) line).getHits();
+			}
+		}
+		return hits;
+	}
+}
@@ -17,6 +17,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -77,13 +78,20 @@ public class AbstractCoberturaTestCase {
 	public Node createAndExecuteMainMethod(String packageName, String fileName,
 			String fileContent, String mainMethod, String format)
 			throws Exception {
+		return createAndExecuteMainMethod(packageName, fileName, fileContent,
+				mainMethod, format, null);
+	}
+
+	public Node createAndExecuteMainMethod(String packageName, String fileName,
+			String fileContent, String mainMethod, String format,
+			Map instrumentArguments) throws Exception {
 
 		FileUtils.write(new File(srcDir, packageName + "/" + fileName + ".java"), fileContent);
 
 		TestUtils.compileSource(srcDir);
 
 		TestUtils.instrumentClasses(TestUtils.antBuilder, srcDir, datafile,
-				instrumentDir);
+				instrumentDir, instrumentArguments);
 
 		/*
 		 * Kick off the Main (instrumented) class.
@@ -0,0 +1,119 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.test;
+
+import groovy.util.Node;
+import net.sourceforge.cobertura.ant.ReportTask;
+import net.sourceforge.cobertura.instrument.CoberturaAgent;
+import net.sourceforge.cobertura.test.util.TestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.ant.taskdefs.Java;
+import org.apache.tools.ant.types.Path;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs not instrumented classes with {@link CoberturaAgent}.
+ */
+public class AgentFunctionalTest extends AbstractCoberturaTestCase {
+
+	@Test
+	public void classesAreInstrumentedWhileLoading() throws Exception {
+		FileUtils.write(new File(srcDir, "mypackage/Agent.java"),
+				"package mypackage;"
+						+ "\n public class Agent {"
+						+ "\n  static int calc(int n) {"
+						+ "\n   if (n > 1) {"
+						+ "\n    return n * 2;"
+						+ "\n   }"
+						+ "\n   return n;"
+						+ "\n  }"
+						+ "\n  public static void main(String[] args) {"
+						+ "\n   calc(1);"
+						+ "\n   calc(2);"
+						+ "\n   calc(3);"
+						+ "\n  }"
+						+ "\n }");
+		TestUtils.compileSource(srcDir);
+
+		Java java = new Java();
+		java.setProject(TestUtils.project);
+		java.setClassname("mypackage.Agent");
+		java.setDir(srcDir);
+		java.setFork(true);
+		java.setFailonerror(true);
+		java.createJvmarg().setValue(
+				"-javaagent:" + createAgentJar().getAbsolutePath()
+						+ "=--datafile," + datafile.getAbsolutePath()
+						+ ",--includeClasses,mypackage.*");
+		Path classpath = TestUtils.getCoberturaDefaultClasspath();
+		for (String asm : new String[]{"asm", "asm-tree", "asm-commons",
+				"asm-util", "asm-analysis"}) {
+			classpath.add(TestUtils.createDependencyPath("org.ow2.asm", asm,
+					"5.0.1"));
+		}
+		classpath.add(TestUtils.createDependencyPath("oro", "oro", "2.0.8"));
+		java.setClasspath(classpath);
+		java.execute();
+
+		new File(reportDir, "/coverage-xml").mkdirs();
+		ReportTask reportTask = new ReportTask();
+		reportTask.setProject(TestUtils.project);
+		reportTask.setDataFile(datafile.getAbsolutePath());
+		reportTask.setSrcDir(srcDir.getAbsolutePath());
+		reportTask.setFormat("xml");
+		reportTask.setDestDir(new File(reportDir, "/coverage-xml"));
+		reportTask.execute();
+		Node dom = TestUtils.getXMLReportDOM(reportDir.getAbsolutePath()
+				+ "/coverage-xml/coverage.xml");
+
+		List<Node> lines = TestUtils.getLineCounts(dom, "mypackage.Agent",
+				"calc");
+		assertEquals(3, lines.size());
+		assertEquals("3", lines.get(0).attribute("hits"));
+		assertEquals("2", lines.get(1).attribute("hits"));
+		assertEquals("1", lines.get(2).attribute("hits"));
+		assertConditionCoverage(lines, "100% (2/2)", 4);
+	}
+
+	/**
+	 * The agent class itself is found on the classpath, so the jar contains only the manifest.
+	 */
+	private File createAgentJar() throws Exception {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION,
+				"1.0");
+		manifest.getMainAttributes().putValue("Premain-Class",
+				CoberturaAgent.class.getName());
+		File jar = new File(tempDir, "cobertura-agent.jar");
+		JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar),
+				manifest);
+		jos.close();
+		return jar;
+	}
+}
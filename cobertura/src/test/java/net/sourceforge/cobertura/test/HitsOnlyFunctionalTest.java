@@ -0,0 +1,71 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.test;
+
+import groovy.util.Node;
+import net.sourceforge.cobertura.test.util.TestUtils;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class HitsOnlyFunctionalTest extends AbstractCoberturaTestCase {
+
+	@Test
+	public void hitsAreReportedOnce() throws Exception {
+		Node dom = createAndExecuteMainMethod("mypackage", "HitsOnly",
+				"package mypackage;"
+						+ "\n public class HitsOnly {"
+						+ "\n  static int sum(int n) {"
+						+ "\n   int s = 0;"
+						+ "\n   for (int i = 0; i < n; i++) {"
+						+ "\n    if (i % 2 == 0) {"
+						+ "\n     s += i;"
+						+ "\n    }"
+						+ "\n   }"
+						+ "\n   return s;"
+						+ "\n  }"
+						+ "\n  public static void main(String[] args) {"
+						+ "\n   sum(10);"
+						+ "\n   sum(10);"
+						+ "\n  }"
+						+ "\n }", "mypackage.HitsOnly", "xml",
+				new HashMap() {
+					{
+						put("hitsOnly", true);
+					}
+				});
+
+		List<Node> lines = TestUtils.getLineCounts(dom, "mypackage.HitsOnly",
+				"sum");
+		assertEquals(5, lines.size());
+		for (Node line : lines) {
+			// the 'for' line has two probes (initialization and the loop condition)
+			String expectedHits = "5".equals(line.attribute("number"))
+					? "2"
+					: "1";
+			assertEquals("line " + line.attribute("number"), expectedHits,
+					line.attribute("hits"));
+		}
+		assertConditionCoverage(lines, "100% (2/2)", 6);
+	}
+}
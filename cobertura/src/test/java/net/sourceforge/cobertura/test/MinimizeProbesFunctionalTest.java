@@ -0,0 +1,71 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.test;
+
+import groovy.util.Node;
+import net.sourceforge.cobertura.test.util.TestUtils;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class MinimizeProbesFunctionalTest extends AbstractCoberturaTestCase {
+
+	@Test
+	public void inferredLinesAreCountedLikeMeasuredLines() throws Exception {
+		Node dom = createAndExecuteMainMethod("mypackage", "MinimizeProbes",
+				"package mypackage;"
+						+ "\n public class MinimizeProbes {"
+						+ "\n  static int calc(int n) {"
+						+ "\n   int a = n + 1;"
+						+ "\n   int b = a * 2;"
+						+ "\n   if (b > 10) {"
+						+ "\n    a = b - 1;"
+						+ "\n    b = a + 1;"
+						+ "\n   }"
+						+ "\n   return a + b;"
+						+ "\n  }"
+						+ "\n  public static void main(String[] args) {"
+						+ "\n   calc(1);"
+						+ "\n   calc(10);"
+						+ "\n   calc(20);"
+						+ "\n  }"
+						+ "\n }", "mypackage.MinimizeProbes", "xml",
+				new HashMap() {
+					{
+						put("minimizeProbes", true);
+					}
+				});
+
+		List<Node> lines = TestUtils.getLineCounts(dom,
+				"mypackage.MinimizeProbes", "calc");
+		assertEquals(6, lines.size());
+		String[][] expected = {{"4", "3"}, {"5", "3"}, {"6", "3"},
+				{"7", "2"}, {"8", "2"}, {"10", "3"}};
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i][0], lines.get(i).attribute("number"));
+			assertEquals("line " + expected[i][0], expected[i][1], lines
+					.get(i).attribute("hits"));
+		}
+		assertConditionCoverage(lines, "100% (2/2)", 6);
+	}
+}
@@ -258,6 +258,18 @@ public class TestUtils {
 				&& arguments.containsKey("threadsafeRigorous")
 				? (Boolean) arguments.get("threadsafeRigorous")
 				: false);
+		instrumentTask.setThreadsafeStriped(arguments != null
+				&& arguments.containsKey("threadsafeStriped")
+				? (Boolean) arguments.get("threadsafeStriped")
+				: false);
+		instrumentTask.setHitsOnly(arguments != null
+				&& arguments.containsKey("hitsOnly")
+				? (Boolean) arguments.get("hitsOnly")
+				: false);
+		instrumentTask.setMinimizeProbes(arguments != null
+				&& arguments.containsKey("minimizeProbes")
+				? (Boolean) arguments.get("minimizeProbes")
+				: false);
 		instrumentTask.setIgnoreTrivial(arguments != null
 				&& arguments.containsKey("ignoretrivial") ? (Boolean) arguments
 				.get("ignoretrivial") : false);